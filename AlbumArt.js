@@ -28,14 +28,31 @@ const COMPLETE = 1;
 const ERROR = 2;
 
 let albumArt = {};
+let albumVariants = {};
 let artistArt = {};
 let loaders = {};
+let visibleAlbums = [];
 
-function startLoader(options) {
+const DEFAULT_CACHE_SIZE = 256;
+
+// only art downloaded into the local cache is tracked, HTTP URLs used directly are not
+function touch(key) {
+    if (albumArt[key] && albumArt[key].indexOf("file://") === 0) {
+        MPDConnection.current().touchAlbumArt('albumart_'+key+".png");
+    }
+}
+
+function stopLoaders() {
     for (let id in loaders) {
-        //console.log("stopping loader "+id);
         loaders[id].stop = true;
+        if (loaders[id].current && MPDConnection.current()) {
+            MPDConnection.current().cancelAlbumArtDownload(loaders[id].current.artist, loaders[id].current.name);
+        }
     }
+}
+
+function startLoader(options) {
+    stopLoaders();
     setTimeout(() => {
         loaders = {};
         const loaderId = ""+Date.now();
@@ -44,9 +61,15 @@ function startLoader(options) {
     }, 200);
 }
 
-async function getAlbumArt(album, options, loaderId) {
+async function getAlbumArt(album, options, loaderId, priority) {
     return new Promise(async (resolve, reject) => {
         const songs = await MPDConnection.current().getSongsForAlbum(album.name, album.artist);
+        if (loaders[loaderId]) {
+            loaders[loaderId].current = album;
+        }
+        if (priority === undefined) {
+            priority = isVisible(album) ? MPDConnection.DOWNLOAD_VISIBLE : MPDConnection.DOWNLOAD_PREFETCH;
+        }
         albumArtEventEmiiter.emit('OnAlbumArtStart', album);
         if (songs.length > 0) {
             const key = MPDConnection.current().toAlbumArtFilename(album.artist, album.name);
@@ -88,7 +111,7 @@ async function getAlbumArt(album, options, loaderId) {
                             }
                         }
                         if (url) {                            
-                            await MPDConnection.current().albumartFromUPnP(url, album.artist, album.name);
+                            await MPDConnection.current().albumartFromUPnP(url, album.artist, album.name, priority);
                         } else {
                             throw Error("No URL for ["+album.artist+"] ["+album.name+"]");
                         }
@@ -98,14 +121,14 @@ async function getAlbumArt(album, options, loaderId) {
                 } else if (options.type === 'HTTP') {
                     const host = options.http.host === "" ? undefined : options.http.host;
                     if (options.http.searchForImageFile) {
-                        const httpImageUrl = await MPDConnection.current().albumartFromURLWithSearch(songs[0].file, options.http.port, album.artist, album.name, options.http.urlPrefix, !options.http.useAsURL, host);
+                        const httpImageUrl = await MPDConnection.current().albumartFromURLWithSearch(songs[0].file, options.http.port, album.artist, album.name, options.http.urlPrefix, !options.http.useAsURL, host, priority);
                         album.path = MPDConnection.current().buildURLPrefix(options.http.port, options.http.urlPrefix, host)+httpImageUrl;
                         imageUrl = album.path;
                         if (options.http.useAsURL) {
                             entryState = httpImageUrl;
                         }
                     } else {
-                        await MPDConnection.current().albumartFromURL(songs[0].file, options.http.port, album.artist, album.name, options.http.urlPrefix, options.http.fileName, host);
+                        await MPDConnection.current().albumartFromURL(songs[0].file, options.http.port, album.artist, album.name, options.http.urlPrefix, options.http.fileName, host, priority);
                     }
                 } else if (options.type === 'MPD Embedded') {
                     await MPDConnection.current().binarylimit(options.mpd.binarylimit);
@@ -133,6 +156,12 @@ async function getAlbumArt(album, options, loaderId) {
                 resolve(!loaders[loaderId].stop);
             } catch (err) {
                 console.log(err);
+                if (err.code === "Cancelled") {
+                    // left as started so the next loader run picks it up again
+                    albumArtEventEmiiter.emit('OnAlbumArtError', {album:album, err: err, showAlert: false});
+                    resolve(false);
+                    return;
+                }
                 await albumArtStorage.updateState(key, ERROR);
                 let showAlert = false;
                 const errorMessage = err.message || "";
@@ -148,12 +177,71 @@ async function getAlbumArt(album, options, loaderId) {
             albumArtEventEmiiter.emit('OnAlbumArtError', {album:album, err: "No songs found", showAlert: false});
             resolve(!loaders[loaderId].stop);
         }
-        if (loaders[loaderId].queueSize === 0) {
+        if (loaders[loaderId]) {
+            loaders[loaderId].current = undefined;
+        }
+        if (loaders[loaderId] && loaders[loaderId].queueSize === 0) {
             albumArtEventEmiiter.emit('OnAlbumArtComplete', {});
         }
     });
 }
 
+function keyForFilename(filename) {
+    if (filename.indexOf('albumart_') !== 0 || filename.indexOf('.png') === -1) {
+        return undefined;
+    }
+    return filename.substring('albumart_'.length, filename.indexOf('.png'));
+}
+
+// variants that are missing are generated natively and arrive later as OnAlbumArtVariants
+function loadVariants(filenames) {
+    if (filenames.length < 1) {
+        return;
+    }
+    MPDConnection.current().getAlbumArtVariants(filenames)
+    .then((variants) => {
+        for (let filename in variants) {
+            const key = keyForFilename(filename);
+            if (key) {
+                albumVariants[key] = {thumb: "file://"+variants[filename].thumb, medium: "file://"+variants[filename].medium};
+            }
+        }
+    });
+}
+
+const onAlbumArtVariants = MPDConnection.getEventEmitter().addListener(
+    "OnAlbumArtVariants",
+    (variants) => {
+        const key = keyForFilename(variants.filename);
+        if (key) {
+            albumVariants[key] = {thumb: "file://"+variants.thumb, medium: "file://"+variants.medium};
+        }
+    }
+);
+
+function isVisible(album) {
+    return visibleAlbums.find((a) => {return a.name === album.name && a.artist === album.artist}) !== undefined;
+}
+
+// downloads for albums on screen jump the queue, those scrolled away drop back to prefetch
+function setVisibleAlbums(albums) {
+    if (!MPDConnection.current()) {
+        visibleAlbums = albums;
+        return;
+    }
+    visibleAlbums.forEach((album) => {
+        if (!albums.find((a) => {return a.name === album.name && a.artist === album.artist})) {
+            MPDConnection.current().setAlbumArtDownloadPriority(album.artist, album.name, MPDConnection.DOWNLOAD_PREFETCH);
+        }
+    });
+    albums.forEach((album) => {
+        if (!isVisible(album)) {
+            MPDConnection.current().setAlbumArtDownloadPriority(album.artist, album.name, MPDConnection.DOWNLOAD_VISIBLE);
+        }
+    });
+    visibleAlbums = albums;
+}
+
 const loader = async (options, loaderId) => {
     const isAlbumArtSupported = options.type === "HTTP" || options.type === "UPnP" || MPDConnection.current().isAlbumArtSupported();
     if (options.enabled && MPDConnection.isConnected() && isAlbumArtSupported) {
@@ -162,6 +250,7 @@ const loader = async (options, loaderId) => {
         const state = await albumArtStorage.getState();
         const allAlbums = await MPDConnection.current().getAllAlbums();
         const files = await MPDConnection.current().listAlbumArtDir();
+        let downloaded = [];
         allAlbums.forEach((album) => {
             const key = MPDConnection.current().toAlbumArtFilename(album.artist, album.name);
             const filename = 'albumart_'+key+".png";
@@ -195,8 +284,12 @@ const loader = async (options, loaderId) => {
                 if (!artistArt[album.artist]) {
                     artistArt[album.artist] = imageUrl;
                 }
+                if (imageUrl.indexOf("file://") === 0) {
+                    downloaded.push(filename);
+                }
             }
         });
+        loadVariants(downloaded);
         loaders[loaderId].queueSize = albums.length;
         if (loaders[loaderId].queueSize > 0) {
             albums.reduce((p, album, index) => {
@@ -283,6 +376,10 @@ const retryMissing = async () => {
 const onConnect = MPDConnection.getEventEmitter().addListener(
     "OnConnect",
     () => {
+        albumArtStorage.getOptions()
+        .then((options) => {
+            MPDConnection.current().setAlbumArtCacheBudget(options.cacheSize * 1024 * 1024);
+        });
         albumArtStorage.isEnabled().then((enabled) => {
             if (enabled === "true") {
                 migrate().then(() => {
@@ -304,9 +401,7 @@ const onPauseResume = MPDConnection.getEventEmitter().addListener(
         albumArtStorage.isEnabled().then((enabled) => {
             if (enabled === "true") {
                 if (type.msg === "paused") {
-                    for (let id in loaders) {
-                        loaders[id].stop = true;
-                    }            
+                    stopLoaders();
                 }
             }
         });
@@ -316,9 +411,7 @@ const onPauseResume = MPDConnection.getEventEmitter().addListener(
 const onDisconnect = MPDConnection.getEventEmitter().addListener(
     "OnDisconnect",
     () => {
-        for (let id in loaders) {
-            loaders[id].stop = true;
-        }
+        stopLoaders();
     }
 );
 
@@ -334,6 +427,32 @@ const onInternalConnect = MPDConnection.getEventEmitter().addListener(
     }
 );
 
+// evicted albums are forgotten so the loader fetches them again the next time it runs
+const onAlbumArtEvicted = MPDConnection.getEventEmitter().addListener(
+    "OnAlbumArtEvicted",
+    (evicted) => {
+        let keys = [];
+        evicted.filenames.forEach((filename) => {
+            const key = keyForFilename(filename);
+            if (!key) {
+                return;
+            }
+            const path = albumArt[key];
+            delete albumArt[key];
+            delete albumVariants[key];
+            for (let artist in artistArt) {
+                if (artistArt[artist] === path) {
+                    delete artistArt[artist];
+                }
+            }
+            keys.push(key);
+        });
+        if (keys.length > 0) {
+            albumArtStorage.removeStates(keys);
+        }
+    }
+);
+
 class AlbumArtStorage {
     async enable() {
         await AsyncStorage.setItem('@MPD:albumart_enabled', "true");
@@ -374,6 +493,14 @@ class AlbumArtStorage {
         return AsyncStorage.setItem('@MPD:albumart_state', JSON.stringify(state));
     }
 
+    async removeStates(keys) {
+        let state = await this.getState();
+        keys.forEach((key) => {
+            delete state[key];
+        });
+        return AsyncStorage.setItem('@MPD:albumart_state', JSON.stringify(state));
+    }
+
     async isEnabled() {
         let enabled = await AsyncStorage.getItem('@MPD:albumart_enabled');
         if (enabled === null) {
@@ -402,7 +529,8 @@ class AlbumArtStorage {
                 upnp: {
                     name:"", 
                     udn: ""
-                }
+                },
+                cacheSize: DEFAULT_CACHE_SIZE
             };
             await AsyncStorage.setItem('@MPD:albumart_options', JSON.stringify(options));
         } else {
@@ -441,6 +569,9 @@ class AlbumArtStorage {
             }
         }
 
+        if (options.cacheSize === undefined) {
+            options.cacheSize = DEFAULT_CACHE_SIZE;
+        }
         const enabled = await AsyncStorage.getItem('@MPD:albumart_enabled');
         if (enabled === null) {
             options.enabled = false;
@@ -506,6 +637,14 @@ class AlbumArtStorage {
         AsyncStorage.setItem('@MPD:albumart_options', JSON.stringify(options));
     }
 
+    async setCacheSize(cacheSize) {
+        let optionsStr = await AsyncStorage.getItem('@MPD:albumart_options');
+        let options = JSON.parse(optionsStr);
+        options.cacheSize = cacheSize;
+        AsyncStorage.setItem('@MPD:albumart_options', JSON.stringify(options));
+        MPDConnection.current().setAlbumArtCacheBudget(cacheSize * 1024 * 1024);
+    }
+
     async setHTTPUseAsURL(value) {
         let optionsStr = await AsyncStorage.getItem('@MPD:albumart_options');
         let options = JSON.parse(optionsStr);
@@ -524,6 +663,7 @@ export default {
                     const key = MPDConnection.current().toAlbumArtFilename(artist, album);
                     if (albumArt[key]) {
                         //console.log("path found for ["+artist+"] ["+album+"] ["+albumArt[key]+"]");
+                        touch(key);
                         resolve(albumArt[key]);
                     } else {
                         //console.log("path not found for ["+artist+"] ["+album+"]");
@@ -596,7 +736,12 @@ export default {
                     albums.forEach((album) => {
                         const key = MPDConnection.current().toAlbumArtFilename(album.artist, album.name);
                         if (albumArt[key]) {
+                            touch(key);
                             album.imagePath = albumArt[key];
+                            if (albumVariants[key]) {
+                                album.thumbnailPath = albumVariants[key].thumb;
+                                album.mediumPath = albumVariants[key].medium;
+                            }
                         }
                     });
                 }
@@ -642,7 +787,7 @@ export default {
                     }
                 );
         
-                getAlbumArt({name: album, artist: artist, path: path}, options, loaderId)
+                getAlbumArt({name: album, artist: artist, path: path}, options, loaderId, MPDConnection.DOWNLOAD_VISIBLE)
                 .then(() => {
                     delete loaders[loaderId];
                     onAlbumArtEnd.remove();
@@ -668,6 +813,18 @@ export default {
     setHTTPUseAsURL: (value) => {
         albumArtStorage.setHTTPUseAsURL(value);
     },
+    setVisibleAlbums: (albums) => {
+        setVisibleAlbums(albums);
+    },
+    setCacheSize: (cacheSize) => {
+        albumArtStorage.setCacheSize(cacheSize);
+    },
+    isCacheSizeSupported: () => {
+        return MPDConnection.current().isAlbumArtCacheSupported();
+    },
+    getCacheStats: () => {
+        return MPDConnection.current().getAlbumArtCacheStats();
+    },
     dump: () => {
         let promise = new Promise((resolve, reject) => {
             Promise.all([albumArtStorage.getOptions(), albumArtStorage.getState()])
@@ -326,6 +326,7 @@ export default class AlbumArtScreen extends React.Component {
         missingVisible: false,
         upnpListVisible: false,
         binarylimit: '8k',
+        cacheSize: 256,
         searchForImageFile: false,
         useAsURL: false
     };
@@ -409,6 +410,7 @@ export default class AlbumArtScreen extends React.Component {
                 serverType: options.type,
                 upnpServer: options.upnp,
                 binarylimit: limit,
+                cacheSize: options.cacheSize,
                 searchForImageFile: options.http.searchForImageFile,
                 useAsURL: options.http.useAsURL
             });
@@ -504,6 +506,18 @@ export default class AlbumArtScreen extends React.Component {
         }
     }
 
+    onChangeCacheSize() {
+        this.CacheSizeActionSheet.show();
+    }
+
+    setCacheSize(idx) {
+        const sizes = [64, 128, 256, 512, 1024];
+        if (idx < sizes.length) {
+            this.setState({cacheSize: sizes[idx]});
+            AlbumArt.setCacheSize(sizes[idx]);
+        }
+    }
+
     onSearchForImageFileChange(value) {
         this.setState({searchForImageFile: value});
         AlbumArt.setHTTPSearchForImageFile(value);
@@ -635,6 +649,15 @@ export default class AlbumArtScreen extends React.Component {
                                 onPress={() => this.onChangeBinaryLimit()}
                             />
                             }
+                            {AlbumArt.isCacheSizeSupported() &&
+                            <SettingsList.Item
+                                hasNavArrow={true}
+                                title='Cache Size'
+                                titleInfo={this.state.cacheSize >= 1024 ? (this.state.cacheSize / 1024)+"GB" : this.state.cacheSize+"MB"}
+                                titleInfoStyle={{fontFamily: 'GillSans-Italic'}}
+                                onPress={() => this.onChangeCacheSize()}
+                            />
+                            }
                         </SettingsList>
                     </View>
                     {this.state.serverType === "HTTP" &&
@@ -761,6 +784,17 @@ export default class AlbumArtScreen extends React.Component {
                         }}
                     />
                 }
+                {AlbumArt.isCacheSizeSupported() &&
+                    <ActionSheet
+                        ref={o => this.CacheSizeActionSheet = o}
+                        title={<Text style={{color: '#000', fontSize: 18}}>Cache Size</Text>}
+                        options={['64MB', '128MB', '256MB', '512MB', '1GB', 'Cancel']}
+                        cancelButtonIndex={5}
+                        onPress={(idx) => {
+                            this.setCacheSize(idx);
+                        }}
+                    />
+                }
                 <ActionButton buttonColor="rgba(231,76,60,1)" hideShadow={true}>
                     <ActionButton.Item buttonColor='#1abc9c' title="Clear" size={40} textStyle={common.actionButtonText} onPress={() => {this.clearAlbumArt();}}>
                         <FAIcon name="eraser" size={15} color="#e6e6e6" />
@@ -153,8 +153,15 @@ export default class AlbumsScreen extends React.Component {
         if (this.onApperance) {
             this.onApperance.remove();
         }
+        AlbumArt.setVisibleAlbums([]);
     }
 
+    onViewableItemsChanged = ({ viewableItems }) => {
+        AlbumArt.setVisibleAlbums(viewableItems.map((viewable) => {
+            return {name: viewable.item.name, artist: viewable.item.artist};
+        }));
+    };
+
     addAll(toPlaylist) {
         const { navigation } = this.props;
 
@@ -369,7 +376,7 @@ export default class AlbumsScreen extends React.Component {
                         <FontAwesome5 name="compact-disc" size={20} style={common.icon}/>
                     }
                     {item.imagePath !== undefined &&
-                        <Image style={styles.albumart} source={{uri: item.imagePath}}/>
+                        <Image style={styles.albumart} source={{uri: item.thumbnailPath || item.imagePath}}/>
                     }
                     <View style={common.container4}>
                         <Text style={styles.item}>{item.name}</Text>
@@ -408,7 +415,7 @@ export default class AlbumsScreen extends React.Component {
                         <Image style={gridStyles.albumartbig} source={require('./images/cd-large.png')}/>
                     }
                     {item.imagePath !== undefined &&
-                        <Image style={gridStyles.albumartbig} source={{uri: item.imagePath}}/>
+                        <Image style={gridStyles.albumartbig} source={{uri: item.mediumPath || item.imagePath}}/>
                     }
                     <View style={styles.container3}>
                         <Text numberOfLines={1} ellipsizeMode='tail' style={styles.albumGridItem}>{item.name}</Text>
@@ -463,6 +470,7 @@ export default class AlbumsScreen extends React.Component {
                         key={this.state.numColumns}
                         ref={(ref) => { this.listRef = ref; }}
                         getItemLayout={this.getItemLayout}
+                        onViewableItemsChanged={this.onViewableItemsChanged}
                     />
                     </View>
                 }
@@ -475,6 +483,7 @@ export default class AlbumsScreen extends React.Component {
                         numColumns={this.state.numColumns}
                         columnWrapperStyle={common.row}
                         key={this.state.numColumns}
+                        onViewableItemsChanged={this.onViewableItemsChanged}
                     />
                     </View>
                 }
@@ -61,7 +61,7 @@ class AlbumListItem extends React.PureComponent {
                         <FontAwesome5 name="compact-disc" size={20} style={common.icon}/>
                     }
                     {item.imagePath !== undefined &&
-                        <Image style={styles.iconAlbumArt} source={{uri: item.imagePath}}/>
+                        <Image style={styles.iconAlbumArt} source={{uri: item.thumbnailPath || item.imagePath}}/>
                     }
                     <View style={styles.itemTextContainer}>
                         <Text style={styles.albumItem}>{item.name}</Text>
@@ -106,7 +106,7 @@ class GridAlbumListItem extends React.PureComponent {
                         <Image style={{width: size-30, height: size-30, paddingLeft: 5, paddingRight: 5, resizeMode: 'contain'}} source={require('./images/cd-large.png')}/>
                     }
                     {item.imagePath !== undefined &&
-                        <Image style={{width: size-30, height: size-30, paddingLeft: 5, paddingRight: 5, resizeMode: 'contain'}} source={{uri: item.imagePath}}/>
+                        <Image style={{width: size-30, height: size-30, paddingLeft: 5, paddingRight: 5, resizeMode: 'contain'}} source={{uri: item.mediumPath || item.imagePath}}/>
                     }
                     <View style={styles.gridItem}>
                         <Text numberOfLines={1} ellipsizeMode='tail' style={styles.albumGridItem}>{item.name}</Text>
@@ -260,6 +260,13 @@ export default class ArtistsScreen extends React.Component {
                 this.setState({artists: [], fullset: []});
             }
         );
+        // the library shown came from a snapshot that MPD's database has since moved past
+        this.onLibraryChange = MPDConnection.getEventEmitter().addListener(
+            "OnLibraryChange",
+            () => {
+                this.load();
+            }
+        );
         this.onAlbumArtEnd = AlbumArt.getEventEmitter().addListener(
             "OnAlbumArtEnd",
             (album) => {
@@ -343,13 +350,11 @@ export default class ArtistsScreen extends React.Component {
     load() {
         Config.getConfig()
         .then((config) => {
-            const allArtist = MPDConnection.current().getAllArtists(config.useRawArtistName);
-            const allAlbums = MPDConnection.current().getAllAlbums(true, config.sortSettings.albumSortByArtist);
-            const allGenres = MPDConnection.current().getAllGenres();
+            const library = MPDConnection.current().getLibrary(config.useRawArtistName, config.sortSettings.albumSortByArtist);
 
             this.setState({loading: true, defaultAlbumSort: !config.sortSettings.albumSortByArtist});
 
-            Promise.all([allArtist, allAlbums, allGenres])
+            library
             .then((results) => {
                 this.setState({loading: false});
                 let artists = results[0];
@@ -408,6 +413,7 @@ export default class ArtistsScreen extends React.Component {
     componentWillUnmount() {
         this.onConnect.remove();
         this.onDisconnect.remove();
+        this.onLibraryChange.remove();
         this.onAlbumArtEnd.remove();
         this.onAlbumArtComplete.remove();
         this.onAlbumArtError.remove();
@@ -716,7 +722,7 @@ export default class ArtistsScreen extends React.Component {
                         <FontAwesome5 name="compact-disc" size={20} style={common.icon}/>
                     }
                     {item.imagePath !== undefined &&
-                        <Image style={styles.iconAlbumArt} source={{uri: item.imagePath}}/>
+                        <Image style={styles.iconAlbumArt} source={{uri: item.thumbnailPath || item.imagePath}}/>
                     }
                     <View style={styles.itemTextContainer}>
                         <Text style={styles.albumItem}>{item.name}</Text>
@@ -759,7 +765,7 @@ export default class ArtistsScreen extends React.Component {
                         <Image style={{width: size-30, height: size-30, paddingLeft: 5, paddingRight: 5, resizeMode: 'contain'}} source={require('./images/cd-large.png')}/>
                     }
                     {item.imagePath !== undefined &&
-                        <Image style={{width: size-30, height: size-30, paddingLeft: 5, paddingRight: 5, resizeMode: 'contain'}} source={{uri: item.imagePath}}/>
+                        <Image style={{width: size-30, height: size-30, paddingLeft: 5, paddingRight: 5, resizeMode: 'contain'}} source={{uri: item.mediumPath || item.imagePath}}/>
                     }
                     <View style={styles.gridItem}>
                         <Text numberOfLines={1} ellipsizeMode='tail' style={styles.albumGridItem}>{item.name}</Text>
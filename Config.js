@@ -365,6 +365,22 @@ export default {
         });
         return promise;
     },
+    isWarmResume: () => {
+        return getConfigValue("warmResume", false);
+    },
+    setWarmResume: (warmResume) => {
+        let promise = new Promise((resolve, reject) => {
+            configStorage.getConfig()
+            .then((config) => {
+                config.warmResume = warmResume;
+                configStorage.setConfig(config)
+                .then(() => {
+                    resolve();
+                })
+            });
+        });
+        return promise;
+    },
     getConfig: () => {
         return configStorage.getConfig();
     }
@@ -170,6 +170,7 @@ export default class ConnectionsScreen extends React.Component {
         configured: [],
         upnpServers: [],
         selected: (new Map(): Map<string, boolean>),
+        latency: (new Map(): Map<string, number>),
         modalVisible: false,
         loading: false
     }
@@ -186,6 +187,7 @@ export default class ConnectionsScreen extends React.Component {
                 if (discovered.type === "add") {
                     discovered.key = discovered.name+discovered.ipAddress+discovered.port;
                     this.state.discovered.push(discovered);
+                    this.measureLatency([discovered]);
                 }
                 this.setState({discovered: this.state.discovered});
             }
@@ -249,12 +251,49 @@ export default class ConnectionsScreen extends React.Component {
         });
         
         this.setState({discovered: discovered,upnpServers: upnpServers});        
+        this.measureLatency(discovered);
         MPDConnection.getConnectionList()
         .then((connections) => {
             connections.forEach((c) => {
                 c.key = c.name+c.ipAddress+c.port;
             })
             this.setState({configured: connections});
+            this.measureLatency(connections);
+        });
+    }
+
+    measureLatency(items) {
+        items.forEach((item) => {
+            if (!item.ipAddress || this.state.latency.has(item.key)) {
+                return;
+            }
+            let port = item.port;
+            if (!Number.isInteger(port)) {
+                port = Number.parseInt(port);
+            }
+            MPDConnection.measureLatency(item.ipAddress, port)
+            .then((rtt) => {
+                if (rtt !== undefined) {
+                    this.setState((state) => {
+                        const latency = new Map(state.latency);
+                        latency.set(item.key, rtt);
+                        return {latency};
+                    });
+                }
+            })
+            .catch((err) => {
+                console.log("Latency for "+item.ipAddress+" : "+err);
+            });
+        });
+    }
+
+    // servers that answered come first, quickest at the top, the rest keep their order
+    sortByLatency(items) {
+        const latency = this.state.latency;
+        return items.slice().sort((a, b) => {
+            const la = latency.has(a.key) ? latency.get(a.key) : Number.MAX_VALUE;
+            const lb = latency.has(b.key) ? latency.get(b.key) : Number.MAX_VALUE;
+            return la - lb;
         });
     }
 
@@ -280,9 +319,15 @@ export default class ConnectionsScreen extends React.Component {
         MPDConnection.connect(name, ipAddress, port, pwd).then(
             () => {
                 this.load();
+                const connectRtt = MPDConnection.current().connectRtt;
                 this.setState((state) => {
                     const selected = new Map(state.selected);
                     selected.set(name+ipAddress+port, true);
+                    if (connectRtt !== undefined) {
+                        const latency = new Map(state.latency);
+                        latency.set(name+ipAddress+port, connectRtt);
+                        return {selected, latency};
+                    }
                     return {selected};
                 });
                 Config.isAutoConnect()
@@ -323,7 +368,7 @@ export default class ConnectionsScreen extends React.Component {
     }
 
     onRescan() {
-        this.setState({discovered: [], upnpServers: []});
+        this.setState({discovered: [], upnpServers: [], latency: new Map()});
         MPDConnection.rescan();
         UPnPManager.rescan();
     }
@@ -423,8 +468,8 @@ export default class ConnectionsScreen extends React.Component {
                 <SwipeListView
 					useSectionList
 					sections={[
-                        {title: 'Discovered', data: this.state.discovered},
-                        {title: 'Configured', data: this.state.configured},
+                        {title: 'Discovered', data: this.sortByLatency(this.state.discovered)},
+                        {title: 'Configured', data: this.sortByLatency(this.state.configured)},
                         //{title: 'UPnP Servers', data: this.state.upnpServers}
                     ]}
                     renderItem={(data, map) => {
@@ -441,6 +486,7 @@ export default class ConnectionsScreen extends React.Component {
                         if (item.stats) {
                             stats = "Artists: "+item.stats.numberOfArtists+" Albums: "+item.stats.numberOfAlbums+" Songs: "+item.stats.numberOfSongs;
                         }
+                        const latency = this.state.latency.get(item.key);
                         return (
                         <SwipeRow rightOpenValue={openVal}>
                             <View style={common.rowBack}>
@@ -468,6 +514,9 @@ export default class ConnectionsScreen extends React.Component {
                                     {stats &&
                                         <Text style={styles.item}>{stats}</Text>
                                     }
+                                    {latency !== undefined &&
+                                        <Text style={styles.item}>Latency {latency.toFixed(1)} ms</Text>
+                                    }
                                 </View>
                                 <Icon name="check" size={15} style={[{ display: selected }, common.icon]}/>
                             </View>
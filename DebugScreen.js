@@ -96,14 +96,70 @@ export default class DebugScreen extends React.Component {
         this.setState({debug: [], cmd:""});
     }
 
+    onMetrics() {
+        MPDConnection.current().getMetrics()
+        .then((metrics) => {
+            if (!metrics) {
+                this.setState({debug: [{key: "1", debug: "Metrics are not available"}]});
+                return;
+            }
+            const format = (summary) => {
+                return summary.p50.toFixed(1)+" / "+summary.p90.toFixed(1)+" / "+summary.p99.toFixed(1)+" max "+summary.max.toFixed(1);
+            };
+            let debug = [];
+            metrics.commands.sort((a, b) => b.count - a.count).forEach((command, index) => {
+                debug.push({key: ""+(index+1), debug:
+                    command.verb+" ("+command.count+")\n"+
+                    "queue ms "+format(command.queueWait)+"\n"+
+                    "first byte ms "+format(command.firstByte)+"\n"+
+                    "last byte ms "+format(command.lastByte)+"\n"+
+                    "parse ms "+format(command.parse)+"\n"+
+                    "bytes "+command.bytes.p50+" / "+command.bytes.p90+" / "+command.bytes.p99+" max "+command.bytes.max
+                });
+            });
+            this.setState({debug: debug});
+        });
+    }
+
+    onBenchmark() {
+        if (!MPDConnection.current().isBenchmarkSupported()) {
+            this.setState({debug: [{key: "1", debug: "Benchmark is not available"}]});
+            return;
+        }
+        this.setState({loading: true});
+        MPDConnection.current().runBenchmark({})
+        .then((results) => {
+            this.setState({loading: false});
+            const listing = results.listing;
+            const albumArt = results.albumArt;
+            const ping = results.ping;
+            this.setState({debug: [
+                {key: "1", debug: "listallinfo "+listing.songs+" songs best "+listing.best.toFixed(1)+" ms mean "+listing.mean.toFixed(1)+" ms ("+Math.round(listing.songsPerSecond)+" songs/s)"},
+                {key: "2", debug: "albumart "+albumArt.covers+" x "+Math.round(albumArt.size / 1024)+" KB in "+albumArt.time.toFixed(1)+" ms ("+albumArt.mbPerSecond.toFixed(1)+" MB/s)"},
+                {key: "3", debug: "ping x "+ping.count+" p50 "+ping.p50.toFixed(2)+" ms p99 "+ping.p99.toFixed(2)+" ms max "+ping.max.toFixed(2)+" ms"},
+                {key: "4", debug: "ACK "+(results.ack ? "ok" : "not received")}
+            ]});
+        })
+        .catch((err) => {
+            this.setState({loading: false});
+            Alert.alert(
+                "Benchmark Error",
+                "Error : "+(err.message || err)
+            );
+        });
+    }
+
     onSave() {
-        Promise.all([AlbumArt.dump(), Config.getConfig()])
+        Promise.all([AlbumArt.dump(), Config.getConfig(), MPDConnection.current().getMetrics()])
         .then((results) => {            
             MPDConnection.current().saveDebugData({
                 config: results[1],
                 albumart: results[0],
                 stats: MPDConnection.current().stats,
-                version: MPDConnection.current().version
+                version: MPDConnection.current().version,
+                resume: MPDConnection.current().resumeTimings,
+                library: MPDConnection.current().libraryTimings,
+                metrics: results[2]
             });
         });
     }
@@ -165,6 +221,12 @@ export default class DebugScreen extends React.Component {
                     <ActionButton.Item buttonColor='#1abc9c' title="Clear" size={40} textStyle={common.actionButtonText} onPress={() => {this.onClear();}}>
                         <FAIcon name="eraser" size={15} color="#e6e6e6" />
                     </ActionButton.Item>
+                    <ActionButton.Item buttonColor='#f1c40f' title="Metrics" size={40} textStyle={common.actionButtonText} onPress={() => {this.onMetrics();}}>
+                        <FAIcon name="bar-chart" size={15} color="#e6e6e6" />
+                    </ActionButton.Item>
+                    <ActionButton.Item buttonColor='#e67e22' title="Benchmark" size={40} textStyle={common.actionButtonText} onPress={() => {this.onBenchmark();}}>
+                        <FAIcon name="tachometer" size={15} color="#e6e6e6" />
+                    </ActionButton.Item>
                     <ActionButton.Item buttonColor='#9b59b6' title="Save" size={40} textStyle={common.actionButtonText} onPress={() => {this.onSave();}}>
                         <FAIcon name="floppy-o" size={15} color="#e6e6e6" />
                     </ActionButton.Item>
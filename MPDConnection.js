@@ -32,6 +32,30 @@ const nowPlayingEmitter = new NativeEventEmitter(NowPlayingControl);
 
 const mpdEventEmiiter = new EventEmitter();
 
+const nativeRecords = SocketConnection.writeCommand !== undefined;
+const nativeBulk = SocketConnection.openBulkConnections !== undefined;
+const nativeIdle = SocketConnection.startIdle !== undefined;
+const nativePipelining = SocketConnection.sendCommand !== undefined;
+const nativeAlbumArt = SocketConnection.fetchAlbumArt !== undefined;
+const nativeWarmResume = SocketConnection.setWarmResumeGrace !== undefined;
+const nativeReadTimeout = SocketConnection.setReadTimeout !== undefined;
+const WARM_RESUME_GRACE = 120000;
+const MAX_TIMINGS = 20;
+const nativeLibrarySnapshot = SocketConnection.loadLibrarySnapshot !== undefined;
+const nativeSearchIndex = SocketConnection.buildSearchIndex !== undefined;
+const nativeAlbumArtCache = SocketConnection.touchAlbumArt !== undefined;
+const nativeDownloadScheduler = SocketConnection.downloadAlbumArt !== undefined;
+const nativeAlbumArtVariants = SocketConnection.getAlbumArtVariants !== undefined;
+const nativeMetrics = SocketConnection.getMetrics !== undefined;
+const nativeBenchmark = SocketConnection.runBenchmark !== undefined;
+const nativeLatency = SocketConnection.measureLatency !== undefined;
+const nativePlayQueue = SocketConnection.startPlayQueueMirror !== undefined;
+const DOWNLOAD_VISIBLE = 0;
+const DOWNLOAD_NORMAL = 1;
+const DOWNLOAD_PREFETCH = 2;
+const BULK_CONNECTIONS = 1;
+const BULK_COMMANDS = ["albumart", "readpicture"];
+
 const ARTIST_PREFIX = "Artist: ";
 const ALBUM_PREFIX = "Album: ";
 const ALBUM_PREFIX_NO_SPACE = "Album:";
@@ -144,12 +168,35 @@ class Discoverer {
 const discoverer = new Discoverer();
 discoverer.startListening();
 
+// the album art cache is shared by every connection, so evictions are passed on regardless of which one is current
+socketConnectionEmitter.addListener(
+    "OnAlbumArtEvicted",
+    (evicted) => {
+        mpdEventEmiiter.emit('OnAlbumArtEvicted', evicted);
+    }
+);
+
+socketConnectionEmitter.addListener(
+    "OnAlbumArtVariants",
+    (variants) => {
+        mpdEventEmiiter.emit('OnAlbumArtVariants', variants);
+    }
+);
+
 class MPDConnection {
 	constructor(name, host, port) {
         this.name = name;
         this.host = host;
 		this.port = port;
 		this.queue = [];
+		this.bulkQueue = [];
+		this.bulkConnections = 0;
+		this.bulkId = 0;
+		this.idleActive = false;
+		this.commandId = 0;
+		this.resumeTimings = [];
+		this.libraryTimings = [];
+		this.searchIndexReady = false;
 		this.isConnected = false;
 	}
 
@@ -161,8 +208,10 @@ class MPDConnection {
                 let state = status.msg;
                 if (state == "connected") {
                     this.albumArtDir = status.albumArtDir;
+                    this.connectRtt = status.connectRtt;
     				this.queue = [];
     				this.isConnected = true;
+                    this._resetBulkQueue();
                     if (pwd) {
                         this.login(pwd)
                         .then(() => {
@@ -171,12 +220,23 @@ class MPDConnection {
                             callback(err);
                         });
                     }
+                    if (nativeBulk) {
+                        SocketConnection.openBulkConnections(BULK_CONNECTIONS, pwd ? pwd : null);
+                    }
+                    if (nativeIdle) {
+                        SocketConnection.startIdle(pwd ? pwd : null);
+                    }
+                    Config.isWarmResume()
+                    .then((warmResume) => {
+                        this.setWarmResume(warmResume);
+                    });
                     this.startEmittingStatus(5000);
                     if (!noemit) {
                         mpdEventEmiiter.emit('OnConnect', {host: this.host, port: this.port});
                         console.log("Connected");
                     }
                     this._loadFileSuffixes();
+                    this._buildSearchIndex();
                     this.getStats((stats) => {
                         this.stats = {};
                         this.stats.numberOfSongs = parseInt(stats["songs"]);
@@ -194,13 +254,24 @@ class MPDConnection {
                     });
     			} else if (state == "internalConnected") {
                     this.albumArtDir = status.albumArtDir;
-    				this.queue = [];
+                    this.connectRtt = status.connectRtt;
+                    // written tasks are either replayed natively or rejected, unsent ones go out on the new connection
+                    if (!nativePipelining) {
+                        this.queue = [];
+                    }
     				this.isConnected = true;
+                    this._resetBulkQueue();
                     if (pwd) {
                         this.login(pwd).then(() => {}).catch((err) => {});
                     }
                     console.log("Internal Connected");
                     mpdEventEmiiter.emit('OnInternalConnect', {host: this.host, port: this.port});
+                    this._recordResume(false, []);
+    			} else if (state == "idleConnected") {
+                    this.idleActive = true;
+    			} else if (state == "bulkConnected") {
+                    this.bulkConnections++;
+                    processBulkQueue();
     			} else if (state == "disconnected") {
                     //mpdEventEmiiter.emit('OnDisconnect', {host: this.host, port: this.port});
                     this.stopEmittingStatus();
@@ -216,6 +287,19 @@ class MPDConnection {
             "OnError",
             (errorDetails) => {
                 let error = errorDetails.error;
+                if (errorDetails.channel === "benchmark") {
+                    return;
+                }
+                if (errorDetails.channel === "bulk") {
+                    console.log("Bulk connection error : "+error);
+                    this._resetBulkQueue(error);
+                    return;
+                }
+                if (errorDetails.channel === "idle") {
+                    console.log("Idle connection error : "+error);
+                    this.idleActive = false;
+                    return;
+                }
                 this.isConnected = false;
 				console.log("Connection error : "+error);
 				if (this.queue.length > 0) {
@@ -233,33 +317,94 @@ class MPDConnection {
 
 		var data = "";
 
+        const completeTask = (task, response) => {
+            task.state = MPDConnection.COMPLETE;
+            //console.log("cmd ["+task.cmd+"] complete");
+            var result;
+            if (response.records) {
+                let records = response.records;
+                if (response.streamed && task.records) {
+                    Array.prototype.push.apply(task.records, records);
+                    records = task.records;
+                }
+                try {
+                    result = task.processRecords(records);
+                } catch(err) {
+                    if (task.errorcb) {
+                        task.errorcb(err);
+                    }
+                    console.log("Error running task ["+task.cmd+"] : "+err);
+                }
+            } else if (task.process) {
+                task.response += response.data.substring(0, response.data.length - 4);
+                try {
+                    result = task.process(task.response, response.filename);
+                } catch(err) {
+                    if (task.errorcb) {
+                        task.errorcb(err);
+                    }
+                    console.log("Error running task ["+task.cmd+"] : "+err);
+                }
+            }
+            if (task.cb) {
+                task.cb(result);
+            }
+        };
+
         this.responseSubscription = socketConnectionEmitter.addListener(
             "OnResponse",
             (response) => {
-                if (this.queue.length > 0) {
-                    var task = this.queue.shift();
-                    task.response += response.data.substring(0, response.data.length - 4);
-                    task.state = MPDConnection.COMPLETE;
-                    //console.log("cmd ["+task.cmd+"] complete");
-                    var result;
-                    if (task.process) {
-                        try {
-                            result = task.process(task.response, response.filename);
-                        } catch(err) {
-                            if (task.errorcb) {
-                                task.errorcb(err);
-                            }
-                            console.log("Error running task ["+task.cmd+"] : "+err);
-                        }
-                    }
-                    if (task.cb) {
-                        task.cb(result);
+                if (response.channel === "bulk") {
+                    const task = this._takeBulkTask(response.id);
+                    if (task) {
+                        completeTask(task, response);
                     }
+                    processBulkQueue();
+                } else if (this.queue.length > 0) {
+                    completeTask(this.queue.shift(), response);
                     processQueue();
                 }
             }
         );
 
+        this.chunkSubscription = socketConnectionEmitter.addListener(
+            "OnResponseChunk",
+            (chunk) => {
+                const task = chunk.id !== undefined ? this.queue.find((t) => t.id === chunk.id) : this.queue[0];
+                if (task) {
+                    task.count = 0;
+                    if (task.records) {
+                        Array.prototype.push.apply(task.records, chunk.records);
+                    } else {
+                        task.records = chunk.records;
+                    }
+                    if (task.onChunk) {
+                        task.onChunk(task.records);
+                    }
+                }
+            }
+        );
+
+        this.subsystemSubscription = socketConnectionEmitter.addListener(
+            "OnSubsystemChange",
+            (change) => {
+                this.idleActive = true;
+                if (change.status) {
+                    const status = change.status;
+                    this.currentstatus = status;
+                    this.statusReceived = Date.now();
+                    if (status.elapsed) {
+                        this.updateNowPlaying(status.state);
+                    }
+                    this._emitStatus(status);
+                }
+                if (change.subsystems.includes("database")) {
+                    this._buildSearchIndex();
+                }
+                mpdEventEmiiter.emit('OnSubsystemChange', {subsystems: change.subsystems});
+            }
+        );
+
         this.initSubscription = socketConnectionEmitter.addListener(
             "OnInit",
             (init) => {
@@ -282,7 +427,17 @@ class MPDConnection {
         this.errorSubscription = socketConnectionEmitter.addListener(
             "OnResponseError",
             (error) => {
-                if (this.queue.length > 0) {
+                if (error.channel === "bulk") {
+                    const task = this._takeBulkTask(error.id);
+                    if (task) {
+                        task.error = error.data.trim();
+                        task.state = MPDConnection.COMPLETE;
+                        if (task.errorcb) {
+                            task.errorcb(task.error);
+                        }
+                    }
+                    processBulkQueue();
+                } else if (this.queue.length > 0) {
                     var task = this.queue.shift();
                     task.error = error.data.trim();
                     task.state = MPDConnection.COMPLETE;
@@ -305,9 +460,42 @@ class MPDConnection {
             }
         );
 
+        // the native side reconnects on its own, a successful one arrives as internalConnected
+        this.healthSubscription = socketConnectionEmitter.addListener(
+            "OnConnectionHealth",
+            (health) => {
+                if (health.state === "reconnecting") {
+                    this.isConnected = false;
+                    this.idleActive = false;
+                    this._resetBulkQueue("connection lost");
+                }
+                mpdEventEmiiter.emit('OnConnectionHealth', health);
+            }
+        );
+
+        this.playQueueSubscription = socketConnectionEmitter.addListener(
+            "OnPlayQueueChange",
+            (change) => {
+                mpdEventEmiiter.emit('OnPlayQueueChange', change);
+            }
+        );
+
         this.pauseResumeSubscription = socketConnectionEmitter.addListener(
             "OnPauseResume",
             (msg) => {
+                if (msg.msg === "resumed") {
+                    if (msg.warm) {
+                        this._recordResume(true, msg.subsystems, msg.latency);
+                        if (msg.subsystems.includes("database")) {
+                            this._buildSearchIndex();
+                        }
+                        if (msg.subsystems.length > 0) {
+                            mpdEventEmiiter.emit('OnSubsystemChange', {subsystems: msg.subsystems});
+                        }
+                    } else {
+                        this.resumeStarted = Date.now();
+                    }
+                }
                 mpdEventEmiiter.emit('OnPauseResume', msg);
             }
         );
@@ -347,11 +535,71 @@ class MPDConnection {
 
 		SocketConnection.connect(this.host, this.port);
 
+		const takeTask = (task) => {
+			const index = this.queue.indexOf(task);
+			if (index === -1) {
+				return false;
+			}
+			this.queue.splice(index, 1);
+			return true;
+		};
+
+		// every command is written as soon as it is queued, MPD answers them in order
+		const sendTask = (task) => {
+			task.id = ""+(++this.commandId);
+			task.state = MPDConnection.WRITTEN;
+			task.written = Date.now();
+			const options = {id: task.id};
+			if (task.format) {
+				options.format = task.format;
+				options.tag = task.tag;
+				options.stream = task.onChunk !== undefined;
+			}
+			if (task.filename) {
+				options.filename = task.filename;
+			}
+			SocketConnection.sendCommand(task.id, task.cmd+"\n", options)
+			.then((response) => {
+				if (takeTask(task)) {
+					completeTask(task, response);
+				}
+			})
+			.catch((err) => {
+				if (takeTask(task)) {
+					task.error = err.message;
+					task.state = MPDConnection.COMPLETE;
+					if (task.errorcb) {
+						task.errorcb(task.error);
+					}
+				}
+			});
+		};
+
 		let processQueue = () => {
+			if (nativePipelining) {
+				if (!this.isConnected) {
+					return;
+				}
+				this.queue.forEach((task) => {
+					if (task.state === MPDConnection.INITIAL) {
+						sendTask(task);
+					}
+				});
+				if (this.queue.length > 0 && Date.now() - this.queue[0].written > 180000) {
+					const task = this.queue.shift();
+					if (task.errorcb) {
+						task.errorcb("Timeout on "+task.cmd);
+					}
+					console.log("Timeout on "+task.cmd);
+				}
+				return;
+			}
 			if (this.isConnected && this.queue.length > 0) {
 				if (this.queue[0].state === MPDConnection.INITIAL) {
 					//console.log("cmd ["+this.queue[0].cmd+"] started");
-                    if (this.queue[0].filename) {
+                    if (this.queue[0].format) {
+                        SocketConnection.writeCommand(this.queue[0].cmd+"\n", {format: this.queue[0].format, tag: this.queue[0].tag, stream: this.queue[0].onChunk !== undefined});
+                    } else if (this.queue[0].filename) {
                         SocketConnection.writeMessage(this.queue[0].cmd+"\n", this.queue[0].filename);
                     } else {
                         SocketConnection.writeMessage(this.queue[0].cmd+"\n", null);
@@ -371,8 +619,28 @@ class MPDConnection {
 			}
 		};
 
+		let processBulkQueue = () => {
+			let inFlight = this.bulkQueue.filter((task) => task.state === MPDConnection.WRITTEN).length;
+			this.bulkQueue.forEach((task) => {
+				if (task.state === MPDConnection.INITIAL && inFlight < this.bulkConnections) {
+					SocketConnection.writeCommand(task.cmd+"\n", {channel: "bulk", id: task.id, filename: task.filename});
+					task.state = MPDConnection.WRITTEN;
+					task.written = Date.now();
+					inFlight++;
+				} else if (task.state === MPDConnection.WRITTEN && Date.now() - task.written > 180000) {
+					this._takeBulkTask(task.id);
+					if (task.errorcb) {
+						task.errorcb("Timeout on "+task.cmd);
+					}
+				}
+			});
+		};
+		this.processBulkQueue = processBulkQueue;
+		this.processQueue = processQueue;
+
 		let poller = () => {
 			processQueue();
+			processBulkQueue();
 			setTimeout(poller, 500);
 		};
 		poller();
@@ -383,51 +651,139 @@ class MPDConnection {
         this.stateSubscription.remove();
         this.errorSubscription.remove();
         this.responseSubscription.remove();
+        this.chunkSubscription.remove();
+        this.subsystemSubscription.remove();
         this.initSubscription.remove();
         this.timeoutSubscription.remove();
         this.nowPlayingSubscription.remove();
         this.pauseResumeSubscription.remove();
+        this.healthSubscription.remove();
+        this.playQueueSubscription.remove();
 		this.isConnected = false;
+		this.idleActive = false;
+		this._resetBulkQueue();
+		if (nativeSearchIndex) {
+			this.searchIndexReady = false;
+			SocketConnection.clearSearchIndex();
+		}
 		SocketConnection.disconnect();
 	}
 
+    // the previous index keeps answering searches until its replacement is built
+    _buildSearchIndex() {
+        if (!nativeSearchIndex) {
+            return;
+        }
+        SocketConnection.buildSearchIndex(this.version > 20)
+        .then((result) => {
+            this.searchIndexReady = true;
+            console.log("search index of "+result.songs+" songs built in "+result.buildTime+" ms");
+        })
+        .catch((err) => {
+            console.log("search index build failed : "+err);
+        });
+    }
+
+    hasSearchIndex() {
+        return this.searchIndexReady === true;
+    }
+
     startEmittingStatus(timeout) {
         this.stopEmittingStatus();
         this.intervalId = setInterval(() => {
             if (this.isConnected) {
-                this.getStatus((status) => {
-                    let currentSongId = -1;
-                    if (status.songid) {
-                        currentSongId = parseInt(status.songid);
-                    }
-                    if (this.autoplaysong && this.autoplaysong.songid !== currentSongId) {
-                        AsyncStorage.removeItem('@MPD:'+this.name+'_'+this.port+'_autoplaysong');
-                        status.reloadqueue = true;
-                        const autoplaysongid = this.autoplaysong.songid;
-                        let cmd = "command_list_begin\n";
-                        cmd += "repeat "+this.autoplaysong.repeat+"\n";
-                        cmd += "consume "+this.autoplaysong.consume+"\n";
-                        if (this.autoplaysong.state !== "play") {
-                            cmd += "stop\n";
-                        }
-                        cmd += "deleteid "+autoplaysongid+"\n";
-                        cmd += "command_list_end";                
-                        this.createPromise(cmd)
-                        .then(() => {
-                            this.autoplaysong = undefined;
-                            console.log("delete songid "+ autoplaysongid);
-                        })
-                        .catch((err) => {
-                            this.autoplaysong = undefined;
-                            console.log("failed to delete songid "+ autoplaysongid+" "+err);
-                        });
+                if (this.idleActive) {
+                    // changes arrive from the idle connection, only the elapsed time moves in between
+                    if (this.currentstatus && this.currentstatus.state === "play") {
+                        mpdEventEmiiter.emit('OnStatus', this._interpolateStatus(this.currentstatus));
                     }
-                    mpdEventEmiiter.emit('OnStatus', status);
+                    return;
+                }
+                this.getStatus((status) => {
+                    this._emitStatus(status);
                 });
             }
         }, timeout);
     }
 
+    setWarmResume(enabled) {
+        if (nativeWarmResume) {
+            SocketConnection.setWarmResumeGrace(enabled ? WARM_RESUME_GRACE : 0);
+        }
+    }
+
+    // ms a command may go without any of its response arriving before the connection is replaced, listings
+    // and album art get 6 times as long, 0 never gives up
+    setReadTimeout(timeout) {
+        if (nativeReadTimeout) {
+            SocketConnection.setReadTimeout(timeout);
+        }
+    }
+
+    // resume to interactive is measured up to the first status after the resume
+    _recordResume(warm, subsystems, nativeLatency) {
+        const started = warm ? Date.now() - (nativeLatency || 0) : this.resumeStarted;
+        if (started === undefined) {
+            return;
+        }
+        this.resumeStarted = undefined;
+        this.getStatus((status) => {
+            this._emitStatus(status);
+            this.resumeTimings.push({
+                warm: warm,
+                subsystems: subsystems,
+                nativeLatency: nativeLatency,
+                latency: Date.now() - started,
+                time: new Date().toISOString()
+            });
+            if (this.resumeTimings.length > MAX_TIMINGS) {
+                this.resumeTimings.shift();
+            }
+        });
+    }
+
+    _emitStatus(status) {
+        let currentSongId = -1;
+        if (status.songid) {
+            currentSongId = parseInt(status.songid);
+        }
+        if (this.autoplaysong && this.autoplaysong.songid !== currentSongId) {
+            AsyncStorage.removeItem('@MPD:'+this.name+'_'+this.port+'_autoplaysong');
+            status.reloadqueue = true;
+            const autoplaysongid = this.autoplaysong.songid;
+            let cmd = "command_list_begin\n";
+            cmd += "repeat "+this.autoplaysong.repeat+"\n";
+            cmd += "consume "+this.autoplaysong.consume+"\n";
+            if (this.autoplaysong.state !== "play") {
+                cmd += "stop\n";
+            }
+            cmd += "deleteid "+autoplaysongid+"\n";
+            cmd += "command_list_end";
+            this.createPromise(cmd)
+            .then(() => {
+                this.autoplaysong = undefined;
+                console.log("delete songid "+ autoplaysongid);
+            })
+            .catch((err) => {
+                this.autoplaysong = undefined;
+                console.log("failed to delete songid "+ autoplaysongid+" "+err);
+            });
+        }
+        mpdEventEmiiter.emit('OnStatus', status);
+    }
+
+    _interpolateStatus(status) {
+        if (!status.elapsed || !this.statusReceived) {
+            return status;
+        }
+        let elapsed = parseFloat(status.elapsed) + (Date.now() - this.statusReceived) / 1000;
+        const duration = parseFloat(status.duration);
+        if (!isNaN(duration) && elapsed > duration) {
+            elapsed = duration;
+        }
+        return Object.assign({}, status, {elapsed: elapsed.toFixed(3)});
+    }
+
     stopEmittingStatus() {
         if (this.intervalId) {
             clearInterval(this.intervalId);
@@ -449,8 +805,11 @@ class MPDConnection {
 	}
 
     createPromise(cmd, processor, filename) {
+        if (filename && this.bulkConnections > 0 && MPDConnection._isBulkCommand(cmd)) {
+            return this.createBulkPromise(cmd, processor, filename);
+        }
         const promise = new Promise((resolve, reject) => {
-            this.queue.push({
+            this._enqueue({
                 cmd: cmd,
     			process: processor,
     			cb: (result) => {
@@ -467,7 +826,85 @@ class MPDConnection {
         return promise;
     }
 
+    _enqueue(task) {
+        this.queue.push(task);
+        if (nativePipelining && this.processQueue) {
+            this.processQueue();
+        }
+    }
+
+    createBulkPromise(cmd, processor, filename) {
+        const promise = new Promise((resolve, reject) => {
+            this.bulkQueue.push({
+                id: ""+(++this.bulkId),
+                cmd: cmd,
+                process: processor,
+                cb: (result) => {
+                    resolve(result);
+                },
+                errorcb: (err) => {
+                    reject(err);
+                },
+                response: "",
+                state: INITIAL,
+                filename: filename
+            });
+            this.processBulkQueue();
+        });
+        return promise;
+    }
+
+    _takeBulkTask(id) {
+        const index = this.bulkQueue.findIndex((task) => task.id === id);
+        if (index === -1) {
+            return undefined;
+        }
+        return this.bulkQueue.splice(index, 1)[0];
+    }
+
+    _resetBulkQueue(error) {
+        const tasks = this.bulkQueue;
+        this.bulkQueue = [];
+        this.bulkConnections = 0;
+        tasks.forEach((task) => {
+            if (task.errorcb) {
+                task.errorcb(error || "Bulk connection closed");
+            }
+        });
+    }
+
+    createRecordsPromise(cmd, format, tag, recordsProcessor, processor, onChunk) {
+        if (!nativeRecords) {
+            return this.createPromise(cmd, processor);
+        }
+        const promise = new Promise((resolve, reject) => {
+            this._enqueue({
+                cmd: cmd,
+                process: processor,
+                processRecords: recordsProcessor,
+                format: format,
+                tag: tag,
+                onChunk: onChunk,
+    			cb: (result) => {
+                    resolve(result);
+                },
+    			errorcb: (err) => {
+                    reject(err);
+                },
+    			response: "",
+    			state: INITIAL
+    		});
+        });
+        return promise;
+    }
+
     search(filter, start, end) {
+        if (this.hasSearchIndex()) {
+            return SocketConnection.searchIndex(filter, start, end - start)
+            .then((results) => {
+                return this._shapeSearchResults(results.songs);
+            });
+        }
         const processor = (data) => {
 			const lines = MPDConnection._lineSplit(data);
 			let songs = [];
@@ -488,25 +925,11 @@ class MPDConnection {
 				} else if (line.indexOf(DATE_PREFIX) === 0) {
 					song.date = line.substring(DATE_PREFIX.length);
 				} else if (line.indexOf(FILE_PREFIX) === 0) {
-                    song = {};
-					const file = line.substring(FILE_PREFIX.length);
-                    const b64file = this.toBase64(file);
-                    if (songs.find((s) => {
-                        return s.b64file === b64file;
-                    }) === undefined) {
-                        songs.push(song);
-                        song.file = file;
-                        song.b64file = b64file;    
-                    }
+                    song = {file: line.substring(FILE_PREFIX.length)};
+                    songs.push(song);
 				}
             });
-            songs.forEach((song, i) => {
-                if (song.duration) {
-                    song.time = song.duration;
-                    song.duration = undefined;
-                }
-            });
-			return songs;
+			return this._shapeSearchResults(songs);
 		};
         let searchCmd;
         if (this.version > 20) {
@@ -520,6 +943,31 @@ class MPDConnection {
         return this.createPromise(searchCmd, processor);
     }
 
+    // index and server results both come through here, so a song found twice (the title and
+    // the any search overlap) is listed once and every result has the same fields
+    _shapeSearchResults(found) {
+        let songs = [];
+        let seen = {};
+        found.forEach((s) => {
+            const b64file = s.b64file ? s.b64file : this.toBase64(s.file);
+            if (seen[b64file]) {
+                return;
+            }
+            seen[b64file] = true;
+            let song = {file: s.file, b64file: b64file};
+            ["artist", "album", "title", "track", "time", "date"].forEach((field) => {
+                if (s[field] !== undefined) {
+                    song[field] = s[field];
+                }
+            });
+            if (s.duration) {
+                song.time = s.duration;
+            }
+            songs.push(song);
+        });
+        return songs;
+    }
+
     getAllArtists(useRaw) {
 		const processor = (data) => {
 			const lines = MPDConnection._lineSplit(data);
@@ -620,6 +1068,24 @@ class MPDConnection {
 					}
 				}
 			});
+			return sortAlbums(albums);
+        };
+        const recordsProcessor = (records) => {
+            let albums = [];
+            let currentArtist;
+            const artistTag = useAlbumArtist ? "albumartist" : "artist";
+            records.forEach((record) => {
+                const artist = record[artistTag];
+                if (artist && artist.trim().length > 0) {
+                    currentArtist = artist;
+                }
+                if (record.album && record.album.trim().length > 0) {
+                    albums.push({name: record.album.trim(), artist: currentArtist});
+                }
+            });
+            return sortAlbums(albums);
+        };
+        const sortAlbums = (albums) => {
 			albums.sort((a,b) => {
                 comp1 = a.name;
                 comp2 = b.name;
@@ -643,7 +1109,10 @@ class MPDConnection {
         } else {
             cmd += "artist";
         }
-        return this.createPromise(cmd, processor);
+        if (this.version < 21 && this.minorVersion === 0) {
+            return this.createPromise(cmd, processor);
+        }
+        return this.createRecordsPromise(cmd, "tags", "album", recordsProcessor, processor);
 	}
 
 	getStatus(cb, errorcb) {
@@ -682,19 +1151,31 @@ class MPDConnection {
 			}
             status.currentsong = currentsong;
             this.currentstatus = status;
+            this.statusReceived = Date.now();
             if (status.elapsed) {
                 this.updateNowPlaying(status.state);
             }            
 			return status;
 		}.bind(this);
+		var recordsProcessor = function(records) {
+			var status = records[0];
+			this.currentstatus = status;
+			this.statusReceived = Date.now();
+			if (status.elapsed) {
+				this.updateNowPlaying(status.state);
+			}
+			return status;
+		}.bind(this);
 		var cmd = "command_list_begin\n";
 		cmd += "status\n";
 		cmd += "currentsong\n";
 		cmd += "replay_gain_status\n";
 		cmd += "command_list_end";
-		this.queue.push({
+		this._enqueue({
 			cmd: cmd,
 			process: processor,
+			processRecords: recordsProcessor,
+			format: nativeRecords ? "status" : undefined,
 			cb: cb,
 			errorcb: errorcb,
 			response: "",
@@ -715,9 +1196,11 @@ class MPDConnection {
 			}
 			return stats;
 		}.bind(this);
-		this.queue.push({
+		this._enqueue({
 			cmd: "stats",
 			process: processor,
+			processRecords: (records) => records[0],
+			format: nativeRecords ? "stats" : undefined,
 			cb: cb,
 			errorcb: errorcb,
 			response: "",
@@ -741,7 +1224,7 @@ class MPDConnection {
 			}
 			return currentsong;
 		}.bind(this);
-		this.queue.push({
+		this._enqueue({
 			cmd: "currentsong",
 			process: processor,
 			errorcb: errorcb,
@@ -892,6 +1375,9 @@ class MPDConnection {
                     song.duration = undefined;
                 }
             });
+            return sortSongs(songs);
+        };
+        const sortSongs = (songs) => {
             songs.sort((a,b) => {
                 let comp1 = a.file;
                 let comp2 = b.file;
@@ -930,7 +1416,7 @@ class MPDConnection {
 		if (artist) {
 			cmd += " artist \""+artist.replace(/"/g, "\\\"")+"\"";
 		}
-        return this.createPromise(cmd, processor);
+        return this.createRecordsPromise(cmd, "songs", undefined, sortSongs, processor);
 	}
 
 	getSongs(songFilter, type) {
@@ -1064,11 +1550,46 @@ class MPDConnection {
         return this.createPromise(cmd, processor);
     }
 
-    getPlayListInfo() {
-        return this.getNamedPlayListInfo(undefined);
+    getPlayListInfo(onChunk) {
+        return this.getNamedPlayListInfo(undefined, onChunk);
     }
 
-	getNamedPlayListInfo(name) {
+    isPlayQueueMirrorSupported() {
+        return nativePlayQueue;
+    }
+
+    // the queue arrives as OnPlayQueueChange events, the first one inserting every song as a placeholder
+    startPlayQueueMirror() {
+        if (!nativePlayQueue) {
+            return Promise.reject("Play queue mirror is not supported");
+        }
+        return SocketConnection.startPlayQueueMirror();
+    }
+
+    stopPlayQueueMirror() {
+        if (nativePlayQueue) {
+            SocketConnection.stopPlayQueueMirror();
+        }
+    }
+
+    syncPlayQueue() {
+        return SocketConnection.syncPlayQueue();
+    }
+
+    // songs for queue positions start to end, fetched from MPD only where they are not already known
+    getPlayQueueWindow(start, end) {
+        return SocketConnection.getPlayQueueWindow(start, end)
+        .then((results) => {
+            results.records.forEach((song) => {
+                song.artist = song.artist || "";
+                song.album = song.album || "";
+                song.title = song.title || song.file;
+            });
+            return results.records;
+        });
+    }
+
+	getNamedPlayListInfo(name, onChunk) {
 		const processor = (data) => {
 			const lines = MPDConnection._lineSplit(data);
 			let songs = [];
@@ -1113,13 +1634,24 @@ class MPDConnection {
             });            
 			return songs;
 		};
+        const recordsProcessor = (songs) => {
+            songs.forEach((song) => {
+                song.artist = song.artist || "";
+                song.album = song.album || "";
+                song.title = song.title || song.file;
+            });
+            return songs;
+        };
+        const chunkProcessor = onChunk ? (songs) => {
+            onChunk(recordsProcessor(songs.slice()));
+        } : undefined;
         let cmd;
         if (name) {
             cmd = "listplaylistinfo \""+name+"\"";
         } else {
             cmd = "playlistinfo"
         }
-        return this.createPromise(cmd, processor);
+        return this.createRecordsPromise(cmd, "songs", undefined, recordsProcessor, processor, chunkProcessor);
 	}
 
 	next() {
@@ -1170,7 +1702,7 @@ class MPDConnection {
 	}
 
 	setVolume(volume) {
-		this.queue.push({
+		this._enqueue({
 			cmd: "setvol "+volume,
 			response: "",
 			state: INITIAL
@@ -1513,7 +2045,7 @@ class MPDConnection {
 	}
 
 	clearPlayList() {
-		this.queue.push({
+		this._enqueue({
 			cmd: "clear",
 			response: "",
 			state: INITIAL
@@ -1525,7 +2057,7 @@ class MPDConnection {
 	}
 
 	update() {
-		this.queue.push({
+		this._enqueue({
 			cmd: "update ",
 			response: "",
 			state: INITIAL
@@ -1556,6 +2088,24 @@ class MPDConnection {
         return this.createPromise(cmd, processor);
     }
 
+    getMetrics() {
+        if (!nativeMetrics) {
+            return Promise.resolve(undefined);
+        }
+        return SocketConnection.getMetrics();
+    }
+
+    isBenchmarkSupported() {
+        return nativeBenchmark;
+    }
+
+    runBenchmark(options) {
+        if (!nativeBenchmark) {
+            return Promise.reject("Benchmark is not supported");
+        }
+        return SocketConnection.runBenchmark(options || {});
+    }
+
     saveDebugData(debugData) {
         SocketConnection.saveDebugData(JSON.stringify(debugData, ' ', '\t'));
     }
@@ -1823,6 +2373,11 @@ class MPDConnection {
     }
 
     binarylimit(limit) {
+        if (nativeAlbumArt) {
+            // sent natively once per connection before the next album art fetch
+            SocketConnection.setBinaryLimit(this.version > 21 ? limit : 0);
+            return Promise.resolve();
+        }
         if (this.version > 21) {
             return this.createPromise("binarylimit "+limit);
         } else {
@@ -1838,6 +2393,30 @@ class MPDConnection {
                 reject("Albumart is not supported");
                 return;
             }
+            if (nativeAlbumArt) {
+                const progressSubscription = socketConnectionEmitter.addListener(
+                    "OnAlbumArtProgress",
+                    (progress) => {
+                        if (progress.filename === filename && statusHandler) {
+                            statusHandler(progress.offset, progress.size);
+                        }
+                    }
+                );
+                SocketConnection.fetchAlbumArt(uri || "", filename, basecmd === "readpicture")
+                .then((result) => {
+                    progressSubscription.remove();
+                    resolve({artist: artist, album: album, song: uri, path: result.path, size: result.size, mime: result.mime});
+                })
+                .catch((err) => {
+                    progressSubscription.remove();
+                    if (err.code === "NoAlbumArt") {
+                        reject("No embedded album art for "+artist+" "+album);
+                    } else {
+                        reject(err.message);
+                    }
+                });
+                return;
+            }
             let offset = 0;
             let processor = (data, filename) => {
                 const lines = MPDConnection._lineSplit(data);
@@ -1890,7 +2469,27 @@ class MPDConnection {
         return urlPrefix;
     }
 
-    albumartFromURL(uri, port, artist, album, prefix, suffix, host) {
+    // downloads share one native HTTP client, higher priority requests are started first
+    _downloadAlbumArt(filename, url, priority) {
+        if (nativeDownloadScheduler) {
+            return SocketConnection.downloadAlbumArt(filename, url, priority === undefined ? DOWNLOAD_NORMAL : priority);
+        }
+        return SocketConnection.writeAlbumArtFromURL(filename, url);
+    }
+
+    setAlbumArtDownloadPriority(artist, album, priority) {
+        if (nativeDownloadScheduler) {
+            SocketConnection.setAlbumArtDownloadPriority('albumart_'+this.toAlbumArtFilename(artist, album)+".png", priority);
+        }
+    }
+
+    cancelAlbumArtDownload(artist, album) {
+        if (nativeDownloadScheduler) {
+            SocketConnection.cancelAlbumArtDownload('albumart_'+this.toAlbumArtFilename(artist, album)+".png");
+        }
+    }
+
+    albumartFromURL(uri, port, artist, album, prefix, suffix, host, priority) {
         const filename = 'albumart_'+this.toAlbumArtFilename(artist, album)+".png";
         let path = uri.substring(0, uri.lastIndexOf('/'))+"/";
         let url = this.buildURLPrefix(port, prefix, host);
@@ -1900,10 +2499,10 @@ class MPDConnection {
             path += "cover.png";        
         }
         url += encodeURI(path);
-        return SocketConnection.writeAlbumArtFromURL(filename, url);
+        return this._downloadAlbumArt(filename, url, priority);
     }
 
-    albumartFromURLWithSearch(uri, port, artist, album, prefix, download, host) {
+    albumartFromURLWithSearch(uri, port, artist, album, prefix, download, host, priority) {
         const filename = 'albumart_'+this.toAlbumArtFilename(artist, album)+".png";
         let path = uri.substring(0, uri.lastIndexOf('/'))+"/";
         let url = this.buildURLPrefix(port, prefix, host);
@@ -1933,7 +2532,7 @@ class MPDConnection {
                     url += encodedPath;
                     url += imageFile;
                     if (download) {
-                        SocketConnection.writeAlbumArtFromURL(filename, url)
+                        this._downloadAlbumArt(filename, url, priority)
                         .then(() => {
                             resolve(encodedPath+imageFile);
                         })
@@ -1957,9 +2556,9 @@ class MPDConnection {
         return promise;
     }
 
-    albumartFromUPnP(url, artist, album) {
+    albumartFromUPnP(url, artist, album, priority) {
         const filename = 'albumart_'+this.toAlbumArtFilename(artist, album)+".png";
-        return SocketConnection.writeAlbumArtFromURL(filename, url);
+        return this._downloadAlbumArt(filename, url, priority);
     }
 
     deleteAlbumArt(filename) {
@@ -1993,6 +2592,47 @@ class MPDConnection {
         return SocketConnection.listAlbumArtDir();
     }
 
+    isAlbumArtCacheSupported() {
+        return nativeAlbumArtCache;
+    }
+
+    hasAlbumArt(filename) {
+        if (!nativeAlbumArtCache) {
+            return this.listAlbumArtDir()
+            .then((files) => {
+                return files.includes(filename);
+            });
+        }
+        return SocketConnection.hasAlbumArt(filename);
+    }
+
+    touchAlbumArt(filename) {
+        if (nativeAlbumArtCache) {
+            SocketConnection.touchAlbumArt(filename);
+        }
+    }
+
+    // thumbnail and medium sized copies of the given album art files, keyed by filename
+    getAlbumArtVariants(filenames) {
+        if (!nativeAlbumArtVariants) {
+            return Promise.resolve({});
+        }
+        return SocketConnection.getAlbumArtVariants(filenames);
+    }
+
+    setAlbumArtCacheBudget(bytes) {
+        if (nativeAlbumArtCache) {
+            SocketConnection.setAlbumArtCacheBudget(bytes);
+        }
+    }
+
+    getAlbumArtCacheStats() {
+        if (!nativeAlbumArtCache) {
+            return Promise.resolve(undefined);
+        }
+        return SocketConnection.getAlbumArtCacheStats();
+    }
+
     getAlbumArtDir() {
         return this.albumArtDir;
     }
@@ -2131,7 +2771,7 @@ class MPDConnection {
 			});
 			return outputs;
 		};
-        return this.createPromise("outputs", processor);
+        return this.createRecordsPromise("outputs", "outputs", undefined, (outputs) => outputs, processor);
 	}
 
 	enableOutput(id) {
@@ -2211,7 +2851,7 @@ class MPDConnection {
                 cmd += "clear\n";
         		cmd += "command_list_end";
 
-                this.queue.push({
+                this._enqueue({
     				cmd: cmd,
     				cb: function() {
                         cb(albums.length + " Total playlists created");
@@ -2242,6 +2882,97 @@ class MPDConnection {
         return filename;
     }
 
+    // artists, albums and genres come straight from the on-disk snapshot, it is checked against db_update
+    // afterwards and when MPD's database has changed it is rebuilt and OnLibraryChange is emitted
+    getLibrary(useRaw, sortByArtist) {
+        const started = Date.now();
+        const key = this.host+":"+this.port;
+        const artistsSection = useRaw ? "artists_raw" : "artists";
+        const albumsSection = sortByArtist ? "albums_by_artist" : "albums";
+        const fetchLibrary = () => {
+            return Promise.all([this.getAllArtists(useRaw), this.getAllAlbums(true, sortByArtist), this.getAllGenres()]);
+        };
+        if (!nativeLibrarySnapshot) {
+            return fetchLibrary();
+        }
+        // NaN when the stats cannot be had, nothing is then saved against it
+        const getDbUpdate = () => {
+            return new Promise((resolve, reject) => {
+                this.getStats((stats) => {
+                    resolve(parseInt(stats["db_update"]));
+                }, reject);
+            })
+            .catch((err) => {
+                console.log("Failed to get db_update for the library snapshot : "+err);
+                return NaN;
+            });
+        };
+        // resolves with the library and whether the snapshot now holds it
+        const rebuild = (snapshot, dbUpdate) => {
+            return fetchLibrary()
+            .then((library) => {
+                if (isNaN(dbUpdate)) {
+                    return [library, false];
+                }
+                const sections = (snapshot && snapshot.dbUpdate === dbUpdate) ? snapshot.sections : {};
+                sections[artistsSection] = JSON.stringify(library[0]);
+                sections[albumsSection] = JSON.stringify(library[1]);
+                sections.genres = JSON.stringify(library[2]);
+                return SocketConnection.saveLibrarySnapshot(key, dbUpdate, sections)
+                .then(() => {
+                    return [library, true];
+                })
+                .catch((err) => {
+                    console.log("Failed to save library snapshot : "+err);
+                    return [library, false];
+                });
+            });
+        };
+        return SocketConnection.loadLibrarySnapshot(key)
+        .catch((err) => {
+            console.log("Failed to load library snapshot : "+err);
+            return null;
+        })
+        .then((snapshot) => {
+            if (snapshot && snapshot.sections[artistsSection] && snapshot.sections[albumsSection] && snapshot.sections.genres) {
+                const library = [JSON.parse(snapshot.sections[artistsSection]), JSON.parse(snapshot.sections[albumsSection]), JSON.parse(snapshot.sections.genres)];
+                this._recordLibraryTiming("warm", started, snapshot.loadTime);
+                getDbUpdate()
+                .then((dbUpdate) => {
+                    if (isNaN(dbUpdate) || snapshot.dbUpdate === dbUpdate) {
+                        return;
+                    }
+                    // only once saved, a listener that loads the library again then finds it current
+                    return rebuild(snapshot, dbUpdate)
+                    .then(([library, saved]) => {
+                        if (saved) {
+                            mpdEventEmiiter.emit('OnLibraryChange', {library: library, useRaw: useRaw, sortByArtist: sortByArtist});
+                        }
+                    });
+                })
+                .catch((err) => {
+                    console.log("Failed to revalidate library snapshot : "+err);
+                });
+                return library;
+            }
+            return getDbUpdate()
+            .then((dbUpdate) => {
+                return rebuild(snapshot, dbUpdate);
+            })
+            .then(([library]) => {
+                this._recordLibraryTiming("cold", started);
+                return library;
+            });
+        });
+    }
+
+    _recordLibraryTiming(type, started, loadTime) {
+        this.libraryTimings.push({type: type, latency: Date.now() - started, loadTime: loadTime, time: new Date().toISOString()});
+        if (this.libraryTimings.length > MAX_TIMINGS) {
+            this.libraryTimings.shift();
+        }
+    }
+
     getAllGenres() {
         const processor = (data) => {
 			const lines = MPDConnection._lineSplit(data);
@@ -2346,7 +3077,7 @@ class MPDConnection {
 				}
 			});
 		};
-		this.queue.push({
+		this._enqueue({
 			cmd: "decoders",
 			process: processor,
 			response: "",
@@ -2363,6 +3094,43 @@ class MPDConnection {
         return false;
     }
 
+    // ops are applied in the order given, positions refer to the list as the previous op left it
+    static applyPlayQueueChange(playlist, change) {
+        const placeholder = (id) => {
+            return {id: id, artist: "", album: "", title: "", file: "", placeholder: true};
+        };
+        let updated;
+        if (change.reset) {
+            const known = new Map();
+            playlist.forEach((song) => {
+                known.set(song.id, song);
+            });
+            updated = change.ids.map((id) => {
+                return known.has(id) ? known.get(id) : placeholder(id);
+            });
+        } else {
+            updated = playlist.slice();
+            change.ops.forEach((op) => {
+                if (op.op === "remove") {
+                    updated.splice(op.start, op.count);
+                } else if (op.op === "move") {
+                    const moved = updated.splice(op.from, 1);
+                    updated.splice(op.to, 0, moved[0]);
+                } else if (op.op === "insert") {
+                    updated.splice(op.start, 0, ...op.ids.map(placeholder));
+                }
+            });
+        }
+        return updated.map((song, pos) => {
+            return song.pos === pos ? song : Object.assign({}, song, {pos: pos});
+        });
+    }
+
+	static _isBulkCommand(cmd) {
+		const verb = cmd.substring(0, cmd.indexOf(' ') === -1 ? cmd.length : cmd.indexOf(' '));
+		return BULK_COMMANDS.indexOf(verb) !== -1;
+	}
+
 	static _lineSplit(data) {
 		let lines = [];
 		let split = data.split(/\n\r|\n|\r/);
@@ -2556,5 +3324,21 @@ export default {
     rescan: function() {
         discoverer.stopListening();
         discoverer.startListening();
-    }
+    },
+    applyPlayQueueChange: function(playlist, change) {
+        return MPDConnection.applyPlayQueueChange(playlist, change);
+    },
+    // resolves with the connect handshake time in ms, or undefined where it cannot be measured
+    measureLatency: function(host, port) {
+        if (!nativeLatency) {
+            return Promise.resolve(undefined);
+        }
+        return SocketConnection.measureLatency(host, port)
+        .then((result) => {
+            return result.rtt;
+        });
+    },
+    DOWNLOAD_VISIBLE: DOWNLOAD_VISIBLE,
+    DOWNLOAD_NORMAL: DOWNLOAD_NORMAL,
+    DOWNLOAD_PREFETCH: DOWNLOAD_PREFETCH
 }
@@ -0,0 +1,97 @@
+/*
+* The MIT License (MIT)
+*
+* Copyright (c) 2019 Richard Backhouse
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+* to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+* and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+* DEALINGS IN THE SOFTWARE.
+*/
+
+import EventEmitter from "react-native/Libraries/vendor/emitter/EventEmitter";
+
+import { NativeEventEmitter, NativeModules } from 'react-native';
+
+const { SocketConnection } = NativeModules;
+const socketConnectionEmitter = new NativeEventEmitter(SocketConnection);
+const zonesEventEmiiter = new EventEmitter();
+
+// connections to additional MPD servers, all multiplexed on the native connection engine
+const zones = {};
+
+socketConnectionEmitter.addListener(
+    "OnHandleStateChange",
+    (state) => {
+        const zone = zones[state.handle];
+        if (!zone) {
+            return;
+        }
+        if (state.msg === "connected") {
+            zone.connected = true;
+            zone.version = state.version;
+        } else if (state.msg === "disconnected") {
+            delete zones[state.handle];
+        }
+        zonesEventEmiiter.emit('OnZoneStateChange', {handle: state.handle, host: zone.host, port: zone.port, msg: state.msg, reason: state.reason});
+    }
+);
+
+socketConnectionEmitter.addListener(
+    "OnHandleSubsystemChange",
+    (change) => {
+        const zone = zones[change.handle];
+        if (!zone) {
+            return;
+        }
+        if (change.status) {
+            zone.status = change.status;
+        }
+        zonesEventEmiiter.emit('OnZoneStatus', {handle: change.handle, host: zone.host, port: zone.port, subsystems: change.subsystems, status: zone.status});
+    }
+);
+
+export default {
+    isSupported: function() {
+        return SocketConnection.openHandle !== undefined;
+    },
+    openZone: function(host, port, pwd) {
+        return SocketConnection.openHandle(host, port, pwd ? pwd : null)
+        .then((handle) => {
+            zones[handle] = {host: host, port: port, connected: false};
+            return handle;
+        });
+    },
+    closeZone: function(handle) {
+        SocketConnection.closeHandle(handle);
+        delete zones[handle];
+    },
+    watchZone: function(handle) {
+        SocketConnection.watchHandle(handle);
+    },
+    unwatchZone: function(handle) {
+        SocketConnection.unwatchHandle(handle);
+    },
+    sendCommand: function(handle, cmd, format) {
+        const options = format ? {format: format} : {};
+        return SocketConnection.sendHandleCommand(handle, cmd+"\n", options)
+        .then((response) => {
+            return response.records ? response.records : response.data;
+        });
+    },
+    getZones: function() {
+        return Object.keys(zones).map((handle) => {
+            const zone = zones[handle];
+            return {handle: parseInt(handle), host: zone.host, port: zone.port, connected: zone.connected, version: zone.version, status: zone.status};
+        });
+    },
+    getEventEmitter: function() {
+        return zonesEventEmiiter;
+    }
+}
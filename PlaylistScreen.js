@@ -30,6 +30,9 @@ import MPDConnection from './MPDConnection';
 import Config from './Config';
 import { StyleManager } from './Styles';
 
+// rows either side of the visible ones that are loaded ahead of scrolling
+const WINDOW_MARGIN = 20;
+
 class RandomPlaylistTypeModal extends React.Component {
     state = {
         type: "artist",
@@ -106,6 +109,7 @@ export default class PlaylistScreen extends React.Component {
         super(props);
         this.selectedRowHeight = 89;
         this.rowHeight = 89;
+        this.mirror = MPDConnection.current().isPlayQueueMirrorSupported();
         this.state = {
           playlist: [],
           status: undefined,
@@ -119,7 +123,11 @@ export default class PlaylistScreen extends React.Component {
     }
 
     componentDidMount() {
-        this.load();
+        if (this.mirror) {
+            this.startMirror();
+        } else {
+            this.load();
+        }
         this.onStatus = MPDConnection.getEventEmitter().addListener(
             "OnStatus",
             (status) => {
@@ -135,13 +143,19 @@ export default class PlaylistScreen extends React.Component {
                     }
                     return {selected};
                 });
-                if (status.songid && status.consume === '1') {
-                    if (this.state.currentSongId !== status.songid) {
+                if (this.mirror) {
+                    if (this.queueVersion !== undefined && status.playlist !== undefined && parseInt(status.playlist) !== this.queueVersion) {
+                        this.load();
+                    }
+                } else {
+                    if (status.songid && status.consume === '1') {
+                        if (this.state.currentSongId !== status.songid) {
+                            this.load();
+                        }
+                    }
+                    if (status.reloadqueue) {
                         this.load();
                     }
-                }
-                if (status.reloadqueue) {
-                    this.load();
                 }
                 this.setState({currentSongId: status.songid});
             }
@@ -157,6 +171,85 @@ export default class PlaylistScreen extends React.Component {
     componentWillUnmount() {
         this.didFocusSubscription.remove();
         this.onStatus.remove();
+        if (this.onPlayQueueChange) {
+            this.onPlayQueueChange.remove();
+            MPDConnection.current().stopPlayQueueMirror();
+        }
+    }
+
+    // the queue is kept in step by OnPlayQueueChange, song details are only fetched for the rows on screen
+    startMirror() {
+        this.visible = {first: 0, last: 20};
+        this.setState({playlist: [], loading: true});
+        this.onPlayQueueChange = MPDConnection.getEventEmitter().addListener(
+            "OnPlayQueueChange",
+            (change) => {
+                this.queueVersion = change.version;
+                this.setState((state) => {
+                    return {playlist: MPDConnection.applyPlayQueueChange(state.playlist, change)};
+                }, () => {
+                    this.fillVisible();
+                    this.updateTotalTime(this.state.playlist);
+                });
+            }
+        );
+        MPDConnection.current().startPlayQueueMirror()
+        .then((queue) => {
+            this.queueVersion = queue.version;
+            this.setState({loading: false});
+            this.scrollToCurrent();
+        })
+        .catch((err) => {
+            this.setState({loading: false});
+            Alert.alert(
+                "MPD Error",
+                "Error : "+err
+            );
+        });
+    }
+
+    onViewableItemsChanged = ({viewableItems}) => {
+        if (viewableItems.length > 0) {
+            this.visible = {first: viewableItems[0].index, last: viewableItems[viewableItems.length-1].index};
+            this.fillVisible();
+        }
+    };
+
+    fillVisible() {
+        if (this.fetching) {
+            this.fetchAgain = true;
+            return;
+        }
+        const start = Math.max(0, this.visible.first - WINDOW_MARGIN);
+        const end = Math.min(this.state.playlist.length, this.visible.last + WINDOW_MARGIN + 1);
+        const missing = this.state.playlist.slice(start, end).some((song) => song.placeholder);
+        if (!missing) {
+            return;
+        }
+        this.fetching = true;
+        MPDConnection.current().getPlayQueueWindow(start, end)
+        .then((songs) => {
+            const loaded = new Map();
+            songs.forEach((song) => {
+                loaded.set(song.id, song);
+            });
+            this.setState((state) => {
+                return {playlist: state.playlist.map((song, pos) => {
+                    return song.placeholder && loaded.has(song.id) ? Object.assign(loaded.get(song.id), {pos: pos}) : song;
+                })};
+            }, () => {
+                this.updateTotalTime(this.state.playlist);
+                this.fetching = false;
+                if (this.fetchAgain) {
+                    this.fetchAgain = false;
+                    this.fillVisible();
+                }
+            });
+        })
+        .catch((err) => {
+            this.fetching = false;
+            console.log("Play queue window failed : "+err);
+        });
     }
 
     onPrevious() {
@@ -312,46 +405,23 @@ export default class PlaylistScreen extends React.Component {
     }
 
     load() {
+        if (this.mirror) {
+            MPDConnection.current().syncPlayQueue()
+            .catch((err) => {
+                console.log("Play queue sync failed : "+err);
+            });
+            return;
+        }
         this.setState({loading: true});
 
-        MPDConnection.current().getPlayListInfo()
+        MPDConnection.current().getPlayListInfo((partial) => {
+            this.setState({loading: false, playlist: partial});
+        })
         .then((playlist) => {
             this.setState({loading: false});
             this.setState({playlist: playlist});
-
-            let totalTime = 0;
-            playlist.forEach((entry) => {
-                if (entry.rawTime) {
-                    totalTime += Math.floor(parseInt(entry.rawTime));
-                }
-            });
-            if (totalTime > 0) {
-                const hours = Math.floor(totalTime / 3600)
-                if (hours > 0) {
-                    totalTime %= 3600;
-                }
-                const minutes = Math.floor(totalTime / 60);
-        		let seconds = totalTime - minutes * 60;
-        		seconds = (seconds < 10 ? '0' : '') + seconds;
-                if (hours > 0) {
-        		    this.setState({totalTime: hours+"h "+minutes+"m "+seconds+"s"});
-                } else {
-                    this.setState({totalTime: minutes+"m "+seconds+"s"});
-                }
-            } else {
-                this.setState({totalTime: ""});
-            }
-            MPDConnection.current().getStatus((status) => {
-                if (status.song && this.listRef) {
-                    let viewPosition = 0.5;
-                    const playlistlength = parseInt(status.playlistlength);
-                    const song = parseInt(status.song);
-                    if (playlistlength-song < 8) {
-                        viewPosition = 1;
-                    }
-                    this.listRef.scrollToIndex({animated: true, index: song, viewPosition: viewPosition});
-                }
-            });
+            this.updateTotalTime(playlist);
+            this.scrollToCurrent();
         })
         .catch((err) => {
             this.setState({loading: false});
@@ -362,6 +432,49 @@ export default class PlaylistScreen extends React.Component {
         });
     }
 
+    // only known once every song in the queue has been loaded
+    updateTotalTime(playlist) {
+        let totalTime = 0;
+        let complete = true;
+        playlist.forEach((entry) => {
+            if (entry.placeholder) {
+                complete = false;
+            } else if (entry.rawTime) {
+                totalTime += Math.floor(parseInt(entry.rawTime));
+            }
+        });
+        if (totalTime > 0 && complete) {
+            const hours = Math.floor(totalTime / 3600)
+            if (hours > 0) {
+                totalTime %= 3600;
+            }
+            const minutes = Math.floor(totalTime / 60);
+    		let seconds = totalTime - minutes * 60;
+    		seconds = (seconds < 10 ? '0' : '') + seconds;
+            if (hours > 0) {
+    		    this.setState({totalTime: hours+"h "+minutes+"m "+seconds+"s"});
+            } else {
+                this.setState({totalTime: minutes+"m "+seconds+"s"});
+            }
+        } else {
+            this.setState({totalTime: ""});
+        }
+    }
+
+    scrollToCurrent() {
+        MPDConnection.current().getStatus((status) => {
+            if (status.song && this.listRef && parseInt(status.song) < this.state.playlist.length) {
+                let viewPosition = 0.5;
+                const playlistlength = parseInt(status.playlistlength);
+                const song = parseInt(status.song);
+                if (playlistlength-song < 8) {
+                    viewPosition = 1;
+                }
+                this.listRef.scrollToIndex({animated: true, index: song, viewPosition: viewPosition});
+            }
+        });
+    }
+
     doRandom() {
         Config.isRandomPlaylistByType()
         .then((isRandomPlaylistByType) => {
@@ -485,6 +598,7 @@ export default class PlaylistScreen extends React.Component {
                     extraData={this.state.selected}
                     ref={(ref) => { this.listRef = ref; }}
                     getItemLayout={this.getItemLayout}
+                    onViewableItemsChanged={this.mirror ? this.onViewableItemsChanged : undefined}
                 />
                 </View>
                 {this.state.loading &&
@@ -89,12 +89,20 @@ export default class SearchScreen extends React.Component {
         }
         this.setState({searchValue: text});
         let artists = [], albums = [], songs = [], artistCheck = [], albumCheck = [];
-        if (text.length > 2) {
+        // the local index answers every keystroke once a term is long enough to narrow it, a query of only
+        // 1 or 2 character terms scans every song so it waits for a pause, the server is only asked after one
+        const indexed = MPDConnection.current().hasSearchIndex();
+        const narrowed = indexed && text.split(" ").some((term) => term.length > 2);
+        if (text.length > (indexed ? 1 : 2)) {
             clearTimeout(this.typingTimeout);
+            const searchId = this.searchId = (this.searchId || 0) + 1;
             this.typingTimeout = setTimeout(() => {
                 this.setState({loading: true});
                 MPDConnection.current().search(text.toLowerCase(), 0, max)
                 .then((results) => {
+                    if (searchId !== this.searchId) {
+                        return;
+                    }
                     this.setState({loading: false});
                     results.forEach((result) => {
                         let artist = {artist: result.artist, key: result.artist, traverse: true};
@@ -165,8 +173,9 @@ export default class SearchScreen extends React.Component {
                         "Error : "+err
                     );
                 });
-            }, 750);
+            }, narrowed ? 0 : indexed ? 300 : 750);
         } else {
+            clearTimeout(this.typingTimeout);
             let state = {
                 artists: artists,
                 albums: albums,
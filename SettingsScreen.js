@@ -386,7 +386,8 @@ export default class SettingsScreen extends React.Component {
         sortAlbumsByArtist: false,
         sortFilesByTitle: false,
         useNowPlayingControl: false,
-        useRawArtistName: false
+        useRawArtistName: false,
+        warmResume: false
     }
 
     componentDidMount() {
@@ -422,6 +423,10 @@ export default class SettingsScreen extends React.Component {
         .then((value) => {
             this.setState({randomPlaylistSize: value});
         });
+        Config.isWarmResume()
+        .then((value) => {
+            this.setState({warmResume: value});
+        });
         Config.isUseRawArtistName()
         .then((value) => {
             this.setState({useRawArtistName: value});
@@ -620,6 +625,14 @@ export default class SettingsScreen extends React.Component {
         Config.setUseRawArtistName(value);
     }
 
+    onWarmResume(value) {
+        this.setState({warmResume: value});
+        Config.setWarmResume(value);
+        if (MPDConnection.isConnected()) {
+            MPDConnection.current().setWarmResume(value);
+        }
+    }
+
     onSortAlbumsByArtist(value) {
         this.setState({sortAlbumsByArtist: value});
         Config.setSortSettings({albumSortByArtist: value, fileSortByTitle: this.state.sortFilesByTitle});
@@ -820,6 +833,14 @@ export default class SettingsScreen extends React.Component {
                                 hasSwitch={true}
                                 switchOnValueChange={(value) => this.onUseRawArtistName(value)}
                                 title='Use Raw Artist Names'/>
+                    {Platform.OS === 'android' &&
+                        <SettingsList.Item
+                            hasNavArrow={false}
+                                    switchState={this.state.warmResume}
+                                    hasSwitch={true}
+                                    switchOnValueChange={(value) => this.onWarmResume(value)}
+                                    title='Keep Connection Open in Background'/>
+                    }
                     <SettingsList.Header headerStyle={styles.headerStyle} headerText="Sort Options"/>
                     <SettingsList.Item
                         hasNavArrow={false}
@@ -32,22 +32,26 @@ class Discoverer {
     startListening() {
         this.subscription = emitter.addListener(
             "OnUPnPDiscover",
-            (discovered) => {
-                if (discovered.type === "mediaserver") {
-                    if (discovered.action === "find") {
-                        this.mediaservers[discovered.udn] = discovered;
-                    } else {
-                        delete this.mediaservers[discovered.udn];
+            (events) => {
+                // android batches discoveries into an array, iOS sends them one at a time
+                const discoveredList = Array.isArray(events) ? events : [events];
+                discoveredList.forEach((discovered) => {
+                    if (discovered.type === "mediaserver") {
+                        if (discovered.action === "find") {
+                            this.mediaservers[discovered.udn] = discovered;
+                        } else {
+                            delete this.mediaservers[discovered.udn];
+                        }
+                        upnpEventEmiiter.emit('OnServerDiscover', discovered);
+                    } else if (discovered.type === "mediarenderer") {
+                        if (discovered.action === "find") {
+                            this.mediarenderers[discovered.udn] = discovered;
+                        } else {
+                            delete this.mediarenderers[discovered.udn];
+                        }
+                        upnpEventEmiiter.emit('OnRendererDiscover', discovered);
                     }
-                    upnpEventEmiiter.emit('OnServerDiscover', discovered);
-                } else if (discovered.type === "mediarenderer") {
-                    if (discovered.action === "find") {
-                        this.mediarenderers[discovered.udn] = discovered;
-                    } else {
-                        delete this.mediarenderers[discovered.udn];
-                    }
-                    upnpEventEmiiter.emit('OnRendererDiscover', discovered);
-                }
+                });
             }
         );
         UPnP.startListening();
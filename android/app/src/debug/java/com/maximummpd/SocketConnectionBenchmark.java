@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import com.maximummpd.protocol.FakeMPDServer;
+import com.maximummpd.protocol.MPDResponseParser;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Drives a ReadThread against FakeMPDServer the same way the app does: a full listallinfo parsed into
+ * records, album art fetched in chunks into the cache, sequential pings for round trip latency and an
+ * unknown command for the ACK path. Results are in ms and MB/s. Debug builds only, the release build has
+ * a SocketConnectionBenchmark that rejects.
+ */
+public class SocketConnectionBenchmark implements Runnable {
+    private final int songs;
+    private final int artSize;
+    private final int covers;
+    private final int rounds;
+    private final int pings;
+    private final int latency;
+    private final int bandwidth;
+    private final SocketConnectionModule module;
+    private final Promise promise;
+
+    public static void start(SocketConnectionModule module, ReadableMap options, Promise promise) {
+        new Thread(new SocketConnectionBenchmark(module, options, promise), "MPDBenchmark").start();
+    }
+
+    private SocketConnectionBenchmark(SocketConnectionModule module, ReadableMap options, Promise promise) {
+        this.module = module;
+        this.songs = option(options, "songs", 20000);
+        this.artSize = option(options, "artSize", 256 * 1024);
+        this.covers = option(options, "covers", 20);
+        this.rounds = option(options, "rounds", 3);
+        this.pings = option(options, "pings", 100);
+        this.latency = option(options, "latency", 0);
+        this.bandwidth = option(options, "bandwidth", 0);
+        this.promise = promise;
+    }
+
+    @Override
+    public void run() {
+        FakeMPDServer server;
+        try {
+            server = FakeMPDServer.start(songs, artSize, latency, bandwidth);
+        } catch (IOException e) {
+            promise.reject("BenchmarkError", e.getLocalizedMessage());
+            return;
+        }
+        SocketConnectionModule.ReadThread thread = module.openBenchmarkConnection(server.getPort());
+        try {
+            long waitUntil = System.currentTimeMillis() + 10000;
+            while (!thread.isConnected()) {
+                if (thread.isShutdown() || System.currentTimeMillis() > waitUntil) {
+                    throw new IOException("unable to connect to the benchmark server");
+                }
+                Thread.sleep(10);
+            }
+            WritableMap results = Arguments.createMap();
+            results.putMap("listing", listing(thread));
+            results.putMap("albumArt", albumArt(thread));
+            results.putMap("ping", ping(thread));
+            results.putBoolean("ack", ack(thread));
+            results.putInt("latency", latency);
+            results.putInt("bandwidth", bandwidth);
+            promise.resolve(results);
+        } catch (IOException e) {
+            promise.reject("BenchmarkError", e.getLocalizedMessage());
+        } catch (InterruptedException e) {
+            promise.reject("BenchmarkError", "interrupted");
+        } finally {
+            thread.shutdown();
+            server.close();
+        }
+    }
+
+    private WritableMap listing(SocketConnectionModule.ReadThread thread) throws IOException, InterruptedException {
+        double best = Double.MAX_VALUE;
+        double total = 0;
+        int records = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            WritableMap response = (WritableMap) call(thread, "listallinfo\n", MPDResponseParser.FORMAT_SONGS);
+            double ms = (System.nanoTime() - start) / 1000000.0;
+            records = response.getArray("records").size();
+            best = Math.min(best, ms);
+            total += ms;
+        }
+        WritableMap results = Arguments.createMap();
+        results.putInt("songs", records);
+        results.putInt("rounds", rounds);
+        results.putDouble("best", best);
+        results.putDouble("mean", total / rounds);
+        results.putDouble("songsPerSecond", records / (best / 1000.0));
+        return results;
+    }
+
+    private WritableMap albumArt(SocketConnectionModule.ReadThread thread) throws IOException, InterruptedException {
+        List<BenchmarkCall> calls = new ArrayList<BenchmarkCall>();
+        long start = System.nanoTime();
+        for (int i = 0; i < covers; i++) {
+            BenchmarkCall call = new BenchmarkCall();
+            calls.add(call);
+            module.benchmarkAlbumArt(thread, "Benchmark/"+i+".flac", "mpdbenchmark_"+i+".png", call.promise());
+        }
+        for (BenchmarkCall call : calls) {
+            call.await();
+        }
+        double ms = (System.nanoTime() - start) / 1000000.0;
+        for (int i = 0; i < covers; i++) {
+            module.deleteAlbumArtFile("mpdbenchmark_"+i+".png");
+        }
+        WritableMap results = Arguments.createMap();
+        results.putInt("covers", covers);
+        results.putInt("size", artSize);
+        results.putDouble("time", ms);
+        results.putDouble("mbPerSecond", ((double) covers * artSize / (1024 * 1024)) / (ms / 1000.0));
+        return results;
+    }
+
+    private WritableMap ping(SocketConnectionModule.ReadThread thread) throws IOException, InterruptedException {
+        double[] times = new double[Math.max(1, pings)];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            call(thread, "ping\n", null);
+            times[i] = (System.nanoTime() - start) / 1000000.0;
+        }
+        Arrays.sort(times);
+        WritableMap results = Arguments.createMap();
+        results.putInt("count", times.length);
+        results.putDouble("p50", times[times.length / 2]);
+        results.putDouble("p99", times[Math.min(times.length - 1, (int) Math.ceil(times.length * 0.99) - 1)]);
+        results.putDouble("max", times[times.length - 1]);
+        return results;
+    }
+
+    private boolean ack(SocketConnectionModule.ReadThread thread) throws InterruptedException {
+        try {
+            call(thread, "benchmarkunknown\n", null);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private Object call(SocketConnectionModule.ReadThread thread, String message, String format) throws IOException, InterruptedException {
+        BenchmarkCall call = new BenchmarkCall();
+        module.benchmarkCommand(thread, message, format, call.promise());
+        return call.await();
+    }
+
+    private int option(ReadableMap options, String key, int defaultValue) {
+        return options.hasKey(key) && !options.isNull(key) ? options.getInt(key) : defaultValue;
+    }
+
+    private static class BenchmarkCall {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Object result = null;
+        private volatile String error = null;
+
+        private Promise promise() {
+            return new PromiseImpl(new Callback() {
+                @Override
+                public void invoke(Object... args) {
+                    result = args.length > 0 ? args[0] : null;
+                    latch.countDown();
+                }
+            }, new Callback() {
+                @Override
+                public void invoke(Object... args) {
+                    error = args.length > 0 ? String.valueOf(args[0]) : "rejected";
+                    latch.countDown();
+                }
+            });
+        }
+
+        private Object await() throws IOException, InterruptedException {
+            if (!latch.await(120, TimeUnit.SECONDS)) {
+                throw new IOException("timed out");
+            }
+            if (error != null) {
+                throw new IOException(error);
+            }
+            return result;
+        }
+    }
+}
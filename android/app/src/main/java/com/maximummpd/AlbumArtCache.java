@@ -0,0 +1,429 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Keeps the album art directory within a byte budget. Every file in it has an entry in an access
+ * ordered map, least recently used first, which is persisted to a manifest next to the directory so
+ * lookups and listings never have to walk the directory itself. The directory is only listed once,
+ * when there is no manifest yet.
+ *
+ * Completed files are also stored by content: each distinct image is kept once in .blobs under its
+ * SHA-1 and every album file with the same bytes is a hard link to it, so identical covers shared by
+ * compilations or multi disc sets take the space of one and the budget counts each blob once.
+ * The directory lives on internal storage, the FUSE/sdcardfs mounts behind external storage refuse
+ * hard links. A file that still cannot be linked is kept as a full copy, logged and counted.
+ *
+ * manifest layout: magic, version, entry count, then name / size / last access / hash per entry in LRU order
+ */
+public class AlbumArtCache {
+    private static final int MAGIC = 0x4d4d4143;
+    private static final int VERSION = 2;
+    private static final String BLOB_DIR = ".blobs";
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    private static class Entry {
+        private long size;
+        private long lastAccess;
+        private final String hash;
+
+        private Entry(long size, long lastAccess, String hash) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.hash = hash;
+        }
+    }
+
+    private final File dir;
+    private final File manifest;
+    private final File blobDir;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    private final Map<String, Integer> blobRefs = new HashMap<String, Integer>();
+    private long budget = DEFAULT_BUDGET;
+    private long total = 0;
+    private int linkFailures = 0;
+    private boolean dirty = false;
+
+    public AlbumArtCache(File dir, File manifest) {
+        this.dir = dir;
+        this.manifest = manifest;
+        this.blobDir = new File(dir, BLOB_DIR);
+    }
+
+    public synchronized void load() {
+        clear();
+        try {
+            if (manifest.exists() && read()) {
+                return;
+            }
+        } catch (IOException e) {
+            manifest.delete();
+        }
+        clear();
+        scan();
+        dirty = true;
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int blobs() {
+        return blobRefs.size();
+    }
+
+    // completed files kept as full copies because they could not be linked to their blob
+    public synchronized int linkFailures() {
+        return linkFailures;
+    }
+
+    // does not count as an access, the loader checks every album on each run
+    public synchronized boolean has(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized boolean touch(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return false;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        dirty = true;
+        return true;
+    }
+
+    // records a file that is still being written to, it is not shared with other files
+    public synchronized List<String> add(String name) {
+        return put(name, "");
+    }
+
+    // records a completed file, replacing it with a link to the blob of the same content when there is one.
+    // Hashing happens outside the lock, filesystems without hard links keep the file as it is.
+    public List<String> store(String name) {
+        File file = new File(dir, name);
+        String hash;
+        try {
+            hash = hash(file);
+        } catch (IOException e) {
+            hash = "";
+        }
+        synchronized (this) {
+            if (hash.length() > 0 && !link(file, hash)) {
+                hash = "";
+            }
+            return put(name, hash);
+        }
+    }
+
+    // moves the album art of a cache directory from an older install into this one, storing each
+    // so identical covers are linked on the way. Anything else there, mpddebug.json included, is left
+    public List<String> migrate(File from) {
+        List<String> evicted = new ArrayList<String>();
+        File[] files = from.listFiles();
+        if (files == null) {
+            return evicted;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (!f.isFile() || !isAlbumArt(name)) {
+                continue;
+            }
+            File to = new File(dir, name);
+            try {
+                if (!to.exists() && !f.renameTo(to)) {
+                    copy(f, to);
+                }
+                evicted.addAll(store(name));
+            } catch (IOException e) {
+                Log.d("SockectConnection", "failed to migrate album art file "+f.getAbsolutePath()+" : "+e.getLocalizedMessage());
+                to.delete();
+            }
+            f.delete();
+        }
+        // only goes once nothing else is left in it
+        from.delete();
+        return evicted;
+    }
+
+    // the names JS gives album art, anything else in the directory is not part of the cache
+    static boolean isAlbumArt(String name) {
+        return name.startsWith("albumart_") && !name.endsWith(".part");
+    }
+
+    public synchronized void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            release(entry);
+            dirty = true;
+        }
+    }
+
+    public synchronized List<String> names() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    public synchronized List<String> trim() {
+        return evict(null);
+    }
+
+    // the entry just added is never evicted, even when it alone is over budget
+    private List<String> evict(String keep) {
+        List<String> evicted = new ArrayList<String>();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (total > budget && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            it.remove();
+            new File(dir, eldest.getKey()).delete();
+            release(eldest.getValue());
+            evicted.add(eldest.getKey());
+        }
+        if (evicted.size() > 0) {
+            dirty = true;
+        }
+        return evicted;
+    }
+
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File part = new File(manifest.getParentFile(), manifest.getName()+".part");
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part), 65536));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                os.writeUTF(entry.getKey());
+                os.writeLong(entry.getValue().size);
+                os.writeLong(entry.getValue().lastAccess);
+                os.writeUTF(entry.getValue().hash);
+            }
+        } finally {
+            os.close();
+        }
+        if (!part.renameTo(manifest)) {
+            part.delete();
+            throw new IOException("failed to rename "+part.getAbsolutePath());
+        }
+        dirty = false;
+    }
+
+    private boolean read() throws IOException {
+        DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest), 65536));
+        try {
+            if (is.readInt() != MAGIC) {
+                return false;
+            }
+            int version = is.readInt();
+            if (version < 1 || version > VERSION) {
+                return false;
+            }
+            int count = is.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = is.readUTF();
+                long size = is.readLong();
+                long lastAccess = is.readLong();
+                Entry entry = new Entry(size, lastAccess, version > 1 ? is.readUTF() : "");
+                entries.put(name, entry);
+                retain(entry);
+            }
+            return true;
+        } finally {
+            is.close();
+        }
+    }
+
+    // first run against an existing directory, files are ordered by when they were written
+    private void scan() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File f : files) {
+            String name = f.getName();
+            if (!f.isFile() || !isAlbumArt(name)) {
+                continue;
+            }
+            Entry entry = new Entry(f.length(), f.lastModified(), "");
+            entries.put(name, entry);
+            retain(entry);
+        }
+    }
+
+    private List<String> put(String name, String hash) {
+        File file = new File(dir, name);
+        Entry old = entries.remove(name);
+        if (file.exists()) {
+            Entry entry = new Entry(file.length(), System.currentTimeMillis(), hash);
+            entries.put(name, entry);
+            retain(entry);
+        }
+        // released after the new entry is retained so a blob shared by both is never deleted in between
+        if (old != null) {
+            release(old);
+        }
+        dirty = true;
+        return evict(name);
+    }
+
+    private void retain(Entry entry) {
+        if (entry.hash.length() == 0) {
+            total += entry.size;
+            return;
+        }
+        Integer refs = blobRefs.get(entry.hash);
+        if (refs == null) {
+            total += entry.size;
+            refs = 0;
+        }
+        blobRefs.put(entry.hash, refs + 1);
+    }
+
+    private void release(Entry entry) {
+        if (entry.hash.length() == 0) {
+            total -= entry.size;
+            return;
+        }
+        Integer refs = blobRefs.get(entry.hash);
+        if (refs == null) {
+            return;
+        }
+        if (refs > 1) {
+            blobRefs.put(entry.hash, refs - 1);
+            return;
+        }
+        blobRefs.remove(entry.hash);
+        total -= entry.size;
+        new File(blobDir, entry.hash).delete();
+    }
+
+    private boolean link(File file, String hash) {
+        if (!blobDir.exists() && !blobDir.mkdirs()) {
+            return false;
+        }
+        File blob = new File(blobDir, hash);
+        try {
+            if (blob.exists()) {
+                File linked = new File(dir, file.getName()+".part");
+                linked.delete();
+                Os.link(blob.getAbsolutePath(), linked.getAbsolutePath());
+                Os.rename(linked.getAbsolutePath(), file.getAbsolutePath());
+            } else {
+                Os.link(file.getAbsolutePath(), blob.getAbsolutePath());
+            }
+            return true;
+        } catch (ErrnoException e) {
+            linkFailures++;
+            Log.d("SockectConnection", "album art "+file.getName()+" kept as a copy, link failed : "+e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream is = new FileInputStream(from);
+        try {
+            FileOutputStream os = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[16384];
+                int len;
+                while ((len = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, len);
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private void clear() {
+        entries.clear();
+        blobRefs.clear();
+        total = 0;
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return "";
+        }
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[16384];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+        } finally {
+            is.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/*
+ * Downloads album art over HTTP with one shared client, so connections to the art server are kept
+ * alive and reused. Requests wait in a queue ordered by priority and are started while fewer than
+ * MAX_PER_HOST are running against their host. A request for a file that is already queued or running
+ * is joined to it rather than fetched twice.
+ */
+public class AlbumArtDownloader {
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_PREFETCH = 2;
+    private static final int MAX_PER_HOST = 2;
+    private static final int MAX_ACTIVE = 6;
+
+    public interface Listener {
+        void onDownloaded(String filename);
+    }
+
+    private static class Download {
+        private final String filename;
+        private final String url;
+        private final Request request;
+        private final String host;
+        private final long sequence;
+        private final List<Promise> promises = new ArrayList<Promise>();
+        private int priority;
+        private Call call = null;
+        private volatile boolean cancelled = false;
+
+        private Download(String filename, String url, Request request, int priority, long sequence) {
+            this.filename = filename;
+            this.url = url;
+            this.request = request;
+            this.host = request.url().host();
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private final File dir;
+    private final Listener listener;
+    private final OkHttpClient client;
+    private final List<Download> queued = new ArrayList<Download>();
+    private final Map<String, Download> downloads = new HashMap<String, Download>();
+    private final Map<String, Integer> hostActive = new HashMap<String, Integer>();
+    private int active = 0;
+    private long sequence = 0;
+
+    public AlbumArtDownloader(File dir, Listener listener) {
+        this.dir = dir;
+        this.listener = listener;
+        this.client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_ACTIVE, 5, TimeUnit.MINUTES))
+                .build();
+    }
+
+    public synchronized void download(String filename, String url, int priority, Promise promise) {
+        Download download = downloads.get(filename);
+        if (download != null && download.url.equals(url)) {
+            download.promises.add(promise);
+            if (priority < download.priority) {
+                download.priority = priority;
+                schedule();
+            }
+            return;
+        }
+        if (download != null) {
+            cancel(filename);
+        }
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(url)
+                    .addHeader("Accept", "image/*")
+                    .get()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            promise.reject("InvalidURL", e.getLocalizedMessage());
+            return;
+        }
+        download = new Download(filename, url, request, priority, sequence++);
+        download.promises.add(promise);
+        downloads.put(filename, download);
+        queued.add(download);
+        schedule();
+    }
+
+    public synchronized void setPriority(String filename, int priority) {
+        Download download = downloads.get(filename);
+        if (download != null && download.call == null) {
+            download.priority = priority;
+            schedule();
+        }
+    }
+
+    // a queued request is dropped straight away, a running one is cancelled and rejected by its callback
+    public synchronized void cancel(String filename) {
+        Download download = downloads.remove(filename);
+        if (download == null) {
+            return;
+        }
+        download.cancelled = true;
+        if (queued.remove(download)) {
+            for (Promise promise : download.promises) {
+                promise.reject("Cancelled", "download of "+filename+" cancelled");
+            }
+        } else if (download.call != null) {
+            download.call.cancel();
+        }
+    }
+
+    public synchronized int getQueued() {
+        return queued.size();
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    private void schedule() {
+        while (active < MAX_ACTIVE) {
+            Download next = null;
+            for (Download download : queued) {
+                if (activeFor(download.host) >= MAX_PER_HOST) {
+                    continue;
+                }
+                if (next == null || download.priority < next.priority ||
+                        (download.priority == next.priority && download.sequence < next.sequence)) {
+                    next = download;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            queued.remove(next);
+            active++;
+            hostActive.put(next.host, activeFor(next.host) + 1);
+            start(next);
+        }
+    }
+
+    private int activeFor(String host) {
+        Integer count = hostActive.get(host);
+        return count == null ? 0 : count;
+    }
+
+    private void start(final Download download) {
+        download.call = client.newCall(download.request);
+        download.call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (download.cancelled) {
+                    finish(download, "Cancelled", "download of "+download.filename+" cancelled");
+                } else {
+                    Log.d("SockectConnection", "Album Art error : "+e.getLocalizedMessage());
+                    finish(download, "DownloadError", e.getLocalizedMessage());
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (!response.isSuccessful()) {
+                        Log.d("SockectConnection", "Album Art error : "+response.code()+" "+response.message());
+                        finish(download, Integer.toString(response.code()), response.message());
+                        return;
+                    }
+                    write(download, response.body().byteStream());
+                } catch (IOException e) {
+                    Log.d("SockectConnection", "Album Art error : "+e.getLocalizedMessage());
+                    finish(download, download.cancelled ? "Cancelled" : "DownloadError", e.getLocalizedMessage());
+                    return;
+                } finally {
+                    response.body().close();
+                }
+                listener.onDownloaded(download.filename);
+                finish(download, null, new File(dir, download.filename).getPath());
+            }
+        });
+    }
+
+    // each download has its own part file, a replacement for the same filename can run alongside the one it cancelled
+    private void write(Download download, InputStream is) throws IOException {
+        File albumArtFile = new File(dir, download.filename);
+        File part = new File(dir, download.filename+"."+download.sequence+".part");
+        boolean written = false;
+        try {
+            FileOutputStream os = new FileOutputStream(part, false);
+            try {
+                byte[] buffer = new byte[16384];
+                int len;
+                while ((len = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, len);
+                }
+            } finally {
+                os.close();
+            }
+            if (download.cancelled) {
+                throw new IOException("download of "+download.filename+" cancelled");
+            }
+            if (!part.renameTo(albumArtFile)) {
+                throw new IOException("failed to rename "+part.getAbsolutePath());
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                part.delete();
+            }
+        }
+    }
+
+    // a null code resolves every waiting promise with the message, anything else rejects them
+    private void finish(Download download, String code, String message) {
+        List<Promise> promises;
+        synchronized (this) {
+            active--;
+            hostActive.put(download.host, activeFor(download.host) - 1);
+            if (downloads.get(download.filename) == download) {
+                downloads.remove(download.filename);
+            }
+            promises = new ArrayList<Promise>(download.promises);
+            schedule();
+        }
+        for (Promise promise : promises) {
+            if (code == null) {
+                promise.resolve(message);
+            } else {
+                promise.reject(code, message);
+            }
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * The album art files on internal storage and the methods JS calls on them. Files come from three
+ * places: transfers from MPD (albumart / readpicture) written a chunk at a time, HTTP downloads and
+ * the older whole-response writes. Each one is added to the cache, which hard links identical covers
+ * and evicts past its budget, and gets its scaled variants generated in the background.
+ *
+ * The connection only drives a transfer, asking for the next chunk and passing each one to writeChunk.
+ */
+public class AlbumArtFiles {
+    // a transfer in progress, fields other than the file are set by the read thread it runs on
+    static class Fetch {
+        final String uri;
+        final String filename;
+        final boolean useReadPicture;
+        final Promise promise;
+        int offset = 0;
+        int size = 0;
+        String mime = null;
+        private File partFile = null;
+        private FileChannel channel = null;
+        volatile boolean failed = false;
+
+        Fetch(String uri, String filename, boolean useReadPicture, Promise promise) {
+            this.uri = uri;
+            this.filename = filename;
+            this.useReadPicture = useReadPicture;
+            this.promise = promise;
+        }
+    }
+
+    private final ReactApplicationContext context;
+    private final File dir;
+    private final AlbumArtCache cache;
+    private final AlbumArtVariants variants;
+    private final AlbumArtDownloader downloader;
+    // finishes and fails transfers and keeps cache work off the connection threads, chunks are written by the read thread
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    // decoding and scaling covers is kept off the writer so it never holds up a transfer
+    private final ExecutorService variantExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable saveManifest = new Runnable() {
+        @Override
+        public void run() {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cache.save();
+                    } catch (IOException e) {
+                        Log.d("SockectConnection", "failed to save album art manifest : "+e.getLocalizedMessage());
+                    }
+                }
+            });
+        }
+    };
+
+    // album art is on internal storage so the cache can hard link identical covers, it used to be in externalDir
+    public AlbumArtFiles(ReactApplicationContext context, final File externalDir, File internalDir) {
+        this.context = context;
+        dir = new File(internalDir, "mpd_album_art");
+        if (!dir.exists()) {
+            boolean created = dir.mkdirs();
+            if (!created) {
+                Log.d("SockectConnection", "failed to create mpd_album_art directory");
+            }
+        }
+        cache = new AlbumArtCache(dir, new File(internalDir, "albumart_cache.manifest"));
+        variants = new AlbumArtVariants(dir);
+        downloader = new AlbumArtDownloader(dir, new AlbumArtDownloader.Listener() {
+            @Override
+            public void onDownloaded(String filename) {
+                cacheStored(filename);
+            }
+        });
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                cache.load();
+                File legacy = new File(externalDir, "mpd_album_art");
+                if (legacy.exists()) {
+                    emitEvicted(cache.migrate(legacy));
+                    new File(externalDir, "albumart_cache.manifest").delete();
+                }
+                emitEvicted(cache.trim());
+                scheduleManifestSave();
+            }
+        });
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public void delete(String filename) {
+        File f = new File(dir, filename);
+        //Log.d("SockectConnection", "attempting to delete mpd_album_art file : "+f.getAbsolutePath());
+        boolean deleted = f.delete();
+        if (!deleted) {
+            Log.d("SockectConnection", "failed to delete mpd_album_art file : "+f.getAbsolutePath());
+        }
+        cache.remove(filename);
+        variants.delete(filename);
+        scheduleManifestSave();
+    }
+
+    public void list(final Promise promise) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                WritableArray array = Arguments.createArray();
+                for (String name : cache.names()) {
+                    array.pushString(name);
+                }
+                promise.resolve(array);
+            }
+        });
+    }
+
+    // queued behind the writer so a file written just before is always seen
+    public void has(final String filename, final Promise promise) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                promise.resolve(cache.has(filename));
+            }
+        });
+    }
+
+    public void touch(String filename) {
+        if (cache.touch(filename)) {
+            scheduleManifestSave();
+        }
+    }
+
+    // resolves the variants already on disk, the missing ones are generated in the background and sent as OnAlbumArtVariants
+    public void getVariants(ReadableArray filenames, Promise promise) {
+        WritableMap results = Arguments.createMap();
+        for (int i = 0; i < filenames.size(); i++) {
+            String filename = filenames.getString(i);
+            if (variants.exists(filename)) {
+                WritableMap paths = Arguments.createMap();
+                paths.putString("thumb", variants.thumbFor(filename).getAbsolutePath());
+                paths.putString("medium", variants.mediumFor(filename).getAbsolutePath());
+                results.putMap(filename, paths);
+            } else if (cache.has(filename)) {
+                generateVariants(filename);
+            }
+        }
+        promise.resolve(results);
+    }
+
+    public void setBudget(double budget) {
+        cache.setBudget((long) budget);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                emitEvicted(cache.trim());
+                scheduleManifestSave();
+            }
+        });
+    }
+
+    public void getStats(Promise promise) {
+        WritableMap results = Arguments.createMap();
+        results.putInt("files", cache.size());
+        results.putInt("blobs", cache.blobs());
+        results.putInt("linkFailures", cache.linkFailures());
+        results.putDouble("bytes", cache.getTotal());
+        results.putDouble("budget", cache.getBudget());
+        promise.resolve(results);
+    }
+
+    public void download(String filename, String urlString, int priority, Promise promise) {
+        downloader.download(filename, urlString, priority, promise);
+    }
+
+    public void setDownloadPriority(String filename, int priority) {
+        downloader.setPriority(filename, priority);
+    }
+
+    public void cancelDownload(String filename) {
+        downloader.cancel(filename);
+    }
+
+    // written now rather than after the usual delay, the app may not come back
+    public void saveManifest() {
+        handler.removeCallbacks(saveManifest);
+        saveManifest.run();
+    }
+
+    // a whole binary response from a command JS sent itself, appended unless it is the first chunk
+    public String write(String filename, byte[] data, int offset, int length, boolean append) {
+        File albumArtFile = new File(dir, filename);
+        if (!append) {
+            // a stored file may be a hard link to a blob other covers share, it is replaced rather than written through
+            cache.remove(filename);
+            albumArtFile.delete();
+        }
+        if (!albumArtFile.exists()) {
+            try {
+                albumArtFile.createNewFile();
+            } catch (IOException e) {
+                Log.d("SockectConnection", "failed to create mpd_album_art file "+albumArtFile.getAbsolutePath());
+                return albumArtFile.getAbsolutePath();
+            }
+        }
+
+        BufferedOutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(albumArtFile, append));
+            os.write(data, offset, length);
+            //Log.d("SockectConnection", "written "+length+" to "+albumArtFile.getAbsolutePath());
+        } catch(IOException e) {
+            Log.d("SockectConnection", "exception while writing album art data to : "+albumArtFile.getAbsolutePath()+" "+e.getLocalizedMessage());
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {}
+            }
+        }
+        cacheAdded(filename);
+        return albumArtFile.getAbsolutePath();
+    }
+
+    // called on the connection's read thread with a chunk still in the frame buffer, it is written before the
+    // framer reuses that buffer so the chunk is never copied
+    public void writeChunk(Fetch fetch, ByteBuffer chunk) {
+        synchronized (fetch) {
+            if (fetch.failed) {
+                return;
+            }
+            try {
+                openChannel(fetch);
+                while (chunk.hasRemaining()) {
+                    fetch.channel.write(chunk);
+                }
+            } catch (IOException e) {
+                Log.d("SockectConnection", "exception while writing album art data to : "+fetch.filename+" "+e.getLocalizedMessage());
+                abort(fetch, "MPDError", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    // the complete file only appears under its real name once every chunk has been written
+    public void complete(final Fetch fetch) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (fetch.failed) {
+                    return;
+                }
+                File albumArtFile = new File(dir, fetch.filename);
+                try {
+                    synchronized (fetch) {
+                        openChannel(fetch);
+                        fetch.channel.close();
+                        fetch.channel = null;
+                    }
+                    if (!fetch.partFile.renameTo(albumArtFile)) {
+                        throw new IOException("failed to rename "+fetch.partFile.getAbsolutePath());
+                    }
+                } catch (IOException e) {
+                    Log.d("SockectConnection", "exception while completing album art file : "+albumArtFile.getAbsolutePath()+" "+e.getLocalizedMessage());
+                    fail(fetch, "MPDError", e.getLocalizedMessage());
+                    return;
+                }
+                cacheStored(fetch.filename);
+                WritableMap results = Arguments.createMap();
+                results.putString("path", albumArtFile.getAbsolutePath());
+                results.putInt("size", fetch.size);
+                results.putString("mime", fetch.mime);
+                fetch.promise.resolve(results);
+            }
+        });
+    }
+
+    public void abort(final Fetch fetch, final String code, final String message) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                fail(fetch, code, message);
+            }
+        });
+    }
+
+    private void openChannel(Fetch fetch) throws IOException {
+        if (fetch.channel == null) {
+            fetch.partFile = new File(dir, fetch.filename+".part");
+            fetch.channel = new FileOutputStream(fetch.partFile, false).getChannel();
+        }
+    }
+
+    // only called on the writer thread, the lock keeps a chunk being written on the read thread out
+    private void fail(Fetch fetch, String code, String message) {
+        synchronized (fetch) {
+            if (fetch.failed) {
+                return;
+            }
+            fetch.failed = true;
+            if (fetch.channel != null) {
+                try {
+                    fetch.channel.close();
+                } catch (IOException e) {}
+                fetch.channel = null;
+            }
+            if (fetch.partFile != null) {
+                fetch.partFile.delete();
+            }
+        }
+        fetch.promise.reject(code, message);
+    }
+
+    private void cacheAdded(String filename) {
+        emitEvicted(cache.add(filename));
+        scheduleManifestSave();
+    }
+
+    private void cacheStored(String filename) {
+        emitEvicted(cache.store(filename));
+        scheduleManifestSave();
+        generateVariants(filename);
+    }
+
+    private void generateVariants(final String filename) {
+        variantExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!cache.has(filename)) {
+                    return;
+                }
+                long start = System.nanoTime();
+                AlbumArtVariants.Result result;
+                try {
+                    result = variants.generate(filename);
+                } catch (IOException e) {
+                    Log.d("SockectConnection", "failed to generate album art variants for "+filename+" : "+e.getLocalizedMessage());
+                    return;
+                }
+                WritableMap results = Arguments.createMap();
+                results.putString("filename", filename);
+                results.putString("mime", result.mime);
+                results.putString("path", new File(dir, filename).getAbsolutePath());
+                results.putString("thumb", result.thumb.getAbsolutePath());
+                results.putString("medium", result.medium.getAbsolutePath());
+                results.putDouble("time", (System.nanoTime() - start) / 1000000.0);
+                sendEvent("OnAlbumArtVariants", results);
+            }
+        });
+    }
+
+    private void emitEvicted(List<String> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        Log.d("SockectConnection", "evicted "+evicted.size()+" album art files");
+        for (String filename : evicted) {
+            variants.delete(filename);
+        }
+        WritableMap results = Arguments.createMap();
+        results.putArray("filenames", Arguments.fromList(evicted));
+        sendEvent("OnAlbumArtEvicted", results);
+    }
+
+    // accesses and additions come in bursts, the manifest is written once things settle
+    private void scheduleManifestSave() {
+        handler.removeCallbacks(saveManifest);
+        handler.postDelayed(saveManifest, 2000);
+    }
+
+    private void sendEvent(String eventName, WritableMap params) {
+        context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+    }
+
+    static String detectMimeType(byte[] data, int offset, int length) {
+        if (length >= 3 && (data[offset] & 0xff) == 0xff && (data[offset+1] & 0xff) == 0xd8 && (data[offset+2] & 0xff) == 0xff) {
+            return "image/jpeg";
+        }
+        if (length >= 4 && (data[offset] & 0xff) == 0x89 && data[offset+1] == 0x50 && data[offset+2] == 0x4e && data[offset+3] == 0x47) {
+            return "image/png";
+        }
+        if (length >= 4 && data[offset] == 0x47 && data[offset+1] == 0x49 && data[offset+2] == 0x46 && data[offset+3] == 0x38) {
+            return "image/gif";
+        }
+        if (length >= 12 && data[offset] == 0x52 && data[offset+1] == 0x49 && data[offset+2] == 0x46 && data[offset+3] == 0x46 &&
+                data[offset+8] == 0x57 && data[offset+9] == 0x45 && data[offset+10] == 0x42 && data[offset+11] == 0x50) {
+            return "image/webp";
+        }
+        if (length >= 2 && data[offset] == 0x42 && data[offset+1] == 0x4d) {
+            return "image/bmp";
+        }
+        return "application/octet-stream";
+    }
+}
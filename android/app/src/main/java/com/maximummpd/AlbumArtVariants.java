@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Downscaled copies of the album art files for lists and grids, written as WebP into .variants
+ * next to the originals. The original is decoded at the smallest power of two sample size that still
+ * covers the medium size, so a large cover is never decoded at full resolution.
+ */
+public class AlbumArtVariants {
+    public static final int THUMB_SIZE = 160;
+    public static final int MEDIUM_SIZE = 512;
+    private static final int QUALITY = 80;
+    private static final String VARIANT_DIR = ".variants";
+
+    public static class Result {
+        public final String mime;
+        public final File thumb;
+        public final File medium;
+
+        private Result(String mime, File thumb, File medium) {
+            this.mime = mime;
+            this.thumb = thumb;
+            this.medium = medium;
+        }
+    }
+
+    private final File dir;
+    private final File variantDir;
+
+    public AlbumArtVariants(File dir) {
+        this.dir = dir;
+        this.variantDir = new File(dir, VARIANT_DIR);
+    }
+
+    public File thumbFor(String name) {
+        return new File(variantDir, baseName(name)+"_thumb.webp");
+    }
+
+    public File mediumFor(String name) {
+        return new File(variantDir, baseName(name)+"_medium.webp");
+    }
+
+    public boolean exists(String name) {
+        return thumbFor(name).exists() && mediumFor(name).exists();
+    }
+
+    public Result generate(String name) throws IOException {
+        File original = new File(dir, name);
+        String mime = detectMimeType(original);
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(original.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("unable to decode "+original.getAbsolutePath()+" ("+mime+")");
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (Math.max(bounds.outWidth, bounds.outHeight) / (options.inSampleSize * 2) >= MEDIUM_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(original.getAbsolutePath(), options);
+        if (bitmap == null) {
+            throw new IOException("unable to decode "+original.getAbsolutePath()+" ("+mime+")");
+        }
+        if (!variantDir.exists() && !variantDir.mkdirs()) {
+            bitmap.recycle();
+            throw new IOException("failed to create "+variantDir.getAbsolutePath());
+        }
+        try {
+            write(bitmap, MEDIUM_SIZE, mediumFor(name));
+            write(bitmap, THUMB_SIZE, thumbFor(name));
+        } finally {
+            bitmap.recycle();
+        }
+        return new Result(mime, thumbFor(name), mediumFor(name));
+    }
+
+    public void delete(String name) {
+        thumbFor(name).delete();
+        mediumFor(name).delete();
+    }
+
+    private void write(Bitmap bitmap, int size, File file) throws IOException {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Bitmap scaled = bitmap;
+        if (Math.max(width, height) > size) {
+            float scale = (float) size / Math.max(width, height);
+            scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+        }
+        File part = new File(variantDir, file.getName()+".part");
+        FileOutputStream os = new FileOutputStream(part);
+        try {
+            scaled.compress(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP, QUALITY, os);
+        } finally {
+            os.close();
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+        }
+        if (!part.renameTo(file)) {
+            part.delete();
+            throw new IOException("failed to rename "+part.getAbsolutePath());
+        }
+    }
+
+    // files are always named .png, the first bytes tell what they really are
+    public static String detectMimeType(File file) throws IOException {
+        byte[] header = new byte[12];
+        InputStream is = new FileInputStream(file);
+        int length = 0;
+        try {
+            int len;
+            while (length < header.length && (len = is.read(header, length, header.length - length)) != -1) {
+                length += len;
+            }
+        } finally {
+            is.close();
+        }
+        return AlbumArtFiles.detectMimeType(header, 0, length);
+    }
+
+    private static String baseName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
+}
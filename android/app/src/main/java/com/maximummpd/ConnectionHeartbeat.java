@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Checks the watched connection every CHECK_INTERVAL on the scheduler thread, a ping is a socket write
+ * and must never happen on the UI thread. A connection with a response outstanding that has read nothing
+ * for the read timeout is closed, one that has been quiet for HEARTBEAT_INTERVAL with nothing outstanding is
+ * sent a ping so a dead peer is noticed without waiting for the OS. Parked connections are left alone.
+ *
+ * Commands that can legitimately take a while before MPD sends anything (listings of a large database,
+ * album art over a slow network, a command list that may hold either) get SLOW_FACTOR times the timeout.
+ */
+public class ConnectionHeartbeat {
+    private static final long HEARTBEAT_INTERVAL = 15000;
+    private static final long CHECK_INTERVAL = 5000;
+    private static final long DEFAULT_READ_TIMEOUT = 10000;
+    private static final int SLOW_FACTOR = 6;
+    private static final Set<String> SLOW_COMMANDS = new HashSet<String>(Arrays.asList(
+            "update", "rescan", "list", "listall", "listallinfo", "lsinfo", "listfiles", "find", "search", "count",
+            "playlistinfo", "albumart", "readpicture", "command_list_begin", "command_list_ok_begin"));
+
+    private final ScheduledExecutorService scheduler;
+    private ConnectionSupervisor.Connection connection = null;
+    private ScheduledFuture<?> checks = null;
+    private volatile long readTimeout = DEFAULT_READ_TIMEOUT;
+
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            ConnectionSupervisor.Connection watched;
+            synchronized (ConnectionHeartbeat.this) {
+                watched = connection;
+            }
+            if (watched == null || !watched.isConnected() || watched.isIdle()) {
+                return;
+            }
+            long quiet = (System.nanoTime() - watched.getLastActivity()) / 1000000;
+            String verb = watched.getOutstandingVerb();
+            if (verb != null) {
+                long timeout = SLOW_COMMANDS.contains(verb) ? readTimeout * SLOW_FACTOR : readTimeout;
+                if (timeout > 0 && quiet > timeout) {
+                    Log.d("SockectConnection", "no response to "+verb+" for "+quiet+" ms");
+                    watched.close("read timeout");
+                }
+            } else if (quiet > HEARTBEAT_INTERVAL) {
+                watched.ping();
+            }
+        }
+    };
+
+    public ConnectionHeartbeat(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setReadTimeout(long timeout) {
+        readTimeout = timeout;
+    }
+
+    // null stops the checks
+    public synchronized void watch(ConnectionSupervisor.Connection connection) {
+        this.connection = connection;
+        if (connection == null && checks != null) {
+            checks.cancel(false);
+            checks = null;
+        } else if (connection != null && checks == null) {
+            checks = scheduler.scheduleWithFixedDelay(check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+}
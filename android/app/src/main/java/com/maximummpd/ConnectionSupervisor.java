@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.util.Log;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Owns the main connection. Only one connection thread runs at a time: starting a new one closes the
+ * one before it. Once a connection has been established, losing it (end of stream, a read error, or no
+ * bytes while a response is outstanding, see ConnectionHeartbeat) schedules a reconnect with exponential
+ * backoff and full jitter, until MAX_ATTEMPTS have failed. Reconnects and heartbeats run on the scheduler
+ * thread, never on the UI thread, as both end up writing to a socket.
+ *
+ * When the network underneath changes there is nothing to wait for, reconnectNow replaces the connection
+ * straight away and starts the backoff again from the beginning.
+ *
+ * Health is reported through the listener as connected, reconnecting, failed or stopped.
+ */
+public class ConnectionSupervisor {
+    public static final String CONNECTED = "connected";
+    public static final String RECONNECTING = "reconnecting";
+    public static final String FAILED = "failed";
+    public static final String STOPPED = "stopped";
+
+    private static final long BASE_DELAY = 500;
+    private static final long MAX_DELAY = 30000;
+    private static final int MAX_ATTEMPTS = 10;
+
+    public interface Connection extends Runnable {
+        boolean isConnected();
+        // parked in idle, nothing is expected back until MPD reports a change
+        boolean isIdle();
+        // nanoTime of the last read, or of the connect when nothing has been read yet
+        long getLastActivity();
+        // the verb of the command whose response is awaited, null when there is none
+        String getOutstandingVerb();
+        void ping();
+        void close(String reason);
+    }
+
+    public interface Listener {
+        // internal for a connection JS did not ask for, retry when it replaces one that was lost
+        Connection create(boolean internal, boolean retry);
+        boolean shouldReconnect();
+        void onHealth(String state, int attempt, long delay, String reason);
+    }
+
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+    private final ConnectionHeartbeat heartbeat;
+    private final Random random = new Random();
+    // the reconnect that is due, one that was cancelled may still run but finds it is no longer this
+    private Runnable pendingReconnect = null;
+    private Connection current = null;
+    private boolean established = false;
+    private boolean stopped = true;
+    private int attempt = 0;
+
+    public ConnectionSupervisor(ScheduledExecutorService scheduler, Listener listener) {
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.heartbeat = new ConnectionHeartbeat(scheduler);
+    }
+
+    // a resumed connection has been up before, so it is reconnected if it fails
+    // 0 leaves a connection with a response outstanding open however long it is quiet
+    public void setReadTimeout(long timeout) {
+        heartbeat.setReadTimeout(timeout);
+    }
+
+    public synchronized Connection start(boolean resumed) {
+        stopped = false;
+        established = resumed;
+        attempt = 0;
+        cancelReconnect();
+        return replace(resumed, false);
+    }
+
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        cancelReconnect();
+        heartbeat.watch(null);
+        if (current != null) {
+            current.close("stopped");
+            current = null;
+        }
+        listener.onHealth(STOPPED, attempt, 0, null);
+    }
+
+    public synchronized void onConnected(Connection connection) {
+        if (connection != current) {
+            return;
+        }
+        established = true;
+        attempt = 0;
+        listener.onHealth(CONNECTED, 0, 0, null);
+    }
+
+    public synchronized void reconnectNow(String reason) {
+        if (stopped || !established) {
+            return;
+        }
+        cancelReconnect();
+        attempt = 0;
+        // closed after it stops being current, so its exit does not schedule a reconnect of its own
+        Connection previous = current;
+        current = null;
+        if (previous != null) {
+            previous.close(reason);
+        }
+        Log.d("SockectConnection", "reconnecting now ("+reason+")");
+        listener.onHealth(RECONNECTING, 0, 0, reason);
+        replace(true, true);
+    }
+
+    // true while there is a connection up, or one that is going to be replaced
+    public synchronized boolean isRecovering() {
+        return !stopped && established;
+    }
+
+    // called by the connection thread as it exits, whatever the reason
+    public synchronized void onClosed(Connection connection, String reason) {
+        if (connection != current || stopped) {
+            return;
+        }
+        current = null;
+        heartbeat.watch(null);
+        // a first connect that fails is reported by the connection itself, as it always was
+        if (!established) {
+            stopped = true;
+            return;
+        }
+        if (!listener.shouldReconnect()) {
+            stopped = true;
+            listener.onHealth(STOPPED, attempt, 0, reason);
+            return;
+        }
+        if (attempt >= MAX_ATTEMPTS) {
+            stopped = true;
+            listener.onHealth(FAILED, attempt, 0, reason);
+            return;
+        }
+        long delay = delay(attempt++);
+        Log.d("SockectConnection", "connection lost ("+reason+"), reconnecting in "+delay+" ms");
+        listener.onHealth(RECONNECTING, attempt, delay, reason);
+        pendingReconnect = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ConnectionSupervisor.this) {
+                    if (pendingReconnect != this || stopped) {
+                        return;
+                    }
+                    pendingReconnect = null;
+                    replace(true, true);
+                }
+            }
+        };
+        scheduler.schedule(pendingReconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelReconnect() {
+        pendingReconnect = null;
+    }
+
+    private Connection replace(boolean internal, boolean retry) {
+        if (current != null) {
+            current.close("replaced");
+        }
+        current = listener.create(internal, retry);
+        heartbeat.watch(current);
+        new Thread(current, "MPDConnection").start();
+        return current;
+    }
+
+    private long delay(int attempt) {
+        long ceiling = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.net.Network;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Connection racing across every address a host resolves to (RFC 8305). The addresses are tried in
+ * order with families alternating, each one STAGGER ms after the one before or as soon as it fails, and
+ * the first socket to connect wins. The others are closed, which aborts any connect still in progress.
+ */
+public class HappyEyeballs {
+    public static final int STAGGER = 250;
+
+    public static class Result {
+        public final Socket socket;
+        public final InetAddress address;
+        // handshake time of the winning attempt, not counting the time spent resolving or staggering
+        public final long rtt;
+
+        private Result(Socket socket, InetAddress address, long rtt) {
+            this.socket = socket;
+            this.address = address;
+            this.rtt = rtt;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final List<Socket> sockets = new ArrayList<Socket>();
+    private Result winner = null;
+    private int inFlight = 0;
+    private IOException lastError = null;
+
+    private HappyEyeballs() {
+    }
+
+    public static Result connect(String host, int port, Network network, int timeout) throws IOException {
+        InetAddress[] resolved = network != null ? network.getAllByName(host) : InetAddress.getAllByName(host);
+        return new HappyEyeballs().race(interleave(resolved), port, network, timeout);
+    }
+
+    private Result race(List<InetAddress> addresses, int port, Network network, int timeout) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        int next = 0;
+        long nextStart = 0;
+        synchronized (lock) {
+            while (winner == null) {
+                long now = System.currentTimeMillis();
+                if (now >= deadline) {
+                    break;
+                }
+                if (next < addresses.size() && (inFlight == 0 || now >= nextStart)) {
+                    start(addresses.get(next++), port, network, (int) (deadline - now));
+                    nextStart = now + STAGGER;
+                    continue;
+                }
+                if (next >= addresses.size() && inFlight == 0) {
+                    break;
+                }
+                long wait = next < addresses.size() ? Math.min(nextStart, deadline) - now : deadline - now;
+                try {
+                    lock.wait(Math.max(1, wait));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            for (Socket socket : sockets) {
+                if (winner == null || socket != winner.socket) {
+                    close(socket);
+                }
+            }
+            if (winner != null) {
+                winner.socket.setTcpNoDelay(true);
+                winner.socket.setKeepAlive(true);
+                return winner;
+            }
+        }
+        if (lastError != null && !(lastError instanceof SocketTimeoutException)) {
+            throw lastError;
+        }
+        throw new SocketTimeoutException("connect timed out");
+    }
+
+    // called with the lock held
+    private void start(final InetAddress address, final int port, final Network network, final int timeout) {
+        final Socket socket = new Socket();
+        sockets.add(socket);
+        inFlight++;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long started = System.nanoTime();
+                try {
+                    if (network != null) {
+                        network.bindSocket(socket);
+                    }
+                    socket.connect(new InetSocketAddress(address, port), timeout);
+                    long rtt = System.nanoTime() - started;
+                    synchronized (lock) {
+                        inFlight--;
+                        if (winner == null) {
+                            Log.d("SockectConnection", "connected to "+address.getHostAddress()+" in "+(rtt / 1000000)+" ms");
+                            winner = new Result(socket, address, rtt);
+                        } else {
+                            close(socket);
+                        }
+                        lock.notifyAll();
+                    }
+                } catch (IOException e) {
+                    synchronized (lock) {
+                        inFlight--;
+                        if (winner == null) {
+                            Log.d("SockectConnection", "connect to "+address.getHostAddress()+" failed : "+e.getLocalizedMessage());
+                            lastError = e;
+                        }
+                        close(socket);
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }, "MPDConnect").start();
+    }
+
+    // the family the resolver listed first leads, then the two alternate
+    static List<InetAddress> interleave(InetAddress[] resolved) {
+        List<InetAddress> first = new ArrayList<InetAddress>();
+        List<InetAddress> second = new ArrayList<InetAddress>();
+        boolean firstIsV6 = resolved.length > 0 && resolved[0] instanceof Inet6Address;
+        for (InetAddress address : resolved) {
+            if ((address instanceof Inet6Address) == firstIsV6) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+        List<InetAddress> ordered = new ArrayList<InetAddress>();
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                ordered.add(first.get(i));
+            }
+            if (i < second.size()) {
+                ordered.add(second.get(i));
+            }
+        }
+        return ordered;
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Keeps a connection parked in idle while the app is in the background, so a warm resume finds it open
+ * and knows what changed in the meantime. Every idle response while parked is collected and a new idle
+ * written straight away; on resume a noidle ends the one outstanding and the changes are reported once
+ * its response is in.
+ *
+ * It has no lock of its own, the connection calls it with its lock held. The calls that write (park,
+ * unpark, interrupt) must come from a thread that may use the network, never the UI thread.
+ */
+public class IdleParking<T> {
+    public interface Connection<T> {
+        // queues and writes an idle, returns what its response will be matched with, null when not connected
+        T writeIdle();
+        // false when not connected
+        boolean writeNoidle();
+        void onResumed(List<String> changes, double latency);
+    }
+
+    private final Connection<T> connection;
+    private final Set<String> changes = new LinkedHashSet<String>();
+    private volatile boolean parked = false;
+    private T idle = null;
+    private long resumeStarted = 0;
+
+    public IdleParking(Connection<T> connection) {
+        this.connection = connection;
+    }
+
+    public boolean isParked() {
+        return parked;
+    }
+
+    // true while an idle is outstanding, anything but noidle written now makes MPD drop the connection
+    public boolean isIdling() {
+        return parked && idle != null;
+    }
+
+    public void park() {
+        parked = true;
+        resumeStarted = 0;
+        changes.clear();
+        if (idle == null) {
+            idle = connection.writeIdle();
+        }
+    }
+
+    public void unpark(long started) {
+        parked = false;
+        resumeStarted = started;
+        if (idle == null || !connection.writeNoidle()) {
+            resumed();
+        }
+    }
+
+    // a command is going out while parked: the caller has written noidle and the command, the idle goes after them
+    public void rearm() {
+        idle = connection.writeIdle();
+    }
+
+    // an idle that was interrupted by a later command only contributes its changes
+    public void onIdle(T response, List<String> changed) {
+        changes.addAll(changed);
+        if (response != idle) {
+            return;
+        }
+        idle = null;
+        if (parked) {
+            idle = connection.writeIdle();
+        } else if (resumeStarted != 0) {
+            resumed();
+        }
+    }
+
+    private void resumed() {
+        connection.onResumed(new ArrayList<String>(changes), (System.nanoTime() - resumeStarted) / 1000000.0);
+        changes.clear();
+        resumeStarted = 0;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * One gzipped file per server (host:port) holding named library sections (artists, albums, genres ...)
+ * together with the db_update value of the MPD database they were read from.
+ *
+ * file layout: magic, version, key, db_update, section count, then name / length / UTF-8 bytes per section
+ */
+public class LibrarySnapshotStore {
+    private static final int MAGIC = 0x4d4d4c53;
+    private static final int VERSION = 1;
+
+    public static class Snapshot {
+        public final String key;
+        public final long dbUpdate;
+        public final Map<String, String> sections;
+
+        public Snapshot(String key, long dbUpdate, Map<String, String> sections) {
+            this.key = key;
+            this.dbUpdate = dbUpdate;
+            this.sections = sections;
+        }
+    }
+
+    private final File dir;
+
+    public LibrarySnapshotStore(File dir) {
+        this.dir = dir;
+    }
+
+    public Snapshot load(String key) throws IOException {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream is = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 65536)));
+        try {
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                return null;
+            }
+            String storedKey = is.readUTF();
+            if (!storedKey.equals(key)) {
+                return null;
+            }
+            long dbUpdate = is.readLong();
+            int count = is.readInt();
+            Map<String, String> sections = new LinkedHashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                String name = is.readUTF();
+                byte[] data = new byte[is.readInt()];
+                is.readFully(data);
+                sections.put(name, new String(data, StandardCharsets.UTF_8));
+            }
+            return new Snapshot(storedKey, dbUpdate, sections);
+        } finally {
+            is.close();
+        }
+    }
+
+    // written to a temporary file first so a crash never leaves a truncated snapshot behind
+    public void save(Snapshot snapshot) throws IOException {
+        File file = fileFor(snapshot.key);
+        File part = new File(dir, file.getName()+".part");
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(part), 65536)));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeUTF(snapshot.key);
+            os.writeLong(snapshot.dbUpdate);
+            os.writeInt(snapshot.sections.size());
+            for (Map.Entry<String, String> section : snapshot.sections.entrySet()) {
+                byte[] data = section.getValue().getBytes(StandardCharsets.UTF_8);
+                os.writeUTF(section.getKey());
+                os.writeInt(data.length);
+                os.write(data);
+            }
+        } finally {
+            os.close();
+        }
+        if (!part.renameTo(file)) {
+            part.delete();
+            throw new IOException("failed to rename "+part.getAbsolutePath());
+        }
+    }
+
+    public boolean delete(String key) {
+        return fileFor(key).delete();
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, "library_"+key.replaceAll("[^A-Za-z0-9._-]", "_")+".snapshot");
+    }
+}
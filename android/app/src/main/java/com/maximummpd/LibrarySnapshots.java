@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/*
+ * The library snapshot methods JS calls, loads and saves run on the executor given, times are in ms.
+ * A snapshot that fails to load is deleted and reported as missing so the library is read again.
+ */
+public class LibrarySnapshots {
+    private final LibrarySnapshotStore store;
+    private final Executor executor;
+
+    public LibrarySnapshots(File dir, Executor executor) {
+        this.store = new LibrarySnapshotStore(dir);
+        this.executor = executor;
+    }
+
+    public void load(final String key, final Promise promise) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                LibrarySnapshotStore.Snapshot snapshot;
+                try {
+                    snapshot = store.load(key);
+                } catch (IOException e) {
+                    Log.d("SockectConnection", "failed to load library snapshot for "+key+" : "+e.getLocalizedMessage());
+                    store.delete(key);
+                    snapshot = null;
+                }
+                if (snapshot == null) {
+                    promise.resolve(null);
+                    return;
+                }
+                WritableMap sections = Arguments.createMap();
+                for (Map.Entry<String, String> section : snapshot.sections.entrySet()) {
+                    sections.putString(section.getKey(), section.getValue());
+                }
+                WritableMap results = Arguments.createMap();
+                results.putString("key", snapshot.key);
+                results.putDouble("dbUpdate", snapshot.dbUpdate);
+                results.putMap("sections", sections);
+                results.putDouble("loadTime", (System.nanoTime() - start) / 1000000.0);
+                promise.resolve(results);
+            }
+        });
+    }
+
+    // the sections are copied on the calling thread, a ReadableMap is not read from another
+    public void save(final String key, final double dbUpdate, ReadableMap sections, final Promise promise) {
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        ReadableMapKeySetIterator it = sections.keySetIterator();
+        while (it.hasNextKey()) {
+            String name = it.nextKey();
+            values.put(name, sections.getString(name));
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    store.save(new LibrarySnapshotStore.Snapshot(key, (long) dbUpdate, values));
+                } catch (IOException e) {
+                    Log.d("SockectConnection", "failed to save library snapshot for "+key+" : "+e.getLocalizedMessage());
+                    promise.reject(e);
+                    return;
+                }
+                WritableMap results = Arguments.createMap();
+                results.putDouble("saveTime", (System.nanoTime() - start) / 1000000.0);
+                promise.resolve(results);
+            }
+        });
+    }
+
+    public void delete(String key) {
+        store.delete(key);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Shared by the native modules to keep bursts of events off the bridge. The first event of a name
+ * opens a window, everything else of that name arriving within it is held and sent when it closes.
+ * Latest events keep only the last value per key (volume, progress of one file), append events are
+ * all kept and sent together as one array (discovery). A global window of 0 turns coalescing off
+ * for every event, including those with a window of their own.
+ */
+public class NativeEventDispatcher {
+    public static final int DEFAULT_WINDOW = 16;
+
+    private static NativeEventDispatcher instance = null;
+
+    public static synchronized NativeEventDispatcher get(ReactApplicationContext context) {
+        if (instance == null || instance.context != context) {
+            instance = new NativeEventDispatcher(context);
+        }
+        return instance;
+    }
+
+    private static class Batch {
+        private final LinkedHashMap<String, WritableMap> latest = new LinkedHashMap<String, WritableMap>();
+        private final List<WritableMap> appended = new ArrayList<WritableMap>();
+    }
+
+    private final ReactApplicationContext context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Batch> batches = new HashMap<String, Batch>();
+    private final Map<String, Integer> windows = new HashMap<String, Integer>();
+    private int window = DEFAULT_WINDOW;
+
+    private NativeEventDispatcher(ReactApplicationContext context) {
+        this.context = context;
+    }
+
+    public synchronized void setWindow(int window) {
+        this.window = window;
+    }
+
+    // some events want a longer window than the default, album art progress for example.
+    // Only applies while the global window is above 0
+    public synchronized void setWindow(String eventName, int window) {
+        windows.put(eventName, window);
+    }
+
+    public void emit(String eventName, Object data) {
+        try {
+            context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, data);
+        } catch (RuntimeException e) {
+        }
+    }
+
+    public void emitLatest(String eventName, String key, WritableMap params) {
+        synchronized (this) {
+            Batch batch = open(eventName);
+            if (batch != null) {
+                batch.latest.remove(key);
+                batch.latest.put(key, params);
+                return;
+            }
+        }
+        emit(eventName, params);
+    }
+
+    public void emitAppend(String eventName, WritableMap params) {
+        synchronized (this) {
+            Batch batch = open(eventName);
+            if (batch != null) {
+                batch.appended.add(params);
+                return;
+            }
+        }
+        WritableArray array = Arguments.createArray();
+        array.pushMap(params);
+        emit(eventName, array);
+    }
+
+    // returns null when the window is 0 and the event should go straight out
+    private Batch open(final String eventName) {
+        if (window <= 0) {
+            return null;
+        }
+        Integer eventWindow = windows.get(eventName);
+        int delay = eventWindow != null ? eventWindow : window;
+        if (delay <= 0) {
+            return null;
+        }
+        Batch batch = batches.get(eventName);
+        if (batch == null) {
+            batch = new Batch();
+            batches.put(eventName, batch);
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    flush(eventName);
+                }
+            }, delay);
+        }
+        return batch;
+    }
+
+    private void flush(String eventName) {
+        Batch batch;
+        synchronized (this) {
+            batch = batches.remove(eventName);
+        }
+        if (batch == null) {
+            return;
+        }
+        for (WritableMap params : batch.latest.values()) {
+            emit(eventName, params);
+        }
+        if (batch.appended.size() > 0) {
+            WritableArray array = Arguments.createArray();
+            for (WritableMap params : batch.appended) {
+                array.pushMap(params);
+            }
+            emit(eventName, array);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Build;
+import android.util.Log;
+
+/*
+ * Follows the default network so the sockets can be bound to it and dropped the moment it goes away or
+ * is replaced, rather than waiting for TCP to notice. Roaming to another access point or falling back
+ * to mobile data shows up as a new default network becoming available.
+ */
+public class NetworkMonitor {
+    public interface Listener {
+        void onNetworkChanged(Network network);
+        void onNetworkLost(Network network);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private volatile Network network = null;
+    private ConnectivityManager.NetworkCallback callback = null;
+
+    public NetworkMonitor(Context context, Listener listener) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (callback != null || connectivityManager == null) {
+            return;
+        }
+        network = connectivityManager.getActiveNetwork();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return;
+        }
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network available) {
+                Network previous = network;
+                network = available;
+                // the first callback after registering reports the network that was already there
+                if (previous == null || !previous.equals(available)) {
+                    Log.d("SockectConnection", "default network changed");
+                    listener.onNetworkChanged(available);
+                }
+            }
+
+            @Override
+            public void onLost(Network lost) {
+                if (lost.equals(network)) {
+                    Log.d("SockectConnection", "default network lost");
+                    network = null;
+                    listener.onNetworkLost(lost);
+                }
+            }
+        };
+        try {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+        } catch (RuntimeException e) {
+            Log.d("SockectConnection", "unable to monitor network changes : "+e.getLocalizedMessage());
+            callback = null;
+        }
+    }
+
+    public synchronized void stop() {
+        if (callback == null) {
+            return;
+        }
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (RuntimeException e) {
+        }
+        callback = null;
+    }
+
+    // null when there is no default network, or before the first connect
+    public Network getNetwork() {
+        return network;
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd;
+
+import com.maximummpd.protocol.MPDCommandList;
+import com.maximummpd.protocol.MPDConnectionEngine;
+import com.maximummpd.protocol.MPDPlayQueueDiff;
+import com.maximummpd.protocol.MPDResponseParser;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A copy of the play queue kept as the song id at each position, tracked by the playlist version
+ * from status. A sync asks for status and plchangesposid since the version it holds in one command
+ * list, so an edit costs a few lines rather than the whole playlistinfo. Song details are only fetched
+ * for the windows JS asks for and are kept by id until the song leaves the queue.
+ *
+ * JS is sent the difference as OnPlayQueueChange, the MPDPlayQueueDiff operations to apply in order.
+ * A reorder too large to describe that way (a shuffle) is sent as the full list of ids instead.
+ *
+ * One mirror lives as long as the module and only does anything between start and stop. Each start
+ * begins a new generation, responses to commands sent in an earlier one are dropped.
+ */
+public class PlayQueueMirror {
+    public interface Sender {
+        void send(String message, MPDConnectionEngine.ResponseHandler handler);
+    }
+
+    private final ReactApplicationContext context;
+    private final Sender sender;
+    private int version = -1;
+    private List<Integer> ids = new ArrayList<Integer>();
+    private final Map<Integer, SongRecord> songs = new HashMap<Integer, SongRecord>();
+    private final List<Promise> waiting = new ArrayList<Promise>();
+    private boolean syncing = false;
+    private boolean syncAgain = false;
+    private boolean started = false;
+    private int generation = 0;
+
+    public PlayQueueMirror(ReactApplicationContext context, Sender sender) {
+        this.context = context;
+        this.sender = sender;
+    }
+
+    // changes are sent from the whole queue inserted, a start while already started lists it all again
+    public void start(Promise promise) {
+        synchronized (this) {
+            started = true;
+            reset();
+        }
+        sync(promise);
+    }
+
+    public void stop() {
+        List<Promise> rejected;
+        synchronized (this) {
+            started = false;
+            reset();
+            rejected = new ArrayList<Promise>(waiting);
+            waiting.clear();
+        }
+        for (Promise promise : rejected) {
+            promise.reject("MPDError", "play queue mirror stopped");
+        }
+    }
+
+    // called with the lock held
+    private void reset() {
+        generation++;
+        version = -1;
+        ids = new ArrayList<Integer>();
+        songs.clear();
+        syncing = false;
+        syncAgain = false;
+    }
+
+    // commands are always sent outside the lock, a connection that fails a write calls straight back in.
+    // Without a promise (an idle or reconnect) a mirror that is not started is left alone
+    public void sync(Promise promise) {
+        final int since;
+        final int sent;
+        synchronized (this) {
+            if (!started) {
+                if (promise != null) {
+                    promise.reject("MPDError", "play queue mirror not started");
+                }
+                return;
+            }
+            if (promise != null) {
+                waiting.add(promise);
+            }
+            if (syncing) {
+                syncAgain = true;
+                return;
+            }
+            syncing = true;
+            // version 0 lists every position
+            since = version < 0 ? 0 : version;
+            sent = generation;
+        }
+        sender.send(MPDCommandList.build(Arrays.asList("status\n", "plchangesposid "+since+"\n")), new MPDConnectionEngine.ResponseHandler() {
+            @Override
+            public void onResponse(byte[] buffer, int offset, int length) {
+                synced(sent, since, MPDCommandList.split(buffer, offset, length));
+            }
+
+            @Override
+            public void onError(String error) {
+                failed(sent, error);
+            }
+        });
+    }
+
+    public void window(int start, int end, final Promise promise) {
+        int first = -1;
+        int last = -1;
+        final int sent;
+        synchronized (this) {
+            if (!started) {
+                promise.reject("MPDError", "play queue mirror not started");
+                return;
+            }
+            sent = generation;
+            start = Math.max(0, start);
+            end = Math.min(end, ids.size());
+            for (int pos = start; pos < end; pos++) {
+                if (!songs.containsKey(ids.get(pos))) {
+                    if (first == -1) {
+                        first = pos;
+                    }
+                    last = pos;
+                }
+            }
+            if (first == -1) {
+                promise.resolve(windowResults(start, end));
+                return;
+            }
+        }
+        final int windowStart = start;
+        final int windowEnd = end;
+        sender.send("playlistinfo "+first+":"+(last + 1)+"\n", new MPDConnectionEngine.ResponseHandler() {
+            @Override
+            public void onResponse(byte[] buffer, int offset, int length) {
+                MPDResponseParser parser = new MPDResponseParser(MPDResponseParser.FORMAT_SONGS, null, new MPDResponseParser.RecordHandler() {
+                    @Override
+                    public MPDResponseParser.Record createRecord() {
+                        return new SongRecord();
+                    }
+
+                    @Override
+                    public void onRecord(MPDResponseParser.Record record) {
+                        Object id = ((SongRecord) record).values.get("id");
+                        if (id instanceof Integer) {
+                            synchronized (PlayQueueMirror.this) {
+                                if (generation == sent) {
+                                    songs.put((Integer) id, (SongRecord) record);
+                                }
+                            }
+                        }
+                    }
+                });
+                parser.parse(buffer, offset, length);
+                parser.finish();
+                synchronized (PlayQueueMirror.this) {
+                    promise.resolve(windowResults(windowStart, windowEnd));
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                promise.reject("MPDError", error);
+            }
+        });
+    }
+
+    private void synced(int sent, int since, List<byte[]> frames) {
+        MPDPlayQueueDiff.Delta delta = frames.size() == 2 ? MPDPlayQueueDiff.parse(frames.get(0), frames.get(1)) : new MPDPlayQueueDiff.Delta();
+        WritableMap event = null;
+        List<Promise> resolved;
+        boolean again;
+        int currentVersion;
+        int length;
+        synchronized (this) {
+            if (generation != sent) {
+                return;
+            }
+            if (delta.version == -1) {
+                version = -1;
+            } else {
+                List<Integer> after = MPDPlayQueueDiff.merge(since, ids, delta);
+                if (after != null) {
+                    event = apply(after, delta.version);
+                } else {
+                    // a gap means the version held no longer matches what MPD has, start again from scratch
+                    Log.d("SockectConnection", "play queue mirror out of step at version "+delta.version);
+                    version = -1;
+                    syncAgain = true;
+                }
+            }
+            syncing = false;
+            again = syncAgain;
+            syncAgain = false;
+            resolved = new ArrayList<Promise>(waiting);
+            waiting.clear();
+            currentVersion = version;
+            length = ids.size();
+        }
+        // the change goes first so a caller waiting on the sync finds it already applied
+        if (event != null) {
+            NativeEventDispatcher.get(context).emit("OnPlayQueueChange", event);
+        }
+        for (Promise promise : resolved) {
+            WritableMap results = Arguments.createMap();
+            results.putInt("version", currentVersion);
+            results.putInt("length", length);
+            promise.resolve(results);
+        }
+        if (again) {
+            sync(null);
+        }
+    }
+
+    private void failed(int sent, String error) {
+        List<Promise> rejected;
+        synchronized (this) {
+            if (generation != sent) {
+                return;
+            }
+            // whatever happened to the queue meanwhile is picked up by listing it all next time
+            version = -1;
+            syncing = false;
+            syncAgain = false;
+            rejected = new ArrayList<Promise>(waiting);
+            waiting.clear();
+        }
+        for (Promise promise : rejected) {
+            promise.reject("MPDError", error);
+        }
+    }
+
+    // called with the lock held, null when nothing changed
+    private WritableMap apply(List<Integer> after, int newVersion) {
+        List<Integer> before = ids;
+        ids = after;
+        version = newVersion;
+        Set<Integer> afterIds = new HashSet<Integer>(after);
+        for (Integer id : before) {
+            if (!afterIds.contains(id)) {
+                songs.remove(id);
+            }
+        }
+        WritableMap event = Arguments.createMap();
+        event.putInt("version", newVersion);
+        event.putInt("length", after.size());
+        List<MPDPlayQueueDiff.Op> ops = MPDPlayQueueDiff.diff(before, after);
+        if (ops == null) {
+            event.putBoolean("reset", true);
+            WritableArray all = Arguments.createArray();
+            for (Integer id : after) {
+                all.pushInt(id);
+            }
+            event.putArray("ids", all);
+            return event;
+        }
+        if (ops.size() == 0) {
+            return null;
+        }
+        event.putArray("ops", toArray(ops));
+        return event;
+    }
+
+    private static WritableArray toArray(List<MPDPlayQueueDiff.Op> ops) {
+        WritableArray array = Arguments.createArray();
+        for (MPDPlayQueueDiff.Op op : ops) {
+            WritableMap map = Arguments.createMap();
+            map.putString("op", op.op);
+            if (MPDPlayQueueDiff.Op.MOVE.equals(op.op)) {
+                map.putInt("from", op.from);
+                map.putInt("to", op.to);
+            } else if (MPDPlayQueueDiff.Op.REMOVE.equals(op.op)) {
+                map.putInt("start", op.start);
+                map.putInt("count", op.count);
+            } else {
+                map.putInt("start", op.start);
+                WritableArray ids = Arguments.createArray();
+                for (Integer id : op.ids) {
+                    ids.pushInt(id);
+                }
+                map.putArray("ids", ids);
+            }
+            array.pushMap(map);
+        }
+        return array;
+    }
+
+    // called with the lock held
+    private WritableMap windowResults(int start, int end) {
+        WritableArray records = Arguments.createArray();
+        for (int pos = start; pos < Math.min(end, ids.size()); pos++) {
+            int id = ids.get(pos);
+            SongRecord song = songs.get(id);
+            WritableMap record = song != null ? song.toMap() : Arguments.createMap();
+            record.putInt("id", id);
+            record.putInt("pos", pos);
+            records.pushMap(record);
+        }
+        WritableMap results = Arguments.createMap();
+        results.putInt("version", version);
+        results.putInt("start", start);
+        results.putArray("records", records);
+        return results;
+    }
+
+    // kept as plain values, a WritableMap can only cross the bridge once
+    private static class SongRecord implements MPDResponseParser.Record {
+        private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+        @Override
+        public void putString(String key, String value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public void putInt(String key, int value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public void putBoolean(String key, boolean value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public void putRecord(String key, MPDResponseParser.Record value) {
+            values.put(key, value);
+        }
+
+        private WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof String) {
+                    map.putString(entry.getKey(), (String) value);
+                } else if (value instanceof Integer) {
+                    map.putInt(entry.getKey(), (Integer) value);
+                } else if (value instanceof Boolean) {
+                    map.putBoolean(entry.getKey(), (Boolean) value);
+                } else if (value instanceof SongRecord) {
+                    map.putMap(entry.getKey(), ((SongRecord) value).toMap());
+                }
+            }
+            return map;
+        }
+    }
+}
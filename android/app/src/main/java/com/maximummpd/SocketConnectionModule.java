@@ -16,11 +16,20 @@
  */
 package com.maximummpd;
 
+import com.maximummpd.protocol.MPDCommandBatcher;
+import com.maximummpd.protocol.MPDCommandList;
+import com.maximummpd.protocol.MPDConnectionEngine;
+import com.maximummpd.protocol.MPDMetrics;
+import com.maximummpd.protocol.MPDResponseFramer;
+import com.maximummpd.protocol.MPDResponseParser;
+import com.maximummpd.protocol.MPDSearchIndex;
+
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
@@ -29,46 +38,162 @@ import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.modules.core.PermissionAwareActivity;
 import com.facebook.react.modules.core.PermissionListener;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
 import java.io.File;
 import java.net.Socket;
-import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
 import javax.annotation.Nullable;
 
 import android.Manifest;
+import android.net.Network;
 import android.content.pm.PackageManager;
 import android.util.Log;
 import android.os.Environment;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-
-import okhttp3.Response;
+import android.os.Handler;
+import android.os.Looper;
 
 public class SocketConnectionModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
-    private static final byte[] errPrefix = new byte[] {0x41, 0x43, 0x4b, 0x20, 0x5b};
-    private static final byte[] initPrefix = new byte[] {0x4f, 0x4b, 0x20, 0x4d, 0x50, 0x44, 0x20};
-    private static final byte[] binaryPrefix = new byte[] {0x62, 0x69, 0x6e, 0x61, 0x72, 0x79, 0x3a, 0x20};
+    private static final String CHANNEL_BULK = "bulk";
+    private static final String CHANNEL_IDLE = "idle";
+    private static final String CHANNEL_BENCHMARK = "benchmark";
+    private static final String IDLE_COMMAND = "idle player playlist database mixer options output\n";
+    private static final String STATUS_COMMAND = "command_list_begin\nstatus\ncurrentsong\nreplay_gain_status\ncommand_list_end\n";
+    private static final String CHANGED_PREFIX = "changed: ";
+    private static final String SIZE_PREFIX = "size: ";
+    private static final String TYPE_PREFIX = "type: ";
+    private static final int PROGRESS_WINDOW = 100;
+    private static final int INDEX_PAGE_SIZE = 5000;
+    private static final long REPLAY_TIMEOUT = 5000;
+    // long enough to catch the commands JS sends in one go, short enough not to be noticed on its own
+    private static final int DEFAULT_BATCH_WINDOW = 4;
+    private static final int MAX_BATCH = 32;
+    // commands that can be sent again on a new connection without changing anything on the server
+    private static final Set<String> READ_ONLY_COMMANDS = new HashSet<String>(Arrays.asList(
+            "command_list_begin", "command_list_ok_begin", "command_list_end", "ping", "status", "currentsong",
+            "stats", "replay_gain_status", "outputs", "playlist", "playlistinfo", "playlistid", "playlistfind",
+            "playlistsearch", "plchanges", "plchangesposid", "listplaylists", "listplaylist", "listplaylistinfo",
+            "list", "listall", "listallinfo", "lsinfo", "listfiles", "find", "search", "count", "albumart",
+            "readpicture", "readcomments", "commands", "notcommands", "tagtypes", "urlhandlers", "decoders"));
+
     private String host = null;
     private int port = 0;
-    private ReadThread readThread = null;
-    private Socket socket = null;
-    private PrintWriter pw = null;
-    private String albumArtFilename = null;
-    private File documentDir = null;
+    private volatile ReadThread readThread = null;
+    // the bulk and idle connections are changed from the JS, UI and scheduler threads, always under this
+    private final Object sideConnections = new Object();
+    private final List<ReadThread> bulkThreads = new ArrayList<ReadThread>();
+    private int bulkCount = 0;
+    private String bulkPassword = null;
+    private volatile ReadThread idleThread = null;
+    private volatile boolean idleEnabled = false;
+    private String idlePassword = null;
+    private MPDConnectionEngine engine = null;
+    private Map<Integer, HandleWatch> handleWatches = new ConcurrentHashMap<Integer, HandleWatch>();
+    private volatile int binaryLimit = 0;
+    private int warmResumeGrace = 0;
+    private volatile boolean warmPaused = false;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable graceExpiry = new Runnable() {
+        @Override
+        public void run() {
+            if (warmPaused) {
+                Log.d("SockectConnection", "warm resume grace period expired");
+                warmPaused = false;
+                mpdDisconnect();
+            }
+        }
+    };
+    // timed connection work (heartbeats, reconnects) that writes to sockets, so it must stay off the UI thread
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // library snapshot loads and saves and search index builds
+    private final ExecutorService libraryExecutor = Executors.newSingleThreadExecutor();
+    private LibrarySnapshots librarySnapshots = null;
+    private AlbumArtFiles albumArt = null;
+    private final MPDMetrics metrics = new MPDMetrics();
+    private NetworkMonitor networkMonitor = null;
+    private volatile String mainPassword = null;
+    private volatile int batchWindow = DEFAULT_BATCH_WINDOW;
+    private PlayQueueMirror playQueue = null;
+    // read-only commands that were outstanding when the main connection went, waiting for the next one
+    private final List<ResponseOptions> replays = new ArrayList<ResponseOptions>();
+    private final Runnable replayExpiry = new Runnable() {
+        @Override
+        public void run() {
+            rejectReplays("connection lost");
+        }
+    };
+    private final ConnectionSupervisor supervisor = new ConnectionSupervisor(scheduler, new ConnectionSupervisor.Listener() {
+        @Override
+        public ConnectionSupervisor.Connection create(boolean internal, boolean retry) {
+            ReadThread thread = new ReadThread(internal, null, -1, null);
+            thread.supervisor = supervisor;
+            thread.retry = retry;
+            readThread = thread;
+            if (retry) {
+                // the side connections went with the server, they come back with the main one unless a pause took them
+                synchronized (sideConnections) {
+                    closeSideConnections();
+                    if (!warmPaused) {
+                        bulkConnect();
+                        if (idleEnabled) {
+                            idleConnect();
+                        }
+                    }
+                }
+            }
+            return thread;
+        }
+
+        // a parked connection that drops is picked up by the next resume instead
+        @Override
+        public boolean shouldReconnect() {
+            return !warmPaused && host != null;
+        }
+
+        @Override
+        public void onHealth(String state, int attempt, long delay, String reason) {
+            WritableMap results = Arguments.createMap();
+            results.putString("state", state);
+            results.putInt("attempt", attempt);
+            results.putDouble("delay", delay);
+            if (reason != null) {
+                results.putString("reason", reason);
+            }
+            sendEvent("OnConnectionHealth", results);
+            if (ConnectionSupervisor.FAILED.equals(state)) {
+                sendEvent("OnError", "error", "connection lost : "+reason);
+            }
+            if (ConnectionSupervisor.CONNECTED.equals(state)) {
+                playQueue.sync(null);
+            }
+            if (ConnectionSupervisor.FAILED.equals(state) || ConnectionSupervisor.STOPPED.equals(state)) {
+                rejectReplays(reason != null ? "connection lost : "+reason : "not connected");
+            }
+        }
+    });
+    private volatile MPDSearchIndex searchIndex = null;
+    private File externalDir = null;
 
     public SocketConnectionModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -94,13 +219,47 @@ public class SocketConnectionModule extends ReactContextBaseJavaModule implement
         reactContext.addLifecycleEventListener(this);
 
         File dir = getReactApplicationContext().getApplicationContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        documentDir = new File(dir, "mpd_album_art");
-        if (!documentDir.exists()) {
-            boolean created = documentDir.mkdirs();
-            if (!created) {
-                Log.d("SockectConnection", "failed to create mpd_album_art directory");
+        File internalDir = getReactApplicationContext().getApplicationContext().getFilesDir();
+        externalDir = dir;
+        librarySnapshots = new LibrarySnapshots(dir, libraryExecutor);
+        albumArt = new AlbumArtFiles(reactContext, dir, internalDir);
+        playQueue = new PlayQueueMirror(reactContext, new PlayQueueMirror.Sender() {
+            @Override
+            public void send(String message, MPDConnectionEngine.ResponseHandler responseHandler) {
+                ReadThread thread = readThread;
+                if (thread == null || !thread.isConnected()) {
+                    responseHandler.onError("not connected");
+                    return;
+                }
+                ResponseOptions options = new ResponseOptions(null, null, null, null, false, 0, 0, true);
+                options.responseHandler = responseHandler;
+                thread.write(message, options);
             }
-        }
+        });
+        NativeEventDispatcher.get(reactContext).setWindow("OnAlbumArtProgress", PROGRESS_WINDOW);
+        networkMonitor = new NetworkMonitor(reactContext, new NetworkMonitor.Listener() {
+            @Override
+            public void onNetworkChanged(Network network) {
+                ReadThread thread = readThread;
+                if (host == null || thread == null || (thread.isConnected() && network.equals(thread.network))) {
+                    return;
+                }
+                if (warmPaused) {
+                    // picked up again by the next resume
+                    thread.close("network changed");
+                } else {
+                    supervisor.reconnectNow("network changed");
+                }
+            }
+
+            @Override
+            public void onNetworkLost(Network network) {
+                ReadThread thread = readThread;
+                if (thread != null && thread.isConnected()) {
+                    thread.close("network lost");
+                }
+            }
+        });
     }
 
     @Override
@@ -108,53 +267,452 @@ public class SocketConnectionModule extends ReactContextBaseJavaModule implement
         return "SocketConnection";
     }
 
+    // 0 sends every event as it happens, album art progress included
+    @ReactMethod
+    public void setEventCoalescingWindow(int window) {
+        NativeEventDispatcher.get(getReactApplicationContext()).setWindow(window);
+    }
+
+    // 0 writes every command as it is sent
+    @ReactMethod
+    public void setCommandBatchWindow(int window) {
+        batchWindow = window;
+    }
+
     @ReactMethod
     public void connect(String host, int port) {
         this.host = host;
         this.port = port;
+        metrics.reset();
+        mainPassword = null;
+        playQueue.stop();
+        networkMonitor.start();
         mpdConnect(false);
     }
 
     @ReactMethod
     public void disconnect() {
+        warmPaused = false;
+        handler.removeCallbacks(graceExpiry);
         mpdDisconnect();
+        closeBulkConnections();
+        stopIdle();
+        networkMonitor.stop();
+        rejectReplays("not connected");
+        mainPassword = null;
+        playQueue.stop();
         host = null;
         port = 0;
     }
 
+    @ReactMethod
+    public void openBulkConnections(int count, String password) {
+        synchronized (sideConnections) {
+            closeBulkConnections();
+            bulkCount = count;
+            bulkPassword = password;
+            bulkConnect();
+        }
+    }
+
+    @ReactMethod
+    public void closeBulkConnections() {
+        synchronized (sideConnections) {
+            for (ReadThread bulkThread : bulkThreads) {
+                bulkThread.shutdown();
+            }
+            bulkThreads.clear();
+            bulkCount = 0;
+            bulkPassword = null;
+        }
+    }
+
+    @ReactMethod
+    public void startIdle(String password) {
+        synchronized (sideConnections) {
+            idleEnabled = true;
+            idlePassword = password;
+            idleConnect();
+        }
+    }
+
+    @ReactMethod
+    public void stopIdle() {
+        synchronized (sideConnections) {
+            if (idleThread != null) {
+                idleThread.shutdown();
+                idleThread = null;
+            }
+            idleEnabled = false;
+            idlePassword = null;
+        }
+    }
+
     @ReactMethod
     public void writeMessage(String message, String filename) {
         //Log.d("SockectConnection", "writeMessage : "+message);
-        if (filename != null) {
-            albumArtFilename = filename;
+        readThread.write(message, new ResponseOptions(null, filename, null, null, false, 0, 0, false));
+    }
+
+    @ReactMethod
+    public void sendCommand(String id, String message, ReadableMap options, Promise promise) {
+        if (readThread == null || !readThread.isConnected()) {
+            // reads wait for a connection that is being replaced rather than failing
+            if (supervisor.isRecovering() && isReadOnly(message)) {
+                ResponseOptions responseOptions = createResponseOptions(options, id);
+                responseOptions.promise = promise;
+                responseOptions.message = message;
+                holdForReplay(Collections.singletonList(responseOptions));
+                return;
+            }
+            promise.reject("MPDError", "not connected");
+            return;
         }
-        pw.print(message);
-        pw.flush();
+        ResponseOptions responseOptions = createResponseOptions(options, id);
+        responseOptions.promise = promise;
+        readThread.submit(message, responseOptions);
     }
 
     @ReactMethod
-    public void deleteAlbumArtFile(String filename) {
-        File f = new File(documentDir, filename);
-        //Log.d("SockectConnection", "attempting to delete mpd_album_art file : "+f.getAbsolutePath());
-        boolean deleted = f.delete();
-        if (!deleted) {
-            Log.d("SockectConnection", "failed to delete mpd_album_art file : "+f.getAbsolutePath());
+    public void writeCommand(String message, ReadableMap options) {
+        String id = options.hasKey("id") ? options.getString("id") : null;
+        ResponseOptions responseOptions = createResponseOptions(options, id);
+
+        if (options.hasKey("channel") && CHANNEL_BULK.equals(options.getString("channel"))) {
+            ReadThread bulkThread = selectBulkThread();
+            if (bulkThread == null) {
+                WritableMap results = Arguments.createMap();
+                results.putString("channel", CHANNEL_BULK);
+                results.putString("id", id);
+                results.putString("data", "ACK [0@0] {} no bulk connection available");
+                sendEvent("OnResponseError", results);
+                return;
+            }
+            bulkThread.write(message, responseOptions);
+        } else {
+            readThread.write(message, responseOptions);
+        }
+    }
+
+    private ResponseOptions createResponseOptions(ReadableMap options, String id) {
+        String filename = options.hasKey("filename") && !options.isNull("filename") ? options.getString("filename") : null;
+        String format = options.hasKey("format") ? options.getString("format") : null;
+        if (format != null && !MPDResponseParser.isSupported(format)) {
+            Log.d("SockectConnection", "unsupported response format : "+format);
+            format = null;
+        }
+        String tag = options.hasKey("tag") ? options.getString("tag") : null;
+        boolean stream = format != null && options.hasKey("stream") && options.getBoolean("stream");
+        int batchSize = options.hasKey("batchSize") ? options.getInt("batchSize") : 500;
+        int flushInterval = options.hasKey("flushInterval") ? options.getInt("flushInterval") : 100;
+        return new ResponseOptions(id, filename, format, tag, stream, batchSize, flushInterval, false);
+    }
+
+    @ReactMethod
+    public void openHandle(String host, int port, String password, Promise promise) {
+        MPDConnectionEngine connectionEngine = getEngine();
+        if (connectionEngine == null) {
+            promise.reject("MPDError", "connection engine unavailable");
+            return;
+        }
+        final int handle = connectionEngine.open(host, port);
+        if (password != null) {
+            connectionEngine.send(handle, "password "+password+"\n", new MPDConnectionEngine.ResponseHandler() {
+                @Override
+                public void onResponse(byte[] buffer, int offset, int length) {
+                }
+
+                @Override
+                public void onError(String error) {
+                    Log.d("SockectConnection", "handle "+handle+" password failed : "+error);
+                }
+            });
+        }
+        promise.resolve(handle);
+    }
+
+    @ReactMethod
+    public void closeHandle(int handle) {
+        handleWatches.remove(handle);
+        if (engine != null) {
+            engine.close(handle);
+        }
+    }
+
+    @ReactMethod
+    public void sendHandleCommand(int handle, String message, ReadableMap options, final Promise promise) {
+        if (engine == null) {
+            promise.reject("MPDError", "unknown connection handle "+handle);
+            return;
+        }
+        final ResponseOptions responseOptions = createResponseOptions(options, null);
+        MPDConnectionEngine.ResponseHandler handler = new MPDConnectionEngine.ResponseHandler() {
+            @Override
+            public void onResponse(byte[] buffer, int offset, int length) {
+                WritableMap results = Arguments.createMap();
+                if (responseOptions.format != null) {
+                    results.putString("format", responseOptions.format);
+                    results.putArray("records", parseRecords(responseOptions.format, responseOptions.tag, buffer, offset, length));
+                } else {
+                    results.putString("data", new String(buffer, offset, length, StandardCharsets.UTF_8));
+                }
+                promise.resolve(results);
+            }
+
+            @Override
+            public void onError(String error) {
+                promise.reject("MPDError", error);
+            }
+        };
+        HandleWatch watch = handleWatches.get(handle);
+        if (watch != null) {
+            watch.send(message, handler);
+        } else {
+            engine.send(handle, message, handler);
+        }
+    }
+
+    @ReactMethod
+    public void watchHandle(int handle) {
+        if (engine == null || handleWatches.containsKey(handle)) {
+            return;
+        }
+        HandleWatch watch = new HandleWatch(handle);
+        handleWatches.put(handle, watch);
+        watch.fetchStatus(new ArrayList<String>());
+    }
+
+    @ReactMethod
+    public void unwatchHandle(int handle) {
+        HandleWatch watch = handleWatches.remove(handle);
+        if (watch != null) {
+            watch.send(null, null);
+        }
+    }
+
+    @ReactMethod
+    public void setWarmResumeGrace(int gracePeriod) {
+        warmResumeGrace = gracePeriod;
+    }
+
+    // how long a command may go without a byte of its response before the connection is given up, 0 never
+    @ReactMethod
+    public void setReadTimeout(int timeout) {
+        supervisor.setReadTimeout(timeout);
+    }
+
+    @ReactMethod
+    public void setBinaryLimit(int limit) {
+        binaryLimit = limit;
+    }
+
+    // goes to a bulk connection when there is one, the chunks are written by AlbumArtFiles
+    @ReactMethod
+    public void fetchAlbumArt(String uri, String filename, boolean useReadPicture, Promise promise) {
+        ReadThread thread = selectBulkThread();
+        if (thread == null) {
+            thread = readThread;
+        }
+        if (thread == null || !thread.isConnected()) {
+            promise.reject("MPDError", "not connected");
+            return;
+        }
+        thread.fetchAlbumArt(new AlbumArtFiles.Fetch(uri, filename, useReadPicture, promise));
+    }
+
+    @ReactMethod
+    public void loadLibrarySnapshot(String key, Promise promise) {
+        librarySnapshots.load(key, promise);
+    }
+
+    @ReactMethod
+    public void saveLibrarySnapshot(String key, double dbUpdate, ReadableMap sections, Promise promise) {
+        librarySnapshots.save(key, dbUpdate, sections, promise);
+    }
+
+    @ReactMethod
+    public void deleteLibrarySnapshot(String key) {
+        librarySnapshots.delete(key);
+    }
+
+    // songs are listed a page at a time on a bulk connection when there is one, the index itself is built off the read thread
+    @ReactMethod
+    public void buildSearchIndex(boolean windowed, Promise promise) {
+        ReadThread thread = selectBulkThread();
+        if (thread == null) {
+            thread = readThread;
+        }
+        if (thread == null || !thread.isConnected()) {
+            promise.reject("MPDError", "not connected");
+            return;
+        }
+        thread.writeIndexPage(new IndexBuild(windowed, promise));
+    }
+
+    @ReactMethod
+    public void searchIndex(String query, int offset, int limit, Promise promise) {
+        MPDSearchIndex index = searchIndex;
+        if (index == null) {
+            promise.reject("MPDError", "no search index");
+            return;
+        }
+        long start = System.nanoTime();
+        MPDSearchIndex.Result result = index.search(query, offset, limit);
+        WritableArray songs = Arguments.createArray();
+        for (int i = 0; i < result.songs.size(); i++) {
+            WritableMap song = Arguments.createMap();
+            for (Map.Entry<String, String> value : result.songs.get(i).values().entrySet()) {
+                song.putString(value.getKey(), value.getValue());
+            }
+            song.putInt("score", result.scores[i]);
+            songs.pushMap(song);
         }
+        WritableMap results = Arguments.createMap();
+        results.putInt("total", result.total);
+        results.putArray("songs", songs);
+        results.putDouble("searchTime", (System.nanoTime() - start) / 1000000.0);
+        promise.resolve(results);
+    }
+
+    @ReactMethod
+    public void clearSearchIndex() {
+        searchIndex = null;
+    }
+
+    @ReactMethod
+    public void deleteAlbumArtFile(String filename) {
+        albumArt.delete(filename);
     }
 
     @ReactMethod
     public void listAlbumArtDir(Promise promise) {
-        File[] files = documentDir.listFiles();
-        WritableArray array = Arguments.createArray();
-        for (File f: files) {
-            array.pushString(f.getName());
+        albumArt.list(promise);
+    }
+
+    @ReactMethod
+    public void hasAlbumArt(String filename, Promise promise) {
+        albumArt.has(filename, promise);
+    }
+
+    @ReactMethod
+    public void touchAlbumArt(String filename) {
+        albumArt.touch(filename);
+    }
+
+    @ReactMethod
+    public void getAlbumArtVariants(ReadableArray filenames, Promise promise) {
+        albumArt.getVariants(filenames, promise);
+    }
+
+    @ReactMethod
+    public void setAlbumArtCacheBudget(double budget) {
+        albumArt.setBudget(budget);
+    }
+
+    @ReactMethod
+    public void getAlbumArtCacheStats(Promise promise) {
+        albumArt.getStats(promise);
+    }
+
+    // since the last connect, times are in ms
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        WritableArray commands = Arguments.createArray();
+        for (MPDMetrics.Command command : metrics.snapshot()) {
+            WritableMap results = Arguments.createMap();
+            results.putString("verb", command.verb);
+            results.putDouble("count", command.histograms[MPDMetrics.LAST_BYTE].getCount());
+            for (int i = 0; i < MPDMetrics.NAMES.length; i++) {
+                double scale = i == MPDMetrics.BYTES ? 1 : 1000.0;
+                MPDMetrics.Histogram histogram = command.histograms[i];
+                WritableMap summary = Arguments.createMap();
+                summary.putDouble("mean", histogram.getMean() / scale);
+                summary.putDouble("p50", histogram.getPercentile(50) / scale);
+                summary.putDouble("p90", histogram.getPercentile(90) / scale);
+                summary.putDouble("p99", histogram.getPercentile(99) / scale);
+                summary.putDouble("max", histogram.getMax() / scale);
+                results.putMap(MPDMetrics.NAMES[i], summary);
+            }
+            commands.pushMap(results);
         }
-        promise.resolve(array);
+        WritableMap results = Arguments.createMap();
+        results.putDouble("since", metrics.getSince());
+        results.putArray("commands", commands);
+        promise.resolve(results);
+    }
+
+    // debug builds only, SocketConnectionBenchmark runs against FakeMPDServer on the loopback interface
+    @ReactMethod
+    public void runBenchmark(ReadableMap options, Promise promise) {
+        SocketConnectionBenchmark.start(this, options, promise);
+    }
+
+    // what the benchmark drives: a connection with the framing, parsing and album art path the app uses
+    ReadThread openBenchmarkConnection(int port) {
+        ReadThread thread = new ReadThread(CHANNEL_BENCHMARK, "127.0.0.1", port);
+        new Thread(thread).start();
+        return thread;
+    }
+
+    void benchmarkCommand(ReadThread thread, String message, String format, Promise promise) {
+        ResponseOptions options = new ResponseOptions(null, null, format, null, false, 0, 0, false);
+        options.promise = promise;
+        thread.write(message, options);
+    }
+
+    void benchmarkAlbumArt(ReadThread thread, String uri, String filename, Promise promise) {
+        thread.fetchAlbumArt(new AlbumArtFiles.Fetch(uri, filename, false, promise));
+    }
+
+    // changes arrive as OnPlayQueueChange, starting with the whole queue inserted
+    @ReactMethod
+    public void startPlayQueueMirror(Promise promise) {
+        playQueue.start(promise);
+    }
+
+    @ReactMethod
+    public void stopPlayQueueMirror() {
+        playQueue.stop();
+    }
+
+    @ReactMethod
+    public void syncPlayQueue(Promise promise) {
+        playQueue.sync(promise);
+    }
+
+    @ReactMethod
+    public void getPlayQueueWindow(int start, int end, Promise promise) {
+        playQueue.window(start, end, promise);
+    }
+
+    // connects and hangs up again, the connections screen sorts servers by how long the handshake took
+    @ReactMethod
+    public void measureLatency(final String host, final int port, final Promise promise) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    HappyEyeballs.Result connected = HappyEyeballs.connect(host, port, networkMonitor.getNetwork(), 5000);
+                    connected.socket.close();
+                    WritableMap results = Arguments.createMap();
+                    results.putString("address", connected.address.getHostAddress());
+                    results.putDouble("rtt", connected.rtt / 1000000.0);
+                    promise.resolve(results);
+                } catch (IOException e) {
+                    promise.reject("MPDError", e.getLocalizedMessage());
+                }
+            }
+        }, "MPDLatency").start();
     }
 
+    // stays where it always was, in the external mpd_album_art directory, which album art has moved out of
     @ReactMethod
     public void saveDebugData(String data) {
-        File f = new File(documentDir, "mpddebug.json");
+        File debugDir = new File(externalDir, "mpd_album_art");
+        if (!debugDir.exists() && !debugDir.mkdirs()) {
+            Log.d("SockectConnection", "failed to create mpd_album_art directory");
+        }
+        File f = new File(debugDir, "mpddebug.json");
         boolean deleted = f.delete();
         if (!deleted) {
             Log.d("SockectConnection", "failed to delete mpddebug.json file : "+f.getAbsolutePath());
@@ -176,74 +734,71 @@ public class SocketConnectionModule extends ReactContextBaseJavaModule implement
 
     @ReactMethod
     public void writeAlbumArtFromURL(String filename, String urlString, Promise promise) {
-        OkHttpClient client = new OkHttpClient();
-        File albumArtFile = new File(documentDir, filename);
+        albumArt.download(filename, urlString, AlbumArtDownloader.PRIORITY_NORMAL, promise);
+    }
 
-        Request request = new Request.Builder()
-                .url(urlString)
-                .addHeader("Accept", "application/json")
-                .get()
-                .build();
+    @ReactMethod
+    public void downloadAlbumArt(String filename, String urlString, int priority, Promise promise) {
+        albumArt.download(filename, urlString, priority, promise);
+    }
 
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                promise.reject(e);
-            }
+    @ReactMethod
+    public void setAlbumArtDownloadPriority(String filename, int priority) {
+        albumArt.setDownloadPriority(filename, priority);
+    }
 
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (response.isSuccessful()) {
-                    BufferedOutputStream os = null;
-                    try {
-                        os = new BufferedOutputStream(new FileOutputStream(albumArtFile, false));
-                        byte[] bytes = response.body().bytes();
-                        Log.d("SockectConnection", "writing image file " + filename + " len: " + bytes.length + " to " + urlString);
-                        os.write(bytes);
-                        promise.resolve(albumArtFile.getPath());
-                    } catch (IOException e) {
-                        Log.d("SockectConnection", "Album Art error : "+e.getLocalizedMessage());
-                        promise.reject(e);
-                    } finally {
-                        if (os != null) {
-                            try { os.close(); } catch (IOException e) {}
-                        }
-                    }
-                } else {
-                    Log.d("SockectConnection", "Album Art error : "+response.code()+" "+response.message());
-                    promise.reject(Integer.toString(response.code()), response.message());
-                }
-                response.body().close();
-            }
-        });
+    @ReactMethod
+    public void cancelAlbumArtDownload(String filename) {
+        albumArt.cancelDownload(filename);
     }
 
     @Override
     public void onHostResume() {
+        if (warmPaused) {
+            warmPaused = false;
+            handler.removeCallbacks(graceExpiry);
+            if (readThread != null && readThread.isConnected()) {
+                Log.d("SockectConnection", "warm resume");
+                readThread.unpark(System.nanoTime());
+                openSideConnections();
+                return;
+            }
+        }
         if (host != null) {
             Log.d("SockectConnection", "resumed");
             sendEvent("OnPauseResume", "msg", "resumed");
             mpdConnect(true);
+            openSideConnections();
         }
     }
 
     @Override
     public void onHostPause() {
-        if (socket != null) {
+        if (readThread != null && readThread.isConnected()) {
             Log.d("SockectConnection", "paused");
             sendEvent("OnPauseResume", "msg", "paused");
-            mpdDisconnect();
+            albumArt.saveManifest();
+            if (warmResumeGrace > 0) {
+                // the main connection stays open, parked in idle, until the grace period runs out
+                warmPaused = true;
+                readThread.park();
+                handler.postDelayed(graceExpiry, warmResumeGrace);
+            } else {
+                mpdDisconnect();
+            }
+            synchronized (sideConnections) {
+                closeSideConnections();
+            }
         }
     }
 
     @Override
     public void onHostDestroy() {
-    }
-
-    private void sendEvent(String eventName, String id, Exception e) {
-        WritableMap params = Arguments.createMap();
-        params.putString(id, e.getLocalizedMessage());
-        sendEvent(eventName, params);
+        if (engine != null) {
+            engine.shutdown();
+            engine = null;
+        }
+        handleWatches.clear();
     }
 
     private void sendEvent(String eventName, String id, String param) {
@@ -258,269 +813,1203 @@ public class SocketConnectionModule extends ReactContextBaseJavaModule implement
 
     private void mpdConnect(boolean internalConnect) {
         Log.d("SockectConnection", "mpdConnect");
-        readThread = new ReadThread(internalConnect);
-        new Thread(readThread).start();
+        supervisor.start(internalConnect);
     }
 
-    private void mpdDisconnect() {
-        Log.d("SockectConnection", "mpdDisconnect");
-        readThread.shutdown();
+    private void openSideConnections() {
+        synchronized (sideConnections) {
+            closeSideConnections();
+            bulkConnect();
+            if (idleEnabled) {
+                idleConnect();
+            }
+        }
     }
 
-    private boolean isPermissionGranted() {
-        String permission = Manifest.permission.WRITE_EXTERNAL_STORAGE;
-        int res = getReactApplicationContext().checkCallingOrSelfPermission(permission);
-        return res == PackageManager.PERMISSION_GRANTED;
+    // keeps bulkCount and idleEnabled, so the same set can be opened again; callers hold sideConnections
+    private void closeSideConnections() {
+        for (ReadThread bulkThread : bulkThreads) {
+            bulkThread.shutdown();
+        }
+        bulkThreads.clear();
+        if (idleThread != null) {
+            idleThread.shutdown();
+            idleThread = null;
+        }
     }
 
-    public class ReadThread implements Runnable {
-        private boolean shutdown = false;
-        private boolean internalConnect = false;
-        private InputStream is = null;
-        private boolean binaryFound = false;
-        private int binaryOffset = 0;
-        private int binarySize = 0;
-        private String binaryText = null;
-        private ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        public ReadThread(boolean internalConnect) {
-            this.internalConnect = internalConnect;
+    private void bulkConnect() {
+        synchronized (sideConnections) {
+            for (int i = 0; i < bulkCount; i++) {
+                ReadThread bulkThread = new ReadThread(false, CHANNEL_BULK, i, bulkPassword);
+                bulkThreads.add(bulkThread);
+                new Thread(bulkThread).start();
+            }
         }
+    }
 
-        public void run() {
+    private synchronized MPDConnectionEngine getEngine() {
+        if (engine == null) {
             try {
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(host, port), 10000);
-                BufferedOutputStream bos = new BufferedOutputStream(socket.getOutputStream());
-                pw = new PrintWriter(bos);
-                is = new BufferedInputStream(socket.getInputStream());
-            } catch (SocketTimeoutException e) {
-                Log.d("SockectConnection", "timeout : "+e.toString());
-                sendEvent("OnTimeout", "msg", "timeout");
-                return;
-            } catch (Exception e) {
-                Log.d("SockectConnection", "error : "+e.toString());
-                sendEvent("OnError", "error", e);
-                return;
+                engine = new MPDConnectionEngine(new MPDConnectionEngine.Listener() {
+                    @Override
+                    public void onConnected(int handle, String greeting) {
+                        WritableMap results = Arguments.createMap();
+                        results.putInt("handle", handle);
+                        results.putString("msg", "connected");
+                        results.putString("version", greeting.substring(Math.min(greeting.length(), "OK MPD ".length())));
+                        sendEvent("OnHandleStateChange", results);
+                    }
+
+                    @Override
+                    public void onClosed(int handle, String reason) {
+                        handleWatches.remove(handle);
+                        WritableMap results = Arguments.createMap();
+                        results.putInt("handle", handle);
+                        results.putString("msg", "disconnected");
+                        results.putString("reason", reason);
+                        sendEvent("OnHandleStateChange", results);
+                    }
+                });
+            } catch (IOException e) {
+                Log.d("SockectConnection", "failed to start connection engine : "+e.getLocalizedMessage());
+                return null;
             }
-            WritableMap params = Arguments.createMap();
-            params.putString("albumArtDir", documentDir.getAbsolutePath());
+            new Thread(engine, "MPDConnectionEngine").start();
+        }
+        return engine;
+    }
 
-            if (internalConnect) {
+    private void idleConnect() {
+        synchronized (sideConnections) {
+            if (idleThread != null) {
+                idleThread.shutdown();
+            }
+            idleThread = new ReadThread(false, CHANNEL_IDLE, 0, idlePassword);
+            new Thread(idleThread).start();
+        }
+    }
+
+    // album art transfers are spread over the bulk connections so they never queue behind each other
+    private ReadThread selectBulkThread() {
+        synchronized (sideConnections) {
+            ReadThread selected = null;
+            for (ReadThread bulkThread : bulkThreads) {
+                if (bulkThread.isConnected() && (selected == null || bulkThread.inFlight() < selected.inFlight())) {
+                    selected = bulkThread;
+                }
+            }
+            return selected;
+        }
+    }
+
+    private void mpdDisconnect() {
+        Log.d("SockectConnection", "mpdDisconnect");
+        supervisor.stop();
+    }
+
+    static boolean isReadOnly(String message) {
+        for (String line : message.split("\n")) {
+            if (line.length() > 0 && !READ_ONLY_COMMANDS.contains(MPDMetrics.verbOf(line))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void holdForReplay(List<ResponseOptions> held) {
+        synchronized (replays) {
+            if (replays.isEmpty()) {
+                handler.postDelayed(replayExpiry, REPLAY_TIMEOUT);
+            }
+            replays.addAll(held);
+        }
+        replayPending();
+    }
+
+    // whichever of the old connection closing and the new one connecting comes last sends them
+    private void replayPending() {
+        ReadThread thread = readThread;
+        List<ResponseOptions> ready;
+        synchronized (replays) {
+            if (replays.isEmpty() || thread == null || !thread.isConnected()) {
+                return;
+            }
+            ready = new ArrayList<ResponseOptions>(replays);
+            replays.clear();
+            handler.removeCallbacks(replayExpiry);
+        }
+        Log.d("SockectConnection", "replaying "+ready.size()+" commands");
+        for (ResponseOptions options : ready) {
+            options.head = 0;
+            options.firstByte = 0;
+            options.bytes = 0;
+            options.parse = 0;
+            thread.write(options.message, options);
+        }
+    }
+
+    private void rejectReplays(String reason) {
+        List<ResponseOptions> rejected;
+        synchronized (replays) {
+            rejected = new ArrayList<ResponseOptions>(replays);
+            replays.clear();
+            handler.removeCallbacks(replayExpiry);
+        }
+        for (ResponseOptions options : rejected) {
+            options.promise.reject("MPDError", reason);
+        }
+    }
+
+    private WritableArray parseRecords(String format, String tag, byte[] buffer, int offset, int length) {
+        final WritableArray records = Arguments.createArray();
+        MPDResponseParser parser = new MPDResponseParser(format, tag, new MPDResponseParser.RecordHandler() {
+            @Override
+            public MPDResponseParser.Record createRecord() {
+                return new WritableRecord();
+            }
+
+            @Override
+            public void onRecord(MPDResponseParser.Record record) {
+                records.pushMap(((WritableRecord) record).map);
+            }
+        });
+        parser.parse(buffer, offset, length);
+        parser.finish();
+        return records;
+    }
+
+    private WritableMap parseStatus(byte[] buffer, int offset, int length) {
+        final WritableRecord[] status = new WritableRecord[1];
+        MPDResponseParser parser = new MPDResponseParser(MPDResponseParser.FORMAT_STATUS, null, new MPDResponseParser.RecordHandler() {
+            @Override
+            public MPDResponseParser.Record createRecord() {
+                return new WritableRecord();
+            }
+
+            @Override
+            public void onRecord(MPDResponseParser.Record record) {
+                status[0] = (WritableRecord) record;
+            }
+        });
+        parser.parse(buffer, offset, length);
+        parser.finish();
+        return status[0].map;
+    }
+
+    private void completeIndexBuild(final IndexBuild build) {
+        libraryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                MPDSearchIndex index = build.builder.build();
+                searchIndex = index;
+                WritableMap results = Arguments.createMap();
+                results.putInt("songs", index.size());
+                results.putDouble("buildTime", (System.nanoTime() - build.started) / 1000000.0);
+                build.promise.resolve(results);
+            }
+        });
+    }
+
+    private static List<String> parseChanged(byte[] buffer, int offset, int length) {
+        List<String> changed = new ArrayList<String>();
+        int lineStart = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer[i] != 0x0a) {
+                continue;
+            }
+            String line = new String(buffer, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+            if (line.startsWith(CHANGED_PREFIX)) {
+                changed.add(line.substring(CHANGED_PREFIX.length()));
+            }
+        }
+        return changed;
+    }
+
+    // a database change on its own does not touch status or currentsong
+    private static boolean isStatusChange(List<String> changed) {
+        for (String subsystem : changed) {
+            if (!subsystem.equals("database")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quote(String value) {
+        return "\""+value.replace("\\", "\\\\").replace("\"", "\\\"")+"\"";
+    }
+
+    private boolean isPermissionGranted() {
+        String permission = Manifest.permission.WRITE_EXTERNAL_STORAGE;
+        int res = getReactApplicationContext().checkCallingOrSelfPermission(permission);
+        return res == PackageManager.PERMISSION_GRANTED;
+    }
+
+    public class ReadThread implements ConnectionSupervisor.Connection, MPDResponseFramer.FrameListener {
+        private volatile boolean shutdown = false;
+        private boolean internalConnect = false;
+        private String channel = null;
+        private int index = -1;
+        private String password = null;
+        private int sentBinaryLimit = 0;
+        private final IdleParking<ResponseOptions> parking = new IdleParking<ResponseOptions>(new IdleParking.Connection<ResponseOptions>() {
+            @Override
+            public ResponseOptions writeIdle() {
+                if (pw == null) {
+                    return null;
+                }
+                ResponseOptions parkedIdle = new ResponseOptions(null, null, null, null, false, 0, 0, true);
+                parkedIdle.parked = true;
+                pending.add(parkedIdle);
+                pw.print(IDLE_COMMAND);
+                pw.flush();
+                return parkedIdle;
+            }
+
+            @Override
+            public boolean writeNoidle() {
+                if (pw == null) {
+                    return false;
+                }
+                pw.print("noidle\n");
+                pw.flush();
+                return true;
+            }
+
+            @Override
+            public void onResumed(List<String> changes, double latency) {
+                WritableMap results = Arguments.createMap();
+                results.putString("msg", "resumed");
+                results.putBoolean("warm", true);
+                results.putArray("subsystems", Arguments.fromList(changes));
+                results.putDouble("latency", latency);
+                sendEvent("OnPauseResume", results);
+            }
+        });
+        private Socket socket = null;
+        private PrintWriter pw = null;
+        private InputStream is = null;
+        private MPDResponseFramer framer = new MPDResponseFramer(this);
+        private ConcurrentLinkedQueue<ResponseOptions> pending = new ConcurrentLinkedQueue<ResponseOptions>();
+        private MPDResponseParser streamParser = null;
+        private WritableArray streamBatch = null;
+        private int streamCount = 0;
+        private int streamChunks = 0;
+        private long streamFlushed = 0;
+        private volatile long lastRead = 0;
+        private String connectHost = null;
+        private int connectPort = 0;
+        private ConnectionSupervisor supervisor = null;
+        private boolean retry = false;
+        private String closeReason = null;
+        private Network network = null;
+        private final MPDCommandBatcher<ResponseOptions> batcher = new MPDCommandBatcher<ResponseOptions>(this, scheduler, MAX_BATCH, new MPDCommandBatcher.Connection<ResponseOptions>() {
+            @Override
+            public void send(String message, ResponseOptions options) {
+                ReadThread.this.send(message, options);
+            }
+
+            @Override
+            public void sendList(String message, MPDCommandBatcher.Batch<ResponseOptions> batch) {
+                ResponseOptions options = new ResponseOptions(null, null, null, null, false, 0, 0, false);
+                options.batch = batch;
+                ReadThread.this.send(message, options);
+            }
+
+            @Override
+            public void onResponse(ResponseOptions options, byte[] buffer, int offset, int length) {
+                respond(options, buffer, offset, length);
+                recordMember(options, length);
+            }
+
+            @Override
+            public void onError(ResponseOptions options, String error) {
+                abort(options, error);
+                recordMember(options, error.length());
+            }
+        });
+        // the list whose response is being handed out to its members
+        private ResponseOptions list = null;
+        private long connectRtt = 0;
+        private String connectAddress = null;
+
+        public ReadThread(boolean internalConnect, String channel, int index, String password) {
+            this.internalConnect = internalConnect;
+            this.channel = channel;
+            this.index = index;
+            this.password = password;
+        }
+
+        // a connection to somewhere other than the current host, only the benchmark needs it
+        private ReadThread(String channel, String host, int port) {
+            this(false, channel, 0, null);
+            this.connectHost = host;
+            this.connectPort = port;
+        }
+
+        public void run() {
+            try {
+                HappyEyeballs.Result connected;
+                if (connectHost != null) {
+                    connected = HappyEyeballs.connect(connectHost, connectPort, null, 10000);
+                } else {
+                    // bound to the default network, a roam drops the socket instead of leaving it half open
+                    network = networkMonitor.getNetwork();
+                    connected = HappyEyeballs.connect(host, port, network, 10000);
+                }
+                socket = connected.socket;
+                connectRtt = connected.rtt;
+                connectAddress = connected.address.getHostAddress();
+                if (shutdown) {
+                    // replaced while it was still connecting
+                    shutdown();
+                    closed(closeReason);
+                    return;
+                }
+                BufferedOutputStream bos = new BufferedOutputStream(socket.getOutputStream());
+                pw = new PrintWriter(bos);
+                // the time of each read is what first and last byte are measured against
+                is = new FilterInputStream(socket.getInputStream()) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int read = super.read(b, off, len);
+                        lastRead = System.nanoTime();
+                        return read;
+                    }
+                };
+            } catch (SocketTimeoutException e) {
+                Log.d("SockectConnection", "timeout : "+e.toString());
+                // a failed retry is reported through the supervisor's health events
+                if (!retry) {
+                    sendEvent("OnTimeout", createResults("msg", "timeout"));
+                }
+                shutdown = true;
+                closed("timeout");
+                return;
+            } catch (Exception e) {
+                Log.d("SockectConnection", "error : "+e.toString());
+                if (!retry) {
+                    sendEvent("OnError", createResults("error", e.getLocalizedMessage()));
+                }
+                shutdown = true;
+                closed(e.getLocalizedMessage());
+                return;
+            }
+            lastRead = System.nanoTime();
+            WritableMap params = Arguments.createMap();
+            params.putString("albumArtDir", albumArt.getDir().getAbsolutePath());
+            params.putString("address", connectAddress);
+            params.putDouble("connectRtt", connectRtt / 1000000.0);
+
+            if (channel != null) {
+                if (password != null) {
+                    write("password "+password+"\n", new ResponseOptions(null, null, null, null, false, 0, 0, true));
+                }
+                params.putString("msg", channel+"Connected");
+                params.putString("channel", channel);
+                params.putInt("connection", index);
+                if (CHANNEL_IDLE.equals(channel)) {
+                    // first status is fetched straight away so JS starts from a known state
+                    fetchStatus(Arguments.createArray());
+                }
+            } else if (internalConnect) {
+                // replayed commands must not wait for JS to log in again
+                if (supervisor != null && mainPassword != null) {
+                    write(mainPassword, new ResponseOptions(null, null, null, null, false, 0, 0, true));
+                }
                 params.putString("msg", "internalConnected");
             } else {
                 params.putString("msg", "connected");
             }
             sendEvent("OnStateChange", params);
-
-            byte[] bytes = new byte[8192];
-            int len;
+            if (supervisor != null) {
+                supervisor.onConnected(this);
+                replayPending();
+            }
 
             Log.d("SockectConnection", "started reading");
+            String reason = null;
             while(!shutdown) {
                 try {
-                    len = is.read(bytes, 0, 8192);
-                    if (len > 0) {
-                        baos.write(bytes, 0, len);
-                        findBinary();
-
-                        if (findBufferEnd()) {
-                            if (binaryFound) {
-                                byte[] b = baos.toByteArray();
-                                byte[] binaryData = new byte[(int)binarySize];
-                                System.arraycopy(b, binaryOffset+1, binaryData, 0, binarySize);
-                                String path = writeAlbumArt(binaryData);
-                                WritableMap results = Arguments.createMap();
-                                binaryText += "\nOK\n";
-                                results.putString("data", binaryText);
-                                results.putString("filename", path);
-                                sendEvent("OnResponse", results);
-                                baos.reset();
-                                //Log.d("SockectConnection", "binary out ["+binaryData.length+"] ["+binaryText+"]");
-                                binaryText = null;
-                                binaryFound = false;
-                            } else {
-                                byte[] b = baos.toByteArray();
-                                String out = new String(b, "UTF8");
-                                WritableMap results = Arguments.createMap();
-                                results.putString("data", out);
-                                sendEvent("OnResponse", results);
-                                //Log.d("SockectConnection", "out : "+out);
-                                baos.reset();
-                            }
-                        }
-
-                        if (findInit()) {
-                            byte[] b = baos.toByteArray();
-                            String data = new String(b, "UTF8");
-                            WritableMap results = Arguments.createMap();
-                            results.putString("data", data);
-                            sendEvent("OnInit", results);
-                            baos.reset();
-                            //Log.d("SockectConnection", "init : "+data);
-                        }
-
-                        if (findError()) {
-                            byte[] b = baos.toByteArray();
-                            String data = new String(b, "UTF8");
-                            WritableMap results = Arguments.createMap();
-                            results.putString("data", data);
-                            sendEvent("OnResponseError", results);
-                            baos.reset();
-                            //Log.d("SockectConnection", "error : "+data);
-                        }
+                    if (framer.read(is) == -1) {
+                        reason = "closed by server";
+                        break;
                     }
                 } catch (IOException e) {
-                    String errMsg = e.getMessage();
-                    if (errMsg.equals("Socket closed")) {
-                        //sendEvent("OnStateChange", "msg", "disconnected");
-                    } else {
-                        Log.d("SockectConnection", "error3 : " + e.getLocalizedMessage());
-                        sendEvent("OnError", "error", e);
+                    if (!shutdown) {
+                        reason = e.getLocalizedMessage();
+                        Log.d("SockectConnection", "error3 : " + reason);
                     }
+                    break;
                 }
             }
+            if (reason != null && !shutdown) {
+                Log.d("SockectConnection", "connection lost : "+reason);
+                // the main connection is reconnected by the supervisor, the others report the loss to JS
+                if (supervisor == null) {
+                    sendEvent("OnError", createResults("error", reason));
+                }
+            }
+            shutdown();
+            failPending("connection closed");
             Log.d("SockectConnection", "shutting down");
+            closed(closeReason != null ? closeReason : reason);
+        }
+
+        private void closed(String reason) {
+            if (supervisor != null) {
+                supervisor.onClosed(this, reason);
+            }
+        }
+
+        public void close(String reason) {
+            closeReason = reason;
+            shutdown();
+        }
+
+        public boolean isIdle() {
+            return parking.isParked();
+        }
+
+        public long getLastActivity() {
+            return lastRead;
+        }
+
+        public String getOutstandingVerb() {
+            ResponseOptions options = pending.peek();
+            return options != null && !options.idle && !options.parked ? options.verb : null;
+        }
+
+        public synchronized void ping() {
+            if (pending.isEmpty() && !parking.isParked()) {
+                write("ping\n", new ResponseOptions(null, null, null, null, false, 0, 0, true));
+            }
+        }
+
+        // commands written to a connection that has gone away will never see their response
+        private synchronized void failPending(String reason) {
+            List<ResponseOptions> replayable = new ArrayList<ResponseOptions>();
+            List<ResponseOptions> failed = batcher.drain();
+            ResponseOptions options;
+            while ((options = pending.poll()) != null) {
+                if (options.batch != null) {
+                    failed.addAll(options.batch.commands);
+                } else {
+                    failed.add(options);
+                }
+            }
+            for (ResponseOptions failedOptions : failed) {
+                if (isReplayable(failedOptions)) {
+                    replayable.add(failedOptions);
+                } else {
+                    abort(failedOptions, reason);
+                }
+            }
+            if (replayable.size() > 0) {
+                holdForReplay(replayable);
+            }
+        }
+
+        private void abort(ResponseOptions options, String reason) {
+            if (options.batch != null) {
+                for (ResponseOptions member : options.batch.commands) {
+                    abort(member, reason);
+                }
+            } else if (options.promise != null) {
+                options.promise.reject("MPDError", reason);
+            } else if (options.fetch != null) {
+                albumArt.abort(options.fetch, "MPDError", reason);
+            } else if (options.responseHandler != null) {
+                options.responseHandler.onError(reason);
+            }
+        }
+
+        private boolean isBatchable(String message) {
+            // binary responses carry their own framing, they are never put in a list
+            String verb = MPDMetrics.verbOf(message);
+            return supervisor != null && message.indexOf('\n') == message.length() - 1 && !verb.startsWith("command_list")
+                    && !"albumart".equals(verb) && !"readpicture".equals(verb) && isReadOnly(message);
+        }
+
+        // a stream that has already sent chunks cannot be started again without JS seeing them twice
+        private boolean isReplayable(ResponseOptions options) {
+            return supervisor != null && supervisor.isRecovering() && options.promise != null && !options.internal
+                    && options.message != null && !(options.stream && options.firstByte != 0) && isReadOnly(options.message);
         }
 
         public void shutdown() {
             Log.d("SockectConnection", "shutdown request");
+            shutdown = true;
             try {
                 if (pw != null) {
                     pw.close();
                 }
-                socket.close();
+                Socket closing = socket;
                 socket = null;
+                if (closing != null) {
+                    closing.close();
+                }
             } catch (IOException e) {
                 Log.d("SockectConnection", "error2 : "+e.getLocalizedMessage());
-                sendEvent("OnError", "error", e);
+                sendEvent("OnError", createResults("error", e.getLocalizedMessage()));
             }
-            shutdown = true;
         }
 
-        private boolean findBinary() {
-            if (binaryFound) {
-                return true;
+        public boolean isConnected() {
+            return !shutdown && pw != null;
+        }
+
+        boolean isShutdown() {
+            return shutdown;
+        }
+
+        public int inFlight() {
+            return pending.size();
+        }
+
+        // read-only commands from JS wait batchWindow for others to go out with them in one command list
+        public synchronized void submit(String message, ResponseOptions options) {
+            if (options.stream || !isBatchable(message)) {
+                write(message, options);
+                return;
             }
+            options.verb = MPDMetrics.verbOf(message);
+            options.message = message;
+            batcher.setWindow(batchWindow);
+            batcher.add(message, options);
+        }
 
-            byte[] bytes = baos.toByteArray();
-            int location = searchBytes(bytes, binaryPrefix);
+        // anything written directly goes after the batch that is waiting, so the order JS sent them in holds
+        public synchronized void write(String message, ResponseOptions options) {
+            batcher.flush();
+            send(message, options);
+        }
 
-            if (location != -1) {
-                int crLocation = -1;
-                for (int i = location; i < bytes.length; i++) {
-                    if (bytes[i] == 0x0a) {
-                        crLocation = i;
-                        break;
+        private void send(String message, ResponseOptions options) {
+            if (pw == null || shutdown) {
+                Log.d("SockectConnection", "write before connect : "+message);
+                abort(options, "not connected");
+                return;
+            }
+            if (parking.isIdling()) {
+                // MPD drops a client that sends anything but noidle while it is idle
+                pw.print("noidle\n");
+                queued(message, options);
+                pw.print(message);
+                parking.rearm();
+                return;
+            }
+            queued(message, options);
+            pw.print(message);
+            pw.flush();
+        }
+
+        private void queued(String message, ResponseOptions options) {
+            options.verb = MPDMetrics.verbOf(message);
+            options.message = message;
+            if (supervisor != null && "password".equals(options.verb)) {
+                mainPassword = message;
+            }
+            pending.add(options);
+            if (pending.peek() == options && options.head == 0) {
+                options.head = System.nanoTime();
+            }
+        }
+
+        // the next command can only start once MPD has finished answering the one before it
+        private ResponseOptions nextResponse() {
+            ResponseOptions options = pending.poll();
+            ResponseOptions next = pending.peek();
+            if (next != null && next.head == 0) {
+                next.head = lastRead;
+            }
+            return options;
+        }
+
+        private void recordMetrics(ResponseOptions options, long bytes) {
+            // a list is recorded through its members
+            if (options == null || options.verb == null || options.idle || options.parked || options.batch != null) {
+                return;
+            }
+            long head = options.head != 0 ? options.head : options.created;
+            long firstByte = options.firstByte != 0 ? options.firstByte : lastRead;
+            metrics.record(options.verb,
+                    (head - options.created) / 1000,
+                    (firstByte - head) / 1000,
+                    (lastRead - head) / 1000,
+                    options.bytes + bytes,
+                    options.parse / 1000);
+        }
+
+        // each member of a list waited in the batch from its own creation, the list's head and first byte are shared
+        private void recordMember(ResponseOptions member, long bytes) {
+            if (list == null) {
+                return;
+            }
+            member.head = list.head;
+            member.firstByte = list.firstByte;
+            recordMetrics(member, bytes);
+        }
+
+        // called from the UI thread by the lifecycle, the idle and noidle writes are handed to the scheduler
+        public void park() {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ReadThread.this) {
+                        parking.park();
                     }
                 }
-                if (crLocation != -1) {
-                    byte[] textBytes = new byte[crLocation];
-                    System.arraycopy(bytes, 0, textBytes, 0, crLocation);
-                    try {
-                        binaryText = new String(textBytes, "UTF8");
-                        binaryFound = true;
-                        byte[] sizeBytes = new byte[crLocation - (location+8)];
-                        System.arraycopy(bytes, location+8, sizeBytes, 0, crLocation - (location+8));
-                        String size = new String(sizeBytes, "UTF8");
-                        binarySize = Integer.valueOf(size);
-                        binaryOffset = crLocation;
-                        //Log.d("SockectConnection", "binary found at "+location+" offset "+binaryOffset+" size "+binarySize);
-                    } catch(UnsupportedEncodingException e) {
-                        sendEvent("OnError", "error", e);
+            });
+        }
+
+        public void unpark(final long started) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ReadThread.this) {
+                        parking.unpark(started);
                     }
-                } else {
-                    sendEvent("OnError", "error", "cr not found");
                 }
-                return true;
-            } else {
-                return false;
+            });
+        }
+
+        private synchronized void onParkedIdle(ResponseOptions options, byte[] buffer, int offset, int length) {
+            parking.onIdle(options, parseChanged(buffer, offset, length));
+        }
+
+        // binarylimit only needs to be sent again when the limit changed since this connection last sent it
+        public void fetchAlbumArt(AlbumArtFiles.Fetch fetch) {
+            int limit = binaryLimit;
+            if (limit > 0 && limit != sentBinaryLimit) {
+                sentBinaryLimit = limit;
+                write("binarylimit "+limit+"\n", new ResponseOptions(null, null, null, null, false, 0, 0, true));
             }
+            writeFetch(fetch);
         }
 
-        private boolean findInit() {
-            byte[] bytes = baos.toByteArray();
-            int pos = searchBytes(bytes, initPrefix);
-            if (pos != -1) {
-                //Log.d("SockectConnection", "init found at "+pos);
-                return true;
+        public void writeIndexPage(IndexBuild build) {
+            ResponseOptions options = new ResponseOptions(null, null, null, null, false, 0, 0, false);
+            options.indexBuild = build;
+            options.promise = build.promise;
+            if (build.windowed) {
+                write("find \"(modified-since '0')\" window "+build.start+":"+(build.start + INDEX_PAGE_SIZE)+"\n", options);
             } else {
-                return false;
+                write("listallinfo\n", options);
             }
         }
 
-        private boolean findError() {
-            byte[] bytes = baos.toByteArray();
-            int pos = searchBytes(bytes, errPrefix);
-            if (pos != -1) {
-                //Log.d("SockectConnection", "error found at "+pos);
-                return true;
-            } else {
-                return false;
+        // a full page means there may be more, the next one is requested straight from the read thread
+        private void onIndexPage(ResponseOptions options, IndexBuild build, byte[] buffer, int offset, int length) {
+            int before = build.builder.size();
+            long started = System.nanoTime();
+            MPDResponseParser parser = new MPDResponseParser(MPDResponseParser.FORMAT_SONGS, null, build.builder);
+            parser.parse(buffer, offset, length);
+            parser.finish();
+            options.parse += System.nanoTime() - started;
+            if (build.windowed && build.builder.size() - before == INDEX_PAGE_SIZE) {
+                build.start += INDEX_PAGE_SIZE;
+                writeIndexPage(build);
+                return;
             }
+            completeIndexBuild(build);
+        }
+
+        private void writeFetch(AlbumArtFiles.Fetch fetch) {
+            ResponseOptions options = new ResponseOptions(null, fetch.filename, null, null, false, 0, 0, false);
+            options.fetch = fetch;
+            write((fetch.useReadPicture ? "readpicture " : "albumart ")+quote(fetch.uri)+" "+fetch.offset+"\n", options);
         }
 
-        private boolean findBufferEnd() {
-            byte[] bytes = baos.toByteArray();
-            byte b1 = bytes[bytes.length-1];
-            byte b2 = bytes[bytes.length-2];
-            byte b3 = bytes[bytes.length-3];
-            if (b1 == 0x0a && b2 == 0x4b && b3 == 0x4f) {
-                if (bytes.length > 3) {
-                    byte b4 = bytes[bytes.length-4];
-                    if (b4 == 0x0a) {
-                        return true;
-                    } else {
-                        return false;
+        // the next chunk is requested from the read thread as soon as the previous one is on disk
+        private void onAlbumArtChunk(AlbumArtFiles.Fetch fetch, byte[] buffer, int offset, int length, int binaryOffset, int binaryLength) {
+            int lineStart = offset;
+            for (int i = offset; i <= offset + length; i++) {
+                if (i < offset + length && buffer[i] != 0x0a) {
+                    continue;
+                }
+                String line = new String(buffer, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+                if (line.startsWith(SIZE_PREFIX)) {
+                    // a bad header only fails this fetch, the frame has already been consumed so the read loop carries on
+                    try {
+                        fetch.size = Integer.parseInt(line.substring(SIZE_PREFIX.length()).trim());
+                    } catch (NumberFormatException e) {
+                        Log.d("SockectConnection", "invalid album art size for "+fetch.uri+" : "+line);
+                        albumArt.abort(fetch, "MPDError", "Invalid album art size "+line);
+                        return;
                     }
-                } else {
-                    return true;
+                } else if (line.startsWith(TYPE_PREFIX)) {
+                    fetch.mime = line.substring(TYPE_PREFIX.length());
                 }
+            }
+            if (fetch.mime == null && fetch.offset == 0) {
+                fetch.mime = AlbumArtFiles.detectMimeType(buffer, binaryOffset, binaryLength);
+            }
+            albumArt.writeChunk(fetch, ByteBuffer.wrap(buffer, binaryOffset, binaryLength));
+            fetch.offset += binaryLength;
+            if (binaryLength == 0 || fetch.offset >= fetch.size) {
+                albumArt.complete(fetch);
+                return;
+            }
+            if (fetch.failed) {
+                return;
+            }
+            WritableMap results = Arguments.createMap();
+            results.putString("filename", fetch.filename);
+            results.putInt("offset", fetch.offset);
+            results.putInt("size", fetch.size);
+            NativeEventDispatcher.get(getReactApplicationContext()).emitLatest("OnAlbumArtProgress", fetch.filename, results);
+            writeFetch(fetch);
+        }
+
+        // status, currentsong and the next idle go out in one write, MPD answers them in order
+        private void fetchStatus(WritableArray subsystems) {
+            ResponseOptions statusOptions = new ResponseOptions(null, null, MPDResponseParser.FORMAT_STATUS, null, false, 0, 0, true);
+            statusOptions.subsystems = subsystems;
+            ResponseOptions idleOptions = idleOptions();
+            synchronized (this) {
+                if (pw == null) {
+                    return;
+                }
+                queued(STATUS_COMMAND, statusOptions);
+                pending.add(idleOptions);
+                pw.print(STATUS_COMMAND);
+                pw.print(IDLE_COMMAND);
+                pw.flush();
+            }
+        }
+
+        private void onIdle(byte[] buffer, int offset, int length) {
+            List<String> changed = parseChanged(buffer, offset, length);
+            WritableArray subsystems = Arguments.fromList(changed);
+            if (changed.contains("playlist")) {
+                playQueue.sync(null);
+            }
+            if (isStatusChange(changed)) {
+                fetchStatus(subsystems);
             } else {
-                return false;
+                WritableMap results = createResults("msg", "changed");
+                results.putArray("subsystems", subsystems);
+                sendEvent("OnSubsystemChange", results);
+                write(IDLE_COMMAND, idleOptions());
             }
         }
 
-        private int searchBytes(byte[] bytes, byte[] searchBytes) {
-            for (int i = 0; i < bytes.length - searchBytes.length+1; ++i) {
-                boolean found = true;
-                for (int j = 0; j < searchBytes.length; ++j) {
-                    if (bytes[i+j] != searchBytes[j]) {
-                        found = false;
-                        break;
+        private ResponseOptions idleOptions() {
+            ResponseOptions options = new ResponseOptions(null, null, null, null, false, 0, 0, true);
+            options.idle = true;
+            return options;
+        }
+
+        private WritableMap createResults(String key, String value) {
+            WritableMap results = Arguments.createMap();
+            results.putString(key, value);
+            if (channel != null) {
+                results.putString("channel", channel);
+            }
+            return results;
+        }
+
+        private WritableMap createResults(ResponseOptions options) {
+            WritableMap results = Arguments.createMap();
+            if (channel != null) {
+                results.putString("channel", channel);
+            }
+            if (options != null && options.id != null) {
+                results.putString("id", options.id);
+            }
+            return results;
+        }
+
+        private void deliver(ResponseOptions options, WritableMap results) {
+            if (options != null && options.promise != null) {
+                options.promise.resolve(results);
+            } else {
+                sendEvent("OnResponse", results);
+            }
+        }
+
+        @Override
+        public void onInit(byte[] buffer, int offset, int length) {
+            if (channel != null) {
+                return;
+            }
+            String data = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            WritableMap results = Arguments.createMap();
+            results.putString("data", data);
+            sendEvent("OnInit", results);
+            //Log.d("SockectConnection", "init : "+data);
+        }
+
+        @Override
+        public boolean onLine(byte[] buffer, int offset, int length) {
+            ResponseOptions options = pending.peek();
+            if (options != null && options.firstByte == 0) {
+                options.firstByte = lastRead;
+            }
+            if (options == null || !options.stream) {
+                return false;
+            }
+            options.bytes += length + 1;
+            if (streamParser == null) {
+                streamParser = new MPDResponseParser(options.format, options.tag, new MPDResponseParser.RecordHandler() {
+                    @Override
+                    public MPDResponseParser.Record createRecord() {
+                        return new WritableRecord();
                     }
-                }
-                if (found) return i;
+
+                    @Override
+                    public void onRecord(MPDResponseParser.Record record) {
+                        streamBatch.pushMap(((WritableRecord) record).map);
+                        streamCount++;
+                    }
+                });
+                streamBatch = Arguments.createArray();
+                streamCount = 0;
+                streamChunks = 0;
+                streamFlushed = System.currentTimeMillis();
+            }
+            long started = System.nanoTime();
+            streamParser.parseLine(buffer, offset, length);
+            options.parse += System.nanoTime() - started;
+            long now = System.currentTimeMillis();
+            if (streamCount >= options.batchSize || (streamCount > 0 && now - streamFlushed >= options.flushInterval)) {
+                WritableMap results = createResults(options);
+                results.putString("format", options.format);
+                results.putInt("chunk", streamChunks++);
+                results.putArray("records", streamBatch);
+                sendEvent("OnResponseChunk", results);
+                streamBatch = Arguments.createArray();
+                streamCount = 0;
+                streamFlushed = now;
             }
+            return true;
+        }
+
+        @Override
+        public void onResponse(byte[] buffer, int offset, int length) {
+            ResponseOptions options = nextResponse();
+            respond(options, buffer, offset, length);
+            recordMetrics(options, length);
+        }
+
+        private void respond(ResponseOptions options, byte[] buffer, int offset, int length) {
+            if (options != null && options.batch != null) {
+                list = options;
+                batcher.respond(options.batch, buffer, offset, length, null);
+                list = null;
+                return;
+            }
+            if (options != null && options.responseHandler != null) {
+                options.responseHandler.onResponse(buffer, offset, length);
+                return;
+            }
+            if (options != null && options.fetch != null) {
+                albumArt.abort(options.fetch, "NoAlbumArt", "No embedded album art for "+options.fetch.uri);
+                return;
+            }
+            if (options != null && options.indexBuild != null) {
+                onIndexPage(options, options.indexBuild, buffer, offset, length);
+                return;
+            }
+            if (options != null && options.idle) {
+                onIdle(buffer, offset, length);
+                return;
+            }
+            if (options != null && options.parked) {
+                onParkedIdle(options, buffer, offset, length);
+                return;
+            }
+            if (options != null && options.subsystems != null) {
+                WritableMap results = createResults("msg", "changed");
+                results.putArray("subsystems", options.subsystems);
+                long started = System.nanoTime();
+                WritableMap status = parseStatus(buffer, offset, length);
+                options.parse += System.nanoTime() - started;
+                results.putMap("status", status);
+                sendEvent("OnSubsystemChange", results);
+                return;
+            }
+            if (options != null && options.internal) {
+                return;
+            }
+            if (streamParser != null) {
+                long started = System.nanoTime();
+                streamParser.finish();
+                options.parse += System.nanoTime() - started;
+                WritableMap results = createResults(options);
+                results.putString("format", options.format);
+                results.putBoolean("streamed", true);
+                results.putInt("chunks", streamChunks);
+                results.putArray("records", streamBatch);
+                deliver(options, results);
+                streamParser = null;
+                streamBatch = null;
+                return;
+            }
+            if (options != null && options.format != null) {
+                WritableMap results = createResults(options);
+                results.putString("format", options.format);
+                long started = System.nanoTime();
+                WritableArray records = parseRecords(options.format, options.tag, buffer, offset, length);
+                options.parse += System.nanoTime() - started;
+                results.putArray("records", records);
+                deliver(options, results);
+                return;
+            }
+            long started = System.nanoTime();
+            String out = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (options != null) {
+                options.parse += System.nanoTime() - started;
+            }
+            WritableMap results = createResults(options);
+            results.putString("data", out);
+            deliver(options, results);
+            //Log.d("SockectConnection", "out : "+out);
+        }
+
+        @Override
+        public void onBinaryResponse(byte[] buffer, int offset, int length, int binaryOffset, int binaryLength) {
+            ResponseOptions options = nextResponse();
+            respondBinary(options, buffer, offset, length, binaryOffset, binaryLength);
+            recordMetrics(options, length + binaryLength);
+        }
+
+        // each command gets its own part of the response, an ACK fails the one it names and the rest go out again
+        private void respondBinary(ResponseOptions options, byte[] buffer, int offset, int length, int binaryOffset, int binaryLength) {
+            if (options != null && options.fetch != null) {
+                onAlbumArtChunk(options.fetch, buffer, offset, length, binaryOffset, binaryLength);
+                return;
+            }
+            boolean append = options == null || options.message == null || transferOffset(options.message) != 0;
+            String path = writeAlbumArt(options != null ? options.filename : null, buffer, binaryOffset, binaryLength, append);
+            if (options != null && options.internal) {
+                return;
+            }
+            String binaryText = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            WritableMap results = createResults(options);
+            binaryText += "\nOK\n";
+            results.putString("data", binaryText);
+            results.putString("filename", path);
+            deliver(options, results);
+            //Log.d("SockectConnection", "binary out ["+binaryLength+"] ["+binaryText+"]");
+        }
+
+        @Override
+        public void onError(byte[] buffer, int offset, int length) {
+            ResponseOptions options = nextResponse();
+            recordMetrics(options, length);
+            streamParser = null;
+            streamBatch = null;
+            String data = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (options != null && options.batch != null) {
+                list = options;
+                batcher.respond(options.batch, buffer, offset, length, data.substring(data.lastIndexOf("ACK [")));
+                list = null;
+                return;
+            }
+            if (options != null && options.responseHandler != null) {
+                options.responseHandler.onError(data.trim());
+                return;
+            }
+            if (options != null && options.fetch != null) {
+                albumArt.abort(options.fetch, "MPDError", data.trim());
+                return;
+            }
+            if (options != null && options.internal) {
+                Log.d("SockectConnection", "internal command failed : "+data);
+                return;
+            }
+            if (options != null && options.promise != null) {
+                options.promise.reject("MPDError", data.trim());
+                return;
+            }
+            WritableMap results = createResults(options);
+            results.putString("data", data);
+            sendEvent("OnResponseError", results);
+            //Log.d("SockectConnection", "error : "+data);
+        }
+
+        private String writeAlbumArt(String albumArtFilename, byte[] binaryData, int offset, int length, boolean append) {
+            if (albumArtFilename == null) {
+                Log.d("SockectConnection", "binary response without an album art filename");
+                return null;
+            }
+            return albumArt.write(albumArtFilename, binaryData, offset, length, append);
+        }
+    }
+
+    // the offset an albumart or readpicture command asks for, its last argument, -1 when there is none
+    static long transferOffset(String message) {
+        String line = message.trim();
+        int space = line.lastIndexOf(' ');
+        if (space == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(line.substring(space + 1));
+        } catch (NumberFormatException e) {
             return -1;
         }
+    }
 
-        private String writeAlbumArt(byte[] binaryData) {
-            File albumArtFile = new File(documentDir, albumArtFilename);
-            if (!albumArtFile.exists()) {
-                try {
-                    albumArtFile.createNewFile();
-                } catch (IOException e) {
-                    Log.d("SockectConnection", "failed to create mpd_album_art file "+albumArtFile.getAbsolutePath());
-                    return albumArtFile.getAbsolutePath();
-                }
+    // a watched handle is parked in idle, other commands interrupt it with noidle and the watch idles again afterwards
+    private class HandleWatch {
+        private final int handle;
+        private boolean idling = false;
+
+        private HandleWatch(int handle) {
+            this.handle = handle;
+        }
+
+        private synchronized void send(String message, MPDConnectionEngine.ResponseHandler handler) {
+            MPDConnectionEngine connectionEngine = engine;
+            if (connectionEngine == null) {
+                return;
+            }
+            if (idling) {
+                idling = false;
+                connectionEngine.send(handle, "noidle\n", null);
             }
+            if (message != null) {
+                connectionEngine.send(handle, message, handler);
+            }
+        }
 
-            BufferedOutputStream os = null;
-            try {
-                os = new BufferedOutputStream(new FileOutputStream(albumArtFile, true));
-                os.write(binaryData);
-                //Log.d("SockectConnection", "written "+binaryData.length+" to "+albumArtFile.getAbsolutePath());
-            } catch(IOException e) {
-                Log.d("SockectConnection", "exception while writing album art data to : "+albumArtFile.getAbsolutePath()+" "+e.getLocalizedMessage());
-            } finally {
-                if (os != null) {
-                    try {
-                        os.close();
-                    } catch (IOException e) {}
+        private synchronized void fetchStatus(final List<String> changed) {
+            MPDConnectionEngine connectionEngine = engine;
+            if (connectionEngine == null || handleWatches.get(handle) != this) {
+                return;
+            }
+            connectionEngine.send(handle, STATUS_COMMAND, new MPDConnectionEngine.ResponseHandler() {
+                @Override
+                public void onResponse(byte[] buffer, int offset, int length) {
+                    WritableMap results = Arguments.createMap();
+                    results.putInt("handle", handle);
+                    results.putArray("subsystems", Arguments.fromList(changed));
+                    results.putMap("status", parseStatus(buffer, offset, length));
+                    sendEvent("OnHandleSubsystemChange", results);
                 }
+
+                @Override
+                public void onError(String error) {
+                    Log.d("SockectConnection", "handle "+handle+" status failed : "+error);
+                }
+            });
+            idle();
+        }
+
+        private synchronized void idle() {
+            MPDConnectionEngine connectionEngine = engine;
+            if (connectionEngine == null || handleWatches.get(handle) != this) {
+                return;
             }
-            return albumArtFile.getAbsolutePath();
+            idling = true;
+            connectionEngine.send(handle, IDLE_COMMAND, new MPDConnectionEngine.ResponseHandler() {
+                @Override
+                public void onResponse(byte[] buffer, int offset, int length) {
+                    List<String> changed = parseChanged(buffer, offset, length);
+                    synchronized (HandleWatch.this) {
+                        idling = false;
+                        if (isStatusChange(changed)) {
+                            fetchStatus(changed);
+                            return;
+                        }
+                    }
+                    if (!changed.isEmpty()) {
+                        WritableMap results = Arguments.createMap();
+                        results.putInt("handle", handle);
+                        results.putArray("subsystems", Arguments.fromList(changed));
+                        sendEvent("OnHandleSubsystemChange", results);
+                    }
+                    idle();
+                }
+
+                @Override
+                public void onError(String error) {
+                    synchronized (HandleWatch.this) {
+                        idling = false;
+                    }
+                    Log.d("SockectConnection", "handle "+handle+" idle failed : "+error);
+                }
+            });
+        }
+    }
+
+    private static class WritableRecord implements MPDResponseParser.Record {
+        private final WritableMap map = Arguments.createMap();
+
+        @Override
+        public void putString(String key, String value) {
+            map.putString(key, value);
+        }
+
+        @Override
+        public void putInt(String key, int value) {
+            map.putInt(key, value);
+        }
+
+        @Override
+        public void putBoolean(String key, boolean value) {
+            map.putBoolean(key, value);
+        }
+
+        @Override
+        public void putRecord(String key, MPDResponseParser.Record value) {
+            map.putMap(key, ((WritableRecord) value).map);
+        }
+    }
+
+    private static class IndexBuild {
+        private final boolean windowed;
+        private final Promise promise;
+        private final MPDSearchIndex.Builder builder = new MPDSearchIndex.Builder();
+        private final long started = System.nanoTime();
+        private int start = 0;
+
+        private IndexBuild(boolean windowed, Promise promise) {
+            this.windowed = windowed;
+            this.promise = promise;
+        }
+    }
+
+    private static class ResponseOptions {
+        private final String id;
+        private final String filename;
+        private final String format;
+        private final String tag;
+        private final boolean stream;
+        private final int batchSize;
+        private final int flushInterval;
+        private final boolean internal;
+        private boolean idle = false;
+        private boolean parked = false;
+        private WritableArray subsystems = null;
+        private Promise promise = null;
+        private AlbumArtFiles.Fetch fetch = null;
+        private IndexBuild indexBuild = null;
+        private MPDCommandBatcher.Batch<ResponseOptions> batch = null;
+        private MPDConnectionEngine.ResponseHandler responseHandler = null;
+        private final long created = System.nanoTime();
+        private String verb = null;
+        private String message = null;
+        private volatile long head = 0;
+        private long firstByte = 0;
+        private long bytes = 0;
+        private long parse = 0;
+
+        private ResponseOptions(String id, String filename, String format, String tag, boolean stream, int batchSize, int flushInterval, boolean internal) {
+            this.id = id;
+            this.filename = filename;
+            this.format = format;
+            this.tag = tag;
+            this.stream = stream;
+            this.batchSize = batchSize;
+            this.flushInterval = flushInterval;
+            this.internal = internal;
         }
     }
-}
\ No newline at end of file
+}
@@ -18,7 +18,6 @@ import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableArray;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import net.mm2d.upnp.Action;
 import net.mm2d.upnp.ControlPointFactory;
@@ -151,7 +150,7 @@ public class UPnPModule extends ReactContextBaseJavaModule implements ControlPoi
             params.putString("name", device.getFriendlyName());
             params.putString("udn", device.getUdn());
             params.putString("type", "mediaserver");
-            getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit("OnUPnPDiscover", params);
+            NativeEventDispatcher.get(getReactApplicationContext()).emitAppend("OnUPnPDiscover", params);
         } else if (device.getDeviceType().startsWith("urn:schemas-upnp-org:device:MediaRenderer")) {
             renderers.put(device.getUdn(), device);
             WritableMap params = Arguments.createMap();
@@ -159,7 +158,7 @@ public class UPnPModule extends ReactContextBaseJavaModule implements ControlPoi
             params.putString("name", device.getFriendlyName());
             params.putString("udn", device.getUdn());
             params.putString("type", "mediarenderer");
-            getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit("OnUPnPDiscover", params);
+            NativeEventDispatcher.get(getReactApplicationContext()).emitAppend("OnUPnPDiscover", params);
         }
     }
 
@@ -174,7 +173,7 @@ public class UPnPModule extends ReactContextBaseJavaModule implements ControlPoi
             params.putString("name", device.getFriendlyName());
             params.putString("udn", device.getUdn());
             params.putString("type", "mediaserver");
-            getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit("OnUPnPDiscover", params);
+            NativeEventDispatcher.get(getReactApplicationContext()).emitAppend("OnUPnPDiscover", params);
         } else if (device.getDeviceType().startsWith("urn:schemas-upnp-org:device:MediaRenderer")) {
             renderers.remove(device.getUdn());
             WritableMap params = Arguments.createMap();
@@ -182,7 +181,7 @@ public class UPnPModule extends ReactContextBaseJavaModule implements ControlPoi
             params.putString("name", device.getFriendlyName());
             params.putString("udn", device.getUdn());
             params.putString("type", "mediarenderer");
-            getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit("OnUPnPDiscover", params);
+            NativeEventDispatcher.get(getReactApplicationContext()).emitAppend("OnUPnPDiscover", params);
         }
     }
 
@@ -25,7 +25,6 @@ import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.LifecycleEventListener;
 
@@ -138,10 +137,7 @@ public class VolumeControlModule extends ReactContextBaseJavaModule implements A
                 float volume = getNormalizedVolume();
                 WritableMap params = Arguments.createMap();
                 params.putDouble("volume", volume);
-                try {
-                    getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit("OnVolumeChange", params);
-                } catch (RuntimeException e) {
-                }
+                NativeEventDispatcher.get(getReactApplicationContext()).emitLatest("OnVolumeChange", "volume", params);
             }
         }
     }
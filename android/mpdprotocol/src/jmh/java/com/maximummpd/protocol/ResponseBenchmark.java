@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A song listing of 1 KB, 1 MB and 50 MB read through the framer the way ReadThread reads it:
+ * framed only, framed then parsed as one response, and parsed line by line as it streams.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseBenchmark {
+    @Param({"1024", "1048576", "52428800"})
+    public int size;
+
+    private Responses.ChunkedStream stream;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stream = new Responses.ChunkedStream(Responses.songs(size));
+    }
+
+    @Benchmark
+    public void frame(final Blackhole blackhole) throws IOException {
+        read(new MPDResponseFramer(new Listener(blackhole) {
+            @Override
+            public void onResponse(byte[] buffer, int offset, int length) {
+                blackhole.consume(length);
+            }
+        }));
+    }
+
+    @Benchmark
+    public void frameAndParse(final Blackhole blackhole) throws IOException {
+        read(new MPDResponseFramer(new Listener(blackhole) {
+            @Override
+            public void onResponse(byte[] buffer, int offset, int length) {
+                MPDResponseParser parser = new MPDResponseParser(MPDResponseParser.FORMAT_SONGS, null, handler(blackhole));
+                parser.parse(buffer, offset, length);
+                parser.finish();
+            }
+        }));
+    }
+
+    @Benchmark
+    public void stream(final Blackhole blackhole) throws IOException {
+        final MPDResponseParser parser = new MPDResponseParser(MPDResponseParser.FORMAT_SONGS, null, handler(blackhole));
+        read(new MPDResponseFramer(new Listener(blackhole) {
+            @Override
+            public boolean onLine(byte[] buffer, int offset, int length) {
+                parser.parseLine(buffer, offset, length);
+                return true;
+            }
+
+            @Override
+            public void onResponse(byte[] buffer, int offset, int length) {
+                parser.finish();
+            }
+        }));
+    }
+
+    private void read(MPDResponseFramer framer) throws IOException {
+        stream.reset();
+        while (!stream.done()) {
+            framer.read(stream);
+        }
+    }
+
+    private static MPDResponseParser.RecordHandler handler(final Blackhole blackhole) {
+        return new MPDResponseParser.RecordHandler() {
+            @Override
+            public MPDResponseParser.Record createRecord() {
+                return new Responses.CountingRecord();
+            }
+
+            @Override
+            public void onRecord(MPDResponseParser.Record record) {
+                blackhole.consume(record);
+            }
+        };
+    }
+
+    static class Listener implements MPDResponseFramer.FrameListener {
+        final Blackhole blackhole;
+
+        Listener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onInit(byte[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void onResponse(byte[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void onBinaryResponse(byte[] buffer, int offset, int length, int binaryOffset, int binaryLength) {
+            blackhole.consume(binaryLength);
+        }
+
+        @Override
+        public void onError(byte[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public boolean onLine(byte[] buffer, int offset, int length) {
+            return false;
+        }
+    }
+}
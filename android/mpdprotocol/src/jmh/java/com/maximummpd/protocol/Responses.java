@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Response bytes shaped like the ones MPD sends, and a stream that hands them out in socket sized reads.
+ */
+public class Responses {
+    public static final int READ_SIZE = 65536;
+
+    // listallinfo style song records up to roughly size bytes, then the closing OK
+    public static byte[] songs(int size) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size - 3) {
+            int album = i / 10;
+            sb.append("file: Artist ").append(i / 100).append("/Album ").append(album).append('/').append(i % 10 + 1).append(" Tr\u00e4ck.flac\n");
+            sb.append("Last-Modified: 2019-01-01T00:00:00Z\n");
+            sb.append("Artist: Artist ").append(i / 100).append('\n');
+            sb.append("Album: Album ").append(album).append('\n');
+            sb.append("Title: S\u00f3ng ").append(i).append('\n');
+            sb.append("Track: ").append(i % 10 + 1).append('\n');
+            sb.append("Date: ").append(1960 + album % 60).append('\n');
+            sb.append("Genre: Genre ").append(album % 20).append('\n');
+            sb.append("Time: 240\nduration: 240.000\n");
+            i++;
+        }
+        sb.append("OK\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // the chunked albumart responses for one cover of size bytes at the given binarylimit
+    public static byte[] albumArt(int size, int chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + size / chunk * 64 + 64);
+        byte[] art = new byte[size];
+        for (int i = 0; i < art.length; i++) {
+            art[i] = (byte) (i * 31);
+        }
+        for (int offset = 0; offset < size; offset += chunk) {
+            int length = Math.min(chunk, size - offset);
+            out.write(("size: "+size+"\nbinary: "+length+"\n").getBytes(StandardCharsets.UTF_8));
+            out.write(art, offset, length);
+            out.write("\nOK\n".getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    public static class ChunkedStream extends InputStream {
+        private final byte[] bytes;
+        private int position = 0;
+
+        public ChunkedStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public boolean done() {
+            return position >= bytes.length;
+        }
+
+        public void reset() {
+            position = 0;
+        }
+
+        @Override
+        public int read() {
+            return done() ? -1 : bytes[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (done()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, READ_SIZE), bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    public static class CountingRecord implements MPDResponseParser.Record {
+        public int fields = 0;
+
+        @Override
+        public void putString(String key, String value) {
+            fields++;
+        }
+
+        @Override
+        public void putInt(String key, int value) {
+            fields++;
+        }
+
+        @Override
+        public void putBoolean(String key, boolean value) {
+            fields++;
+        }
+
+        @Override
+        public void putRecord(String key, MPDResponseParser.Record value) {
+            fields++;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Holds independent commands for a short window so the ones sent close together go to MPD as one
+ * MPDCommandList, then hands each command its own frame of the combined response. The flush that is
+ * due when the window closes runs on the scheduler, never on the caller's thread.
+ *
+ * It shares its owner's lock rather than having one of its own: the owner writes directly under the
+ * same lock, so a list and the commands written around it keep the order they were sent in.
+ */
+public class MPDCommandBatcher<T> {
+    public interface Connection<T> {
+        void send(String message, T command);
+        void sendList(String message, Batch<T> batch);
+        void onResponse(T command, byte[] buffer, int offset, int length);
+        void onError(T command, String error);
+    }
+
+    public static class Batch<T> {
+        public final List<String> messages;
+        public final List<T> commands;
+
+        private Batch(List<String> messages, List<T> commands) {
+            this.messages = messages;
+            this.commands = commands;
+        }
+    }
+
+    private final Object lock;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBatch;
+    private final Connection<T> connection;
+    private List<String> messages = new ArrayList<String>();
+    private List<T> commands = new ArrayList<T>();
+    private int window = 0;
+    // the flush that is due, one that was overtaken may still run but finds it is no longer this
+    private Runnable due = null;
+
+    public MPDCommandBatcher(Object lock, ScheduledExecutorService scheduler, int maxBatch, Connection<T> connection) {
+        this.lock = lock;
+        this.scheduler = scheduler;
+        this.maxBatch = maxBatch;
+        this.connection = connection;
+    }
+
+    // 0 sends every command as it is added
+    public void setWindow(int window) {
+        synchronized (lock) {
+            this.window = window;
+        }
+    }
+
+    public void add(String message, T command) {
+        synchronized (lock) {
+            if (window <= 0) {
+                flush();
+                connection.send(message, command);
+                return;
+            }
+            messages.add(message);
+            commands.add(command);
+            if (commands.size() >= maxBatch) {
+                flush();
+            } else if (commands.size() == 1) {
+                due = new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (lock) {
+                            if (due == this) {
+                                flush();
+                            }
+                        }
+                    }
+                };
+                scheduler.schedule(due, window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // sends whatever is waiting, a single command goes out on its own
+    public void flush() {
+        synchronized (lock) {
+            due = null;
+            if (commands.isEmpty()) {
+                return;
+            }
+            Batch<T> batch = take();
+            if (batch.commands.size() == 1) {
+                connection.send(batch.messages.get(0), batch.commands.get(0));
+            } else {
+                connection.sendList(MPDCommandList.build(batch.messages), batch);
+            }
+        }
+    }
+
+    // the commands that were waiting, now never to be sent
+    public List<T> drain() {
+        synchronized (lock) {
+            due = null;
+            return take().commands;
+        }
+    }
+
+    // the response to a list, error is the ACK line that ended it or null. The commands after
+    // the failed one were never run and are added again
+    public void respond(Batch<T> batch, byte[] buffer, int offset, int length, String error) {
+        List<byte[]> frames = MPDCommandList.split(buffer, offset, length);
+        for (int i = 0; i < frames.size() && i < batch.commands.size(); i++) {
+            byte[] frame = frames.get(i);
+            connection.onResponse(batch.commands.get(i), frame, 0, frame.length);
+        }
+        if (error == null) {
+            return;
+        }
+        int failed = MPDCommandList.errorIndex(error);
+        if (failed < frames.size() || failed >= batch.commands.size()) {
+            failed = frames.size();
+        }
+        if (failed < batch.commands.size()) {
+            connection.onError(batch.commands.get(failed), MPDCommandList.single(error).trim());
+        }
+        for (int i = failed + 1; i < batch.commands.size(); i++) {
+            add(batch.messages.get(i), batch.commands.get(i));
+        }
+    }
+
+    private Batch<T> take() {
+        Batch<T> batch = new Batch<T>(messages, commands);
+        messages = new ArrayList<String>();
+        commands = new ArrayList<T>();
+        return batch;
+    }
+}
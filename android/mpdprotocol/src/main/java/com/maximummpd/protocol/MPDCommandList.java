@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Independent commands sent together as one command_list_ok_begin list. MPD ends the answer to each
+ * command with list_OK, so the combined response can be cut back into one frame per command, each
+ * closed with OK as if it had been sent on its own. An ACK names the index of the command that
+ * failed; the ones before it completed and the ones after it were never run.
+ */
+public class MPDCommandList {
+    public static final String BEGIN = "command_list_ok_begin\n";
+    public static final String END = "command_list_end\n";
+
+    private static final byte[] LIST_OK = "list_OK".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OK = "OK\n".getBytes(StandardCharsets.UTF_8);
+
+    public static String build(List<String> commands) {
+        StringBuilder sb = new StringBuilder(BEGIN);
+        for (String command : commands) {
+            sb.append(command);
+        }
+        sb.append(END);
+        return sb.toString();
+    }
+
+    // one frame per list_OK found, the closing OK or ACK line is left out
+    public static List<byte[]> split(byte[] buffer, int offset, int length) {
+        List<byte[]> frames = new ArrayList<byte[]>();
+        int frameStart = offset;
+        int lineStart = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer[i] != 0x0a) {
+                continue;
+            }
+            if (isListOk(buffer, lineStart, i - lineStart)) {
+                byte[] frame = new byte[lineStart - frameStart + OK.length];
+                System.arraycopy(buffer, frameStart, frame, 0, lineStart - frameStart);
+                System.arraycopy(OK, 0, frame, lineStart - frameStart, OK.length);
+                frames.add(frame);
+                frameStart = i + 1;
+            }
+            lineStart = i + 1;
+        }
+        return frames;
+    }
+
+    // the index in ACK [error@index], -1 when it cannot be read
+    public static int errorIndex(String ack) {
+        int at = ack.indexOf('@');
+        int close = ack.indexOf(']', at);
+        if (!ack.startsWith("ACK [") || at == -1 || close == -1) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(ack.substring(at + 1, close));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // the error as the command would have seen it had it been sent alone
+    public static String single(String ack) {
+        int at = ack.indexOf('@');
+        int close = ack.indexOf(']', at);
+        if (at == -1 || close == -1) {
+            return ack;
+        }
+        return ack.substring(0, at + 1)+"0"+ack.substring(close);
+    }
+
+    private static boolean isListOk(byte[] buffer, int start, int length) {
+        if (length != LIST_OK.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[start+i] != LIST_OK[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
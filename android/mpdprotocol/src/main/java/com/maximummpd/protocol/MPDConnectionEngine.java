@@ -0,0 +1,292 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Runs any number of MPD connections on one I/O thread. Each connection is a non blocking
+ * SocketChannel registered with a single Selector and is addressed by an int handle.
+ * Commands are written as soon as the channel is writable and their handlers are called,
+ * in order, on the I/O thread as each response frame completes.
+ */
+public class MPDConnectionEngine implements Runnable {
+    private static final int READ_SIZE = 65536;
+    private static final long CONNECT_TIMEOUT = 10000;
+
+    public interface Listener {
+        void onConnected(int handle, String greeting);
+        void onClosed(int handle, String reason);
+    }
+
+    public interface ResponseHandler {
+        void onResponse(byte[] buffer, int offset, int length);
+        void onError(String error);
+    }
+
+    private final Listener listener;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final Map<Integer, Connection> connections = new HashMap<Integer, Connection>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_SIZE);
+    private volatile boolean shutdown = false;
+    private int nextHandle = 1;
+
+    public MPDConnectionEngine(Listener listener) throws IOException {
+        this.listener = listener;
+        this.selector = Selector.open();
+    }
+
+    public int open(final String host, final int port) {
+        // the lookup blocks, so it happens on the caller's thread rather than stalling every connection on the selector
+        final InetSocketAddress address = new InetSocketAddress(host, port);
+        final int handle;
+        synchronized (this) {
+            handle = nextHandle++;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                Connection connection = new Connection(handle);
+                connections.put(handle, connection);
+                if (address.isUnresolved()) {
+                    close(connection, "unable to resolve "+host);
+                    return;
+                }
+                try {
+                    connection.channel = SocketChannel.open();
+                    connection.channel.configureBlocking(false);
+                    connection.channel.socket().setTcpNoDelay(true);
+                    connection.deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+                    if (connection.channel.connect(address)) {
+                        // connected straight away (loopback), commands queued so far still need OP_WRITE
+                        connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                        connection.deadline = 0;
+                        connection.updateInterest();
+                    } else {
+                        connection.channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                    }
+                } catch (IOException e) {
+                    close(connection, e.getLocalizedMessage());
+                }
+            }
+        });
+        return handle;
+    }
+
+    // a null handler marks a command that has no response of its own, e.g. noidle
+    public void send(final int handle, final String command, final ResponseHandler handler) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                Connection connection = connections.get(handle);
+                if (connection == null) {
+                    if (handler != null) {
+                        handler.onError("ACK [0@0] {} unknown connection handle "+handle);
+                    }
+                    return;
+                }
+                if (handler != null) {
+                    connection.pending.add(handler);
+                }
+                connection.out.add(ByteBuffer.wrap(command.getBytes(StandardCharsets.UTF_8)));
+                connection.updateInterest();
+            }
+        });
+    }
+
+    public void close(final int handle) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                Connection connection = connections.get(handle);
+                if (connection != null) {
+                    close(connection, "closed");
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        selector.wakeup();
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                break;
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isConnectable()) {
+                        connection.channel.finishConnect();
+                        connection.deadline = 0;
+                        connection.updateInterest();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(connection);
+                    }
+                } catch (IOException e) {
+                    close(connection, e.getLocalizedMessage());
+                }
+            }
+            checkDeadlines();
+        }
+        for (Connection connection : connections.values().toArray(new Connection[0])) {
+            close(connection, "shutdown");
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {}
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int len = connection.channel.read(readBuffer);
+        if (len == -1) {
+            close(connection, "end of stream");
+            return;
+        }
+        if (len > 0) {
+            connection.framer.feed(readBuffer.array(), 0, len);
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        while (!connection.out.isEmpty()) {
+            ByteBuffer buffer = connection.out.peek();
+            connection.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            connection.out.poll();
+        }
+        connection.updateInterest();
+    }
+
+    private void checkDeadlines() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections.values().toArray(new Connection[0])) {
+            if (connection.deadline != 0 && now > connection.deadline) {
+                close(connection, "timeout");
+            }
+        }
+    }
+
+    private void close(Connection connection, String reason) {
+        if (connections.remove(connection.handle) == null) {
+            return;
+        }
+        try {
+            if (connection.channel != null) {
+                connection.channel.close();
+            }
+        } catch (IOException e) {}
+        ResponseHandler handler;
+        while ((handler = connection.pending.poll()) != null) {
+            handler.onError("ACK [0@0] {} "+reason);
+        }
+        listener.onClosed(connection.handle, reason);
+    }
+
+    private class Connection implements MPDResponseFramer.FrameListener {
+        private final int handle;
+        private final MPDResponseFramer framer = new MPDResponseFramer(this);
+        private final ArrayDeque<ResponseHandler> pending = new ArrayDeque<ResponseHandler>();
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+        private SocketChannel channel = null;
+        private long deadline = 0;
+
+        private Connection(int handle) {
+            this.handle = handle;
+        }
+
+        private void updateInterest() {
+            SelectionKey key = channel.keyFor(selector);
+            if (key == null || !key.isValid() || deadline != 0) {
+                return;
+            }
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public void onInit(byte[] buffer, int offset, int length) {
+            listener.onConnected(handle, new String(buffer, offset, length, StandardCharsets.UTF_8).trim());
+        }
+
+        @Override
+        public void onResponse(byte[] buffer, int offset, int length) {
+            ResponseHandler handler = pending.poll();
+            if (handler != null) {
+                handler.onResponse(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public void onBinaryResponse(byte[] buffer, int offset, int length, int binaryOffset, int binaryLength) {
+            // binary transfers stay on the dedicated bulk connections, only the header lines are passed on
+            onResponse(buffer, offset, length);
+        }
+
+        @Override
+        public void onError(byte[] buffer, int offset, int length) {
+            ResponseHandler handler = pending.poll();
+            if (handler != null) {
+                handler.onError(new String(buffer, offset, length, StandardCharsets.UTF_8).trim());
+            }
+        }
+
+        @Override
+        public boolean onLine(byte[] buffer, int offset, int length) {
+            return false;
+        }
+    }
+}
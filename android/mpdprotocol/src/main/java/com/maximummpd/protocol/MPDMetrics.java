@@ -0,0 +1,199 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Per command timings kept in fixed size histograms, so recording costs the same after a week as it
+ * does after a minute. Buckets are log linear: each power of two is split into four, which keeps every
+ * reported percentile within 25% of the real value. Times are recorded in microseconds.
+ *
+ * queue wait   accepted by the module until MPD could start on it (the commands ahead of it had answered)
+ * first byte   from then until the first line of the response was read
+ * last byte    from then until the response was complete
+ * bytes        size of the response
+ * parse        time spent turning the response into records or strings
+ */
+public class MPDMetrics {
+    public static final int QUEUE_WAIT = 0;
+    public static final int FIRST_BYTE = 1;
+    public static final int LAST_BYTE = 2;
+    public static final int BYTES = 3;
+    public static final int PARSE = 4;
+    public static final String[] NAMES = {"queueWait", "firstByte", "lastByte", "bytes", "parse"};
+
+    private static final int MAX_VERBS = 48;
+    private static final String OTHER = "other";
+    private static final int SUB_BUCKETS = 4;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = MAX_EXPONENT * SUB_BUCKETS;
+
+    public static class Histogram {
+        private final int[] counts = new int[BUCKETS];
+        private long count = 0;
+        private long sum = 0;
+        private long max = 0;
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts[bucket(value)]++;
+            count++;
+            sum += value;
+            if (value > max) {
+                max = value;
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        // the midpoint of the bucket the percentile falls in, never more than the largest value seen
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && counts[i] > 0) {
+                    long low = lowerBound(i);
+                    long high = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : low;
+                    return Math.min(max, (low + high) / 2);
+                }
+            }
+            return max;
+        }
+
+        private Histogram copy() {
+            Histogram copy = new Histogram();
+            System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+            copy.count = count;
+            copy.sum = sum;
+            copy.max = max;
+            return copy;
+        }
+    }
+
+    public static class Command {
+        public final String verb;
+        public final Histogram[] histograms = new Histogram[NAMES.length];
+
+        private Command(String verb) {
+            this.verb = verb;
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new Histogram();
+            }
+        }
+
+        private Command copy() {
+            Command copy = new Command(verb);
+            for (int i = 0; i < histograms.length; i++) {
+                copy.histograms[i] = histograms[i].copy();
+            }
+            return copy;
+        }
+    }
+
+    private final Map<String, Command> commands = new LinkedHashMap<String, Command>();
+    private long since = System.currentTimeMillis();
+
+    public synchronized void record(String verb, long queueWait, long firstByte, long lastByte, long bytes, long parse) {
+        Command command = commands.get(verb);
+        if (command == null) {
+            if (commands.size() >= MAX_VERBS) {
+                verb = OTHER;
+                command = commands.get(OTHER);
+            }
+            if (command == null) {
+                command = new Command(verb);
+                commands.put(verb, command);
+            }
+        }
+        command.histograms[QUEUE_WAIT].record(queueWait);
+        command.histograms[FIRST_BYTE].record(firstByte);
+        command.histograms[LAST_BYTE].record(lastByte);
+        command.histograms[BYTES].record(bytes);
+        command.histograms[PARSE].record(parse);
+    }
+
+    public synchronized List<Command> snapshot() {
+        List<Command> copy = new ArrayList<Command>();
+        for (Command command : commands.values()) {
+            copy.add(command.copy());
+        }
+        return copy;
+    }
+
+    public synchronized long getSince() {
+        return since;
+    }
+
+    public synchronized void reset() {
+        commands.clear();
+        since = System.currentTimeMillis();
+    }
+
+    // the verb is what the metrics are grouped by, arguments would give every album its own entry
+    public static String verbOf(String message) {
+        int end = 0;
+        while (end < message.length()) {
+            char c = message.charAt(end);
+            if (c == ' ' || c == '\n') {
+                break;
+            }
+            end++;
+        }
+        return message.substring(0, end);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 2);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * The play queue as the song id at each position. A status and plchangesposid reply is merged into
+ * the ids held for the version it was asked since, and two id lists are compared as operations to
+ * apply in order: remove ranges of the old positions (from the end), single moves, then insert
+ * ranges at the new positions. A reorder that needs more than MAX_MOVES moves (a shuffle) has no
+ * diff and is sent as the full list instead.
+ */
+public class MPDPlayQueueDiff {
+    public static final int MAX_MOVES = 200;
+
+    private static final String VERSION_PREFIX = "playlist: ";
+    private static final String LENGTH_PREFIX = "playlistlength: ";
+    private static final String CPOS_PREFIX = "cpos: ";
+    private static final String ID_PREFIX = "Id: ";
+
+    public static class Op {
+        public static final String REMOVE = "remove";
+        public static final String MOVE = "move";
+        public static final String INSERT = "insert";
+
+        public final String op;
+        // remove and insert
+        public final int start;
+        public final int count;
+        // move
+        public final int from;
+        public final int to;
+        // insert
+        public final List<Integer> ids;
+
+        private Op(String op, int start, int count, int from, int to, List<Integer> ids) {
+            this.op = op;
+            this.start = start;
+            this.count = count;
+            this.from = from;
+            this.to = to;
+            this.ids = ids;
+        }
+
+        static Op remove(int start, int count) {
+            return new Op(REMOVE, start, count, -1, -1, Collections.<Integer>emptyList());
+        }
+
+        static Op move(int from, int to) {
+            return new Op(MOVE, -1, 0, from, to, Collections.<Integer>emptyList());
+        }
+
+        static Op insert(int start, List<Integer> ids) {
+            return new Op(INSERT, start, ids.size(), -1, -1, ids);
+        }
+
+        @Override
+        public String toString() {
+            if (MOVE.equals(op)) {
+                return op+" "+from+">"+to;
+            }
+            return op+" "+start+" "+(INSERT.equals(op) ? ids.toString() : Integer.toString(count));
+        }
+    }
+
+    // what a status and plchangesposid reply says, version is -1 when the status could not be read
+    public static class Delta {
+        public int version = -1;
+        public int length = 0;
+        public final Map<Integer, Integer> changes = new HashMap<Integer, Integer>();
+    }
+
+    public static Delta parse(byte[] status, byte[] changes) {
+        Delta delta = new Delta();
+        for (String line : lines(status)) {
+            if (line.startsWith(VERSION_PREFIX)) {
+                delta.version = parseInt(line.substring(VERSION_PREFIX.length()));
+            } else if (line.startsWith(LENGTH_PREFIX)) {
+                delta.length = parseInt(line.substring(LENGTH_PREFIX.length()));
+            }
+        }
+        int cpos = -1;
+        for (String line : lines(changes)) {
+            if (line.startsWith(CPOS_PREFIX)) {
+                cpos = parseInt(line.substring(CPOS_PREFIX.length()));
+            } else if (line.startsWith(ID_PREFIX) && cpos != -1) {
+                delta.changes.put(cpos, parseInt(line.substring(ID_PREFIX.length())));
+                cpos = -1;
+            }
+        }
+        return delta;
+    }
+
+    // the ids after the change, positions it does not name keep the id held for them. null when a
+    // position is left with no id, the ids held no longer match what MPD has. Since 0 lists them all
+    public static List<Integer> merge(int since, List<Integer> ids, Delta delta) {
+        List<Integer> after = new ArrayList<Integer>(Math.max(0, delta.length));
+        for (int pos = 0; pos < delta.length; pos++) {
+            Integer id = delta.changes.get(pos);
+            if (id == null) {
+                id = since > 0 && pos < ids.size() ? ids.get(pos) : null;
+            }
+            if (id == null) {
+                return null;
+            }
+            after.add(id);
+        }
+        return after;
+    }
+
+    // null when it would take more than MAX_MOVES moves, empty when nothing changed
+    public static List<Op> diff(List<Integer> before, List<Integer> after) {
+        Set<Integer> beforeIds = new HashSet<Integer>(before);
+        Set<Integer> afterIds = new HashSet<Integer>(after);
+        List<Op> ops = new ArrayList<Op>();
+        // removals from the end so the earlier positions stay where they are
+        List<int[]> removed = runs(before, afterIds);
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            ops.add(Op.remove(removed.get(i)[0], removed.get(i)[1]));
+        }
+        List<Integer> current = new ArrayList<Integer>();
+        for (Integer id : before) {
+            if (afterIds.contains(id)) {
+                current.add(id);
+            }
+        }
+        List<Integer> target = new ArrayList<Integer>();
+        Map<Integer, Integer> targetPos = new HashMap<Integer, Integer>();
+        for (Integer id : after) {
+            if (beforeIds.contains(id)) {
+                targetPos.put(id, target.size());
+                target.add(id);
+            }
+        }
+        int moves = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).equals(target.get(i))) {
+                continue;
+            }
+            if (++moves > MAX_MOVES) {
+                return null;
+            }
+            int from;
+            int to;
+            if (i + 1 < current.size() && current.get(i + 1).equals(target.get(i))) {
+                // the song here was moved further down, everything after it shifted up by one
+                from = i;
+                to = targetPos.get(current.get(i));
+            } else {
+                from = i + current.subList(i, current.size()).indexOf(target.get(i));
+                to = i;
+            }
+            current.add(to, current.remove(from));
+            ops.add(Op.move(from, to));
+        }
+        for (int[] run : runs(after, beforeIds)) {
+            ops.add(Op.insert(run[0], new ArrayList<Integer>(after.subList(run[0], run[0] + run[1]))));
+        }
+        return ops;
+    }
+
+    // start and count of each run of ids missing from the other side
+    private static List<int[]> runs(List<Integer> list, Set<Integer> other) {
+        List<int[]> runs = new ArrayList<int[]>();
+        int start = -1;
+        for (int pos = 0; pos <= list.size(); pos++) {
+            boolean missing = pos < list.size() && !other.contains(list.get(pos));
+            if (missing && start == -1) {
+                start = pos;
+            } else if (!missing && start != -1) {
+                runs.add(new int[] {start, pos - start});
+                start = -1;
+            }
+        }
+        return runs;
+    }
+
+    private static String[] lines(byte[] frame) {
+        return new String(frame, StandardCharsets.UTF_8).split("\n");
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
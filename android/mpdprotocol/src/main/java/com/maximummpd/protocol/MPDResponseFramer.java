@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Splits the MPD byte stream into frames (greeting, response, binary response, error).
+ * Each byte is examined once: the scan cursor only moves over newly read bytes and a frame
+ * is handed to the listener as a slice of the internal buffer, which is only valid for the
+ * duration of the callback. A listener that takes a line through onLine has consumed it, the
+ * line is dropped from the buffer and the frame that finally completes only holds what is left.
+ */
+public class MPDResponseFramer {
+    private static final byte[] errPrefix = new byte[] {0x41, 0x43, 0x4b, 0x20, 0x5b};
+    private static final byte[] initPrefix = new byte[] {0x4f, 0x4b, 0x20, 0x4d, 0x50, 0x44, 0x20};
+    private static final byte[] binaryPrefix = new byte[] {0x62, 0x69, 0x6e, 0x61, 0x72, 0x79, 0x3a, 0x20};
+
+    private static final int INITIAL_SIZE = 16384;
+    private static final int MIN_READ = 8192;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    public interface FrameListener {
+        void onInit(byte[] buffer, int offset, int length);
+        void onResponse(byte[] buffer, int offset, int length);
+        void onBinaryResponse(byte[] buffer, int offset, int length, int binaryOffset, int binaryLength);
+        void onError(byte[] buffer, int offset, int length);
+        boolean onLine(byte[] buffer, int offset, int length);
+    }
+
+    private final FrameListener listener;
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int frameStart = 0;
+    private int lineStart = 0;
+    private int scan = 0;
+    private int end = 0;
+    private boolean binaryFound = false;
+    private int binaryRemaining = 0;
+    private int binaryOffset = 0;
+    private int binarySize = 0;
+    private int binaryTextLength = 0;
+
+    public MPDResponseFramer(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    public int read(InputStream is) throws IOException {
+        ensureSpace(MIN_READ);
+        int len = is.read(buffer, end, buffer.length - end);
+        if (len > 0) {
+            end += len;
+            process();
+        }
+        return len;
+    }
+
+    public void feed(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            ensureSpace(Math.min(length, MIN_READ));
+            int len = Math.min(length, buffer.length - end);
+            System.arraycopy(bytes, offset, buffer, end, len);
+            end += len;
+            offset += len;
+            length -= len;
+            process();
+        }
+    }
+
+    private void process() {
+        while (scan < end) {
+            if (binaryRemaining > 0) {
+                int len = Math.min(binaryRemaining, end - scan);
+                scan += len;
+                binaryRemaining -= len;
+                lineStart = scan;
+                continue;
+            }
+            int nl = indexOfNewline(scan, end);
+            if (nl == -1) {
+                scan = end;
+                return;
+            }
+            scan = nl + 1;
+            int start = lineStart;
+            lineStart = scan;
+            processLine(start, nl);
+        }
+    }
+
+    private void processLine(int start, int nl) {
+        int length = nl - start;
+        if (length == 2 && buffer[start] == 0x4f && buffer[start+1] == 0x4b) {
+            if (binaryFound) {
+                listener.onBinaryResponse(buffer, frameStart, binaryTextLength, binaryOffset, binarySize);
+            } else {
+                listener.onResponse(buffer, frameStart, scan - frameStart);
+            }
+            frameComplete();
+        } else if (startsWith(start, length, errPrefix)) {
+            listener.onError(buffer, frameStart, scan - frameStart);
+            frameComplete();
+        } else if (start == frameStart && startsWith(start, length, initPrefix)) {
+            listener.onInit(buffer, frameStart, scan - frameStart);
+            frameComplete();
+        } else if (!binaryFound && startsWith(start, length, binaryPrefix)) {
+            binaryFound = true;
+            binaryTextLength = nl - frameStart;
+            binaryOffset = scan;
+            binarySize = parseSize(start + binaryPrefix.length, nl);
+            // payload is followed by a single newline before the closing OK
+            binaryRemaining = binarySize + 1;
+        } else if (!binaryFound && listener.onLine(buffer, start, length)) {
+            discard();
+        }
+    }
+
+    private void frameComplete() {
+        binaryFound = false;
+        discard();
+    }
+
+    private void discard() {
+        frameStart = scan;
+        if (frameStart == end) {
+            frameStart = lineStart = scan = end = 0;
+            if (buffer.length > MAX_RETAINED_SIZE) {
+                buffer = new byte[INITIAL_SIZE];
+            }
+        }
+    }
+
+    private void ensureSpace(int required) {
+        if (buffer.length - end >= required) {
+            return;
+        }
+        int used = end - frameStart;
+        byte[] target = buffer;
+        if (used + required > buffer.length) {
+            int size = buffer.length * 2;
+            while (size < used + required) {
+                size *= 2;
+            }
+            target = new byte[size];
+        }
+        // only the partially received frame is moved, completed frames are never copied
+        System.arraycopy(buffer, frameStart, target, 0, used);
+        buffer = target;
+        lineStart -= frameStart;
+        scan -= frameStart;
+        binaryOffset -= frameStart;
+        end = used;
+        frameStart = 0;
+    }
+
+    private int indexOfNewline(int from, int to) {
+        byte[] bytes = buffer;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == 0x0a) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int start, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start+i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parseSize(int from, int to) {
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer[i];
+            if (b < 0x30 || b > 0x39) {
+                break;
+            }
+            size = size * 10 + (b - 0x30);
+        }
+        return size;
+    }
+}
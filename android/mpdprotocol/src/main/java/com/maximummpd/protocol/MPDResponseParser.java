@@ -0,0 +1,322 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Turns MPD response lines into records for the known response shapes so that
+ * the JS side receives ready made objects instead of one large string.
+ *
+ * songs   - one record per file: line, tag keys lower cased, time/rawTime, b64file, id/pos as ints
+ * tags    - one record per value of the listed tag carrying the current group values (list x group y)
+ * status  - single record, currentsong lines nested under currentsong (status + currentsong command list)
+ * stats   - single record of key/value pairs
+ * outputs - one record per outputid: line with id, name, enabled and plugin
+ */
+public class MPDResponseParser {
+    public static final String FORMAT_SONGS = "songs";
+    public static final String FORMAT_TAGS = "tags";
+    public static final String FORMAT_STATUS = "status";
+    public static final String FORMAT_STATS = "stats";
+    public static final String FORMAT_OUTPUTS = "outputs";
+
+    public interface Record {
+        void putString(String key, String value);
+        void putInt(String key, int value);
+        void putBoolean(String key, boolean value);
+        void putRecord(String key, Record value);
+    }
+
+    public interface RecordHandler {
+        Record createRecord();
+        void onRecord(Record record);
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private final String format;
+    private final String tag;
+    private final RecordHandler handler;
+    private final Map<String, String> keys = new HashMap<String, String>();
+    private final List<String> groupKeys = new ArrayList<String>();
+    private final List<String> groupValues = new ArrayList<String>();
+    private Record current = null;
+    private Record currentSong = null;
+    private boolean hasDuration = false;
+    private String rawKey = null;
+
+    public MPDResponseParser(String format, String tag, RecordHandler handler) {
+        this.format = format;
+        this.tag = tag == null ? null : tag.toLowerCase();
+        this.handler = handler;
+    }
+
+    public static boolean isSupported(String format) {
+        return FORMAT_SONGS.equals(format) || FORMAT_TAGS.equals(format) || FORMAT_STATUS.equals(format) ||
+                FORMAT_STATS.equals(format) || FORMAT_OUTPUTS.equals(format);
+    }
+
+    public static boolean isSingleRecord(String format) {
+        return FORMAT_STATUS.equals(format) || FORMAT_STATS.equals(format);
+    }
+
+    public void parse(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] == 0x0a) {
+                parseLine(buffer, lineStart, i - lineStart);
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {
+            parseLine(buffer, lineStart, end - lineStart);
+        }
+    }
+
+    public void parseLine(byte[] buffer, int offset, int length) {
+        int sep = -1;
+        for (int i = offset; i < offset + length - 1; i++) {
+            if (buffer[i] == 0x3a && buffer[i+1] == 0x20) {
+                sep = i;
+                break;
+            }
+        }
+        // OK, list_OK and anything else that is not a key: value pair
+        if (sep == -1) {
+            return;
+        }
+        String key = key(buffer, offset, sep - offset);
+        String value = new String(buffer, sep + 2, offset + length - (sep + 2), StandardCharsets.UTF_8);
+        switch (format) {
+            case FORMAT_SONGS:
+                songLine(key, value);
+                break;
+            case FORMAT_TAGS:
+                tagLine(key, value);
+                break;
+            case FORMAT_STATUS:
+                statusLine(key, value);
+                break;
+            case FORMAT_STATS:
+                if (current == null) {
+                    current = handler.createRecord();
+                }
+                current.putString(rawKey, value);
+                break;
+            case FORMAT_OUTPUTS:
+                outputLine(key, value);
+                break;
+        }
+    }
+
+    public void finish() {
+        if (FORMAT_STATUS.equals(format)) {
+            if (current == null) {
+                current = handler.createRecord();
+            }
+            if (currentSong == null) {
+                currentSong = handler.createRecord();
+            }
+            current.putRecord("currentsong", currentSong);
+            currentSong = null;
+        } else if (FORMAT_STATS.equals(format) && current == null) {
+            current = handler.createRecord();
+        }
+        if (current != null) {
+            handler.onRecord(current);
+            current = null;
+        }
+    }
+
+    private void songLine(String key, String value) {
+        switch (key) {
+            case "file":
+                if (current != null) {
+                    handler.onRecord(current);
+                }
+                current = handler.createRecord();
+                hasDuration = false;
+                current.putString("file", value);
+                current.putString("b64file", toBase64(value));
+                break;
+            case "directory":
+            case "playlist":
+                if (current != null) {
+                    handler.onRecord(current);
+                    current = null;
+                }
+                break;
+            default:
+                if (current == null) {
+                    return;
+                }
+                if (key.equals("time")) {
+                    if (!hasDuration) {
+                        current.putString("rawTime", value);
+                        current.putString("time", convertTime(value));
+                    }
+                } else if (key.equals("duration")) {
+                    hasDuration = true;
+                    current.putString("rawTime", value);
+                    current.putString("time", convertTime(value));
+                } else if (key.equals("id") || key.equals("pos")) {
+                    current.putInt(key, parseInt(value));
+                } else {
+                    current.putString(key, value);
+                }
+                break;
+        }
+    }
+
+    private void tagLine(String key, String value) {
+        if (key.equals(tag)) {
+            Record record = handler.createRecord();
+            for (int i = 0; i < groupKeys.size(); i++) {
+                record.putString(groupKeys.get(i), groupValues.get(i));
+            }
+            record.putString(key, value);
+            handler.onRecord(record);
+        } else {
+            int index = groupKeys.indexOf(key);
+            if (index == -1) {
+                groupKeys.add(key);
+                groupValues.add(value);
+            } else {
+                groupValues.set(index, value);
+            }
+        }
+    }
+
+    private void statusLine(String key, String value) {
+        if (current == null) {
+            current = handler.createRecord();
+        }
+        if (currentSong == null) {
+            currentSong = handler.createRecord();
+        }
+        switch (key) {
+            case "title":
+            case "artist":
+            case "album":
+            case "name":
+            case "date":
+                currentSong.putString(key, value);
+                break;
+            case "file":
+                currentSong.putString("file", value);
+                currentSong.putString("b64file", toBase64(value));
+                break;
+            case "replay_gain_mode":
+                current.putString("replayGainStatus", value);
+                break;
+            default:
+                current.putString(rawKey, value);
+                break;
+        }
+    }
+
+    private void outputLine(String key, String value) {
+        switch (key) {
+            case "outputid":
+                if (current != null) {
+                    handler.onRecord(current);
+                }
+                current = handler.createRecord();
+                current.putString("id", value);
+                break;
+            case "outputname":
+                if (current != null) {
+                    current.putString("name", value);
+                }
+                break;
+            case "outputenabled":
+                if (current != null) {
+                    current.putBoolean("enabled", value.equals("1"));
+                }
+                break;
+            case "plugin":
+                if (current != null) {
+                    current.putString("plugin", value);
+                }
+                break;
+        }
+    }
+
+    // keys are a small fixed vocabulary, so the lower cased form is cached
+    private String key(byte[] buffer, int offset, int length) {
+        rawKey = new String(buffer, offset, length, StandardCharsets.US_ASCII);
+        String key = keys.get(rawKey);
+        if (key == null) {
+            key = rawKey.toLowerCase();
+            keys.put(rawKey, key);
+        }
+        return key;
+    }
+
+    public static String convertTime(String rawTime) {
+        int time = parseInt(rawTime);
+        int minutes = time / 60;
+        int seconds = time - minutes * 60;
+        return minutes + (seconds < 10 ? ":0" : ":") + seconds;
+    }
+
+    private static int parseInt(String value) {
+        int result = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // matches MPDConnection.toBase64 which is btoa(encodeURIComponent(value))
+    public static String toBase64(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        StringBuilder encoded = new StringBuilder(utf8.length * 2);
+        for (byte b : utf8) {
+            int c = b & 0xff;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                    c == '-' || c == '_' || c == '.' || c == '!' || c == '~' || c == '*' || c == '\'' || c == '(' || c == ')') {
+                encoded.append((char) c);
+            } else {
+                encoded.append('%').append(HEX[c >> 4]).append(HEX[c & 0x0f]);
+            }
+        }
+        int len = encoded.length();
+        StringBuilder out = new StringBuilder(((len + 2) / 3) * 4);
+        for (int i = 0; i < len; i += 3) {
+            int b0 = encoded.charAt(i);
+            int b1 = i + 1 < len ? encoded.charAt(i + 1) : 0;
+            int b2 = i + 2 < len ? encoded.charAt(i + 2) : 0;
+            out.append(BASE64[b0 >> 2]);
+            out.append(BASE64[((b0 & 0x03) << 4) | (b1 >> 4)]);
+            out.append(i + 1 < len ? BASE64[((b1 & 0x0f) << 2) | (b2 >> 6)] : '=');
+            out.append(i + 2 < len ? BASE64[b2 & 0x3f] : '=');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * In memory search over the songs of the library. Every indexed field is folded (lower case, accents
+ * and curly quotes removed) and cut into trigrams, each trigram maps to the sorted list of songs
+ * containing it. Terms of 3 or more characters intersect trigram lists, shorter terms narrow nothing
+ * and are matched anywhere in a field while scoring, the same as the server's "contains". Candidates
+ * are then checked and ranked by where and in which field each term matched.
+ */
+public class MPDSearchIndex {
+    public static final String[] FIELDS = {"title", "artist", "album", "albumartist", "composer", "genre", "date"};
+    private static final int[] WEIGHTS = {6, 5, 4, 4, 2, 1, 1};
+    private static final int[] EMPTY = new int[0];
+    // only what the search results show is kept, the rest of each listing is dropped while parsing
+    private static final Set<String> KEEP = new HashSet<String>(Arrays.asList(
+            "file", "b64file", "time", "track", "date", "title", "artist", "album", "albumartist", "composer", "genre"));
+
+    public static class Song implements MPDResponseParser.Record {
+        private final Map<String, String> values = new HashMap<String, String>();
+
+        public String get(String key) {
+            return values.get(key);
+        }
+
+        public Map<String, String> values() {
+            return values;
+        }
+
+        @Override
+        public void putString(String key, String value) {
+            if (KEEP.contains(key)) {
+                values.put(key, value);
+            }
+        }
+
+        @Override
+        public void putInt(String key, int value) {
+        }
+
+        @Override
+        public void putBoolean(String key, boolean value) {
+        }
+
+        @Override
+        public void putRecord(String key, MPDResponseParser.Record value) {
+        }
+    }
+
+    public static class Result {
+        public final int total;
+        public final List<Song> songs;
+        public final int[] scores;
+
+        private Result(int total, List<Song> songs, int[] scores) {
+            this.total = total;
+            this.songs = songs;
+            this.scores = scores;
+        }
+    }
+
+    public static class Builder implements MPDResponseParser.RecordHandler {
+        private final List<Song> songs = new ArrayList<Song>();
+
+        @Override
+        public MPDResponseParser.Record createRecord() {
+            return new Song();
+        }
+
+        @Override
+        public void onRecord(MPDResponseParser.Record record) {
+            songs.add((Song) record);
+        }
+
+        public int size() {
+            return songs.size();
+        }
+
+        public MPDSearchIndex build() {
+            return new MPDSearchIndex(songs);
+        }
+    }
+
+    private final Song[] songs;
+    private final String[][] folded;
+    private final Map<Long, int[]> trigrams;
+    private final int[] all;
+    private final int[] titleRank;
+    private final int[] rankToDoc;
+
+    private MPDSearchIndex(List<Song> songList) {
+        songs = songList.toArray(new Song[0]);
+        folded = new String[songs.length][];
+        Map<Long, IntList> trigramLists = new HashMap<Long, IntList>();
+        for (int doc = 0; doc < songs.length; doc++) {
+            String[] fields = new String[FIELDS.length];
+            for (int f = 0; f < FIELDS.length; f++) {
+                String value = songs[doc].get(FIELDS[f]);
+                fields[f] = value == null ? "" : fold(value);
+                String text = fields[f];
+                for (int i = 0; i + 3 <= text.length(); i++) {
+                    add(trigramLists, trigramKey(text, i), doc);
+                }
+            }
+            folded[doc] = fields;
+        }
+        trigrams = toArrays(trigramLists);
+        all = new int[songs.length];
+        for (int doc = 0; doc < songs.length; doc++) {
+            all[doc] = doc;
+        }
+
+        Integer[] byTitle = new Integer[songs.length];
+        for (int doc = 0; doc < songs.length; doc++) {
+            byTitle[doc] = doc;
+        }
+        Arrays.sort(byTitle, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return folded[a][0].compareTo(folded[b][0]);
+            }
+        });
+        titleRank = new int[songs.length];
+        rankToDoc = new int[songs.length];
+        for (int rank = 0; rank < byTitle.length; rank++) {
+            titleRank[byTitle[rank]] = rank;
+            rankToDoc[rank] = byTitle[rank];
+        }
+    }
+
+    public int size() {
+        return songs.length;
+    }
+
+    public Result search(String query, int offset, int limit) {
+        String q = fold(query).trim();
+        if (q.length() == 0) {
+            return new Result(0, new ArrayList<Song>(), EMPTY);
+        }
+        String[] terms = q.split(" +");
+        int[] candidates = null;
+        for (String term : terms) {
+            if (term.length() < 3) {
+                continue;
+            }
+            int[] termCandidates = candidates(term);
+            candidates = candidates == null ? termCandidates : intersect(candidates, termCandidates);
+            if (candidates.length == 0) {
+                return new Result(0, new ArrayList<Song>(), EMPTY);
+            }
+        }
+        // only short terms, every song is scanned and score() drops the ones without a match
+        if (candidates == null) {
+            candidates = all;
+        }
+
+        // score and title rank packed into one long, the best k are kept in a min heap instead of sorting every match
+        int k = Math.max(0, offset + limit);
+        long[] heap = new long[Math.max(1, Math.min(k, candidates.length))];
+        int heapSize = 0;
+        int count = 0;
+        for (int doc : candidates) {
+            int score = score(folded[doc], terms, q);
+            if (score <= 0) {
+                continue;
+            }
+            count++;
+            if (k == 0) {
+                continue;
+            }
+            long key = ((long) score << 32) | (0xffffffffL - titleRank[doc]);
+            if (heapSize < heap.length) {
+                heap[heapSize] = key;
+                siftUp(heap, heapSize++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, heapSize);
+            }
+        }
+        long[] best = Arrays.copyOf(heap, heapSize);
+        Arrays.sort(best);
+        List<Song> page = new ArrayList<Song>();
+        int[] pageScores = new int[Math.max(0, best.length - offset)];
+        for (int i = best.length - 1 - offset; i >= 0; i--) {
+            int rank = (int) (0xffffffffL - (best[i] & 0xffffffffL));
+            pageScores[page.size()] = (int) (best[i] >>> 32);
+            page.add(songs[rankToDoc[rank]]);
+        }
+        return new Result(count, page, pageScores);
+    }
+
+    private int[] candidates(String term) {
+        int[][] lists = new int[term.length() - 2][];
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            int[] list = trigrams.get(trigramKey(term, i));
+            if (list == null) {
+                return EMPTY;
+            }
+            lists[i] = list;
+        }
+        // smallest list first keeps every intersection step as short as possible
+        Arrays.sort(lists, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a.length - b.length;
+            }
+        });
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    private static int score(String[] fields, String[] terms, String query) {
+        int total = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (int f = 0; f < fields.length; f++) {
+                int s = match(fields[f], term) * WEIGHTS[f];
+                if (s > best) {
+                    best = s;
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        if (terms.length > 1) {
+            for (int f = 0; f < fields.length; f++) {
+                total += match(fields[f], query) * WEIGHTS[f];
+            }
+        }
+        return total;
+    }
+
+    // exact field, start of field, start of a word, anywhere
+    private static int match(String text, String term) {
+        int index = text.indexOf(term);
+        if (index == -1) {
+            return 0;
+        }
+        if (index == 0) {
+            return text.length() == term.length() ? 10 : 6;
+        }
+        do {
+            if (text.charAt(index - 1) == ' ') {
+                return 3;
+            }
+            index = text.indexOf(term, index + 1);
+        } while (index != -1);
+        return 1;
+    }
+
+    // same folding as SeachUtil.convert for quotes, plus case and accents
+    public static String fold(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return text.toLowerCase();
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == '\u2018' || c == '\u2019') {
+                c = '\'';
+            } else if (c == '\u201c' || c == '\u201d') {
+                c = '"';
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent] <= heap[i]) {
+                return;
+            }
+            long tmp = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = tmp;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left] < heap[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heap[right] < heap[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            long tmp = heap[smallest];
+            heap[smallest] = heap[i];
+            heap[i] = tmp;
+            i = smallest;
+        }
+    }
+
+    private static long trigramKey(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static void add(Map<Long, IntList> lists, long key, int doc) {
+        IntList list = lists.get(key);
+        if (list == null) {
+            list = new IntList();
+            lists.put(key, list);
+        }
+        list.addOnce(doc);
+    }
+
+    private static Map<Long, int[]> toArrays(Map<Long, IntList> lists) {
+        Map<Long, int[]> arrays = new HashMap<Long, int[]>(lists.size() * 2);
+        for (Map.Entry<Long, IntList> entry : lists.entrySet()) {
+            arrays.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return arrays;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[n++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    // documents are added in increasing order, so a repeat can only be the last entry
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        private void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MPDCommandBatcherTest {
+    private static final long TIMEOUT = 5;
+
+    private FakeMPDServer server;
+    private MPDConnectionEngine engine;
+    private ScheduledExecutorService scheduler;
+    private MPDCommandBatcher<String> batcher;
+    private int handle;
+    private final Object lock = new Object();
+    // every command resolves exactly once, into this queue, as "<command> <response or error>"
+    private final BlockingQueue<String> resolved = new LinkedBlockingQueue<String>();
+    // what went over the wire, "list <n>" for a command list and "single <command>" otherwise
+    private final List<String> sent = new ArrayList<String>();
+
+    @Before
+    public void start() throws Exception {
+        server = FakeMPDServer.start(20, 1024, 0, 0);
+        final BlockingQueue<String> connected = new LinkedBlockingQueue<String>();
+        engine = new MPDConnectionEngine(new MPDConnectionEngine.Listener() {
+            @Override
+            public void onConnected(int handle, String greeting) {
+                connected.add(greeting);
+            }
+
+            @Override
+            public void onClosed(int handle, String reason) {}
+        });
+        new Thread(engine, "MPDCommandBatcherTest").start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        batcher = new MPDCommandBatcher<String>(lock, scheduler, 4, new MPDCommandBatcher.Connection<String>() {
+            @Override
+            public void send(String message, final String command) {
+                sent.add("single "+command);
+                engine.send(handle, message, new MPDConnectionEngine.ResponseHandler() {
+                    @Override
+                    public void onResponse(byte[] buffer, int offset, int length) {
+                        resolve(command, buffer, offset, length);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        resolved.add(command+" "+error);
+                    }
+                });
+            }
+
+            @Override
+            public void sendList(String message, final MPDCommandBatcher.Batch<String> batch) {
+                sent.add("list "+batch.commands.size());
+                engine.send(handle, message, new MPDConnectionEngine.ResponseHandler() {
+                    @Override
+                    public void onResponse(byte[] buffer, int offset, int length) {
+                        batcher.respond(batch, buffer, offset, length, null);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        // the engine hands over the frames before the ACK and the ACK as one string
+                        int ack = error.lastIndexOf("ACK [");
+                        byte[] buffer = error.getBytes(StandardCharsets.UTF_8);
+                        batcher.respond(batch, buffer, 0, error.substring(0, ack).getBytes(StandardCharsets.UTF_8).length, error.substring(ack));
+                    }
+                });
+            }
+
+            @Override
+            public void onResponse(String command, byte[] buffer, int offset, int length) {
+                resolve(command, buffer, offset, length);
+            }
+
+            @Override
+            public void onError(String command, String error) {
+                resolved.add(command+" "+error);
+            }
+        });
+        handle = engine.open("127.0.0.1", server.getPort());
+        assertTrue(connected.poll(TIMEOUT, TimeUnit.SECONDS) != null);
+    }
+
+    @After
+    public void stop() {
+        scheduler.shutdownNow();
+        engine.shutdown();
+        server.close();
+    }
+
+    private void resolve(String command, byte[] buffer, int offset, int length) {
+        resolved.add(command+" "+new String(buffer, offset, length, StandardCharsets.UTF_8));
+    }
+
+    private String next() throws InterruptedException {
+        String response = resolved.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertTrue("timed out waiting for a command to resolve", response != null);
+        return response;
+    }
+
+    private List<String> sent() {
+        synchronized (lock) {
+            return new ArrayList<String>(sent);
+        }
+    }
+
+    @Test
+    public void aBatchOfReadsResolvesEveryCommand() throws Exception {
+        batcher.setWindow(50);
+        batcher.add("ping\n", "a");
+        batcher.add("stats\n", "b");
+        batcher.add("ping\n", "c");
+        assertEquals("a OK\n", next());
+        String stats = next();
+        assertTrue(stats, stats.startsWith("b artists: 1\nalbums: 2\nsongs: 20\n") && stats.endsWith("\nOK\n"));
+        assertEquals("c OK\n", next());
+        assertEquals(Arrays.asList("list 3"), sent());
+        assertTrue(resolved.isEmpty());
+    }
+
+    @Test
+    public void anErrorFailsOneCommandAndTheRestAreSentAgain() throws Exception {
+        batcher.setWindow(50);
+        batcher.add("ping\n", "a");
+        batcher.add("bogus\n", "b");
+        batcher.add("ping\n", "c");
+        batcher.add("stats\n", "d");
+        Set<String> responses = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            responses.add(next());
+        }
+        assertTrue(responses.toString(), responses.contains("a OK\n"));
+        assertTrue(responses.toString(), responses.contains("b ACK [5@0] {bogus} unknown command \"bogus\""));
+        assertTrue(responses.toString(), responses.contains("c OK\n"));
+        responses.removeAll(Arrays.asList("a OK\n", "b ACK [5@0] {bogus} unknown command \"bogus\"", "c OK\n"));
+        assertEquals(1, responses.size());
+        assertTrue(responses.toString(), responses.iterator().next().startsWith("d artists: 1\n"));
+        Thread.sleep(100);
+        assertTrue(resolved.isEmpty());
+        assertEquals(Arrays.asList("list 4", "list 2"), sent());
+    }
+
+    @Test
+    public void aFullBatchIsSentWithoutWaiting() throws Exception {
+        batcher.setWindow(60000);
+        for (int i = 0; i < 4; i++) {
+            batcher.add("ping\n", "c"+i);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("c"+i+" OK\n", next());
+        }
+        assertEquals(Arrays.asList("list 4"), sent());
+    }
+
+    @Test
+    public void aWindowOfZeroSendsEachCommand() throws Exception {
+        batcher.setWindow(0);
+        batcher.add("ping\n", "a");
+        batcher.add("ping\n", "b");
+        assertEquals("a OK\n", next());
+        assertEquals("b OK\n", next());
+        assertEquals(Arrays.asList("single a", "single b"), sent());
+    }
+
+    @Test
+    public void drainedCommandsAreNeverSent() throws Exception {
+        batcher.setWindow(50);
+        batcher.add("ping\n", "a");
+        batcher.add("ping\n", "b");
+        assertEquals(Arrays.asList("a", "b"), batcher.drain());
+        Thread.sleep(150);
+        assertTrue(resolved.isEmpty());
+        assertTrue(sent().isEmpty());
+    }
+}
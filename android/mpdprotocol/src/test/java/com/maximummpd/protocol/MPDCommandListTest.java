@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MPDCommandListTest {
+    private static String text(byte[] frame) {
+        return new String(frame, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void build() {
+        assertEquals("command_list_ok_begin\nstatus\ncurrentsong\ncommand_list_end\n",
+                MPDCommandList.build(Arrays.asList("status\n", "currentsong\n")));
+    }
+
+    @Test
+    public void splitGivesOneFramePerCommand() {
+        byte[] response = "xx volume: 50\nlist_OK\nlist_OK\nfile: a.flac\nTitle: list_OK\nlist_OK\nOK\n".getBytes(StandardCharsets.UTF_8);
+        List<byte[]> frames = MPDCommandList.split(response, 3, response.length - 3);
+        assertEquals(3, frames.size());
+        assertEquals("volume: 50\nOK\n", text(frames.get(0)));
+        assertEquals("OK\n", text(frames.get(1)));
+        // list_OK only counts as a whole line
+        assertEquals("file: a.flac\nTitle: list_OK\nOK\n", text(frames.get(2)));
+    }
+
+    @Test
+    public void splitStopsAtTheFailedCommand() {
+        byte[] response = "volume: 50\nlist_OK\nACK [50@1] {find} no such\n".getBytes(StandardCharsets.UTF_8);
+        List<byte[]> frames = MPDCommandList.split(response, 0, response.length);
+        assertEquals(1, frames.size());
+        assertEquals("volume: 50\nOK\n", text(frames.get(0)));
+    }
+
+    @Test
+    public void errorIndex() {
+        assertEquals(2, MPDCommandList.errorIndex("ACK [50@2] {find} no such"));
+        assertEquals(0, MPDCommandList.errorIndex("ACK [5@0] {} unknown command"));
+        assertEquals(-1, MPDCommandList.errorIndex("ACK [50] {find} no such"));
+        assertEquals(-1, MPDCommandList.errorIndex("ACK [50@x] {find} no such"));
+        assertEquals(-1, MPDCommandList.errorIndex("OK"));
+    }
+
+    @Test
+    public void single() {
+        assertEquals("ACK [50@0] {find} no such", MPDCommandList.single("ACK [50@12] {find} no such"));
+        assertEquals("garbled", MPDCommandList.single("garbled"));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MPDConnectionEngineTest {
+    private static final long TIMEOUT = 5;
+
+    private FakeMPDServer server;
+    private MPDConnectionEngine engine;
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    // every response, error, connect and close lands in one queue, in the order the engine reports them
+    private class Recorder implements MPDConnectionEngine.ResponseHandler {
+        private final String name;
+
+        private Recorder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onResponse(byte[] buffer, int offset, int length) {
+            events.add(name+" "+new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onError(String error) {
+            events.add(name+" "+error);
+        }
+    }
+
+    @Before
+    public void start() throws Exception {
+        server = FakeMPDServer.start(20, 1024, 0, 0);
+        engine = new MPDConnectionEngine(new MPDConnectionEngine.Listener() {
+            @Override
+            public void onConnected(int handle, String greeting) {
+                events.add("connected "+handle+" "+greeting);
+            }
+
+            @Override
+            public void onClosed(int handle, String reason) {
+                events.add("closed "+handle+" "+reason);
+            }
+        });
+        new Thread(engine, "MPDConnectionEngineTest").start();
+    }
+
+    @After
+    public void stop() {
+        engine.shutdown();
+        server.close();
+    }
+
+    private String next() throws InterruptedException {
+        String event = events.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertTrue("timed out waiting for the engine", event != null);
+        return event;
+    }
+
+    @Test
+    public void commandsQueuedBeforeTheConnectAreAnsweredInOrder() throws Exception {
+        int handle = engine.open("127.0.0.1", server.getPort());
+        engine.send(handle, "stats\n", new Recorder("stats"));
+        engine.send(handle, "bogus\n", new Recorder("bogus"));
+        engine.send(handle, "ping\n", new Recorder("ping"));
+        assertEquals("connected "+handle+" OK MPD "+FakeMPDServer.VERSION, next());
+        assertTrue(next().startsWith("stats artists: 1\nalbums: 2\nsongs: 20\n"));
+        assertEquals("bogus ACK [5@0] {bogus} unknown command \"bogus\"", next());
+        assertEquals("ping OK\n", next());
+    }
+
+    @Test
+    public void connectionsAreIndependent() throws Exception {
+        int first = engine.open("127.0.0.1", server.getPort());
+        int second = engine.open("127.0.0.1", server.getPort());
+        assertTrue(first != second);
+        next();
+        next();
+        engine.send(second, "ping\n", new Recorder("second"));
+        assertEquals("second OK\n", next());
+        engine.close(first);
+        assertEquals("closed "+first+" closed", next());
+        engine.send(first, "ping\n", new Recorder("first"));
+        assertEquals("first ACK [0@0] {} unknown connection handle "+first, next());
+        engine.send(second, "ping\n", new Recorder("second"));
+        assertEquals("second OK\n", next());
+    }
+
+    @Test
+    public void largeResponsesArriveWhole() throws Exception {
+        FakeMPDServer large = FakeMPDServer.start(5000, 1024, 0, 0);
+        try {
+            int handle = engine.open("127.0.0.1", large.getPort());
+            engine.send(handle, "listallinfo\n", new Recorder("list"));
+            next();
+            String list = next();
+            assertTrue(list.endsWith("duration: 240.000\nOK\n"));
+            assertEquals(5000, list.split("\nfile: ", -1).length);
+        } finally {
+            large.close();
+        }
+    }
+
+    @Test
+    public void pendingCommandsFailWhenTheServerGoes() throws Exception {
+        int handle = engine.open("127.0.0.1", server.getPort());
+        next();
+        engine.send(handle, "idle\n", new Recorder("idle"));
+        Thread.sleep(100);
+        server.close();
+        String first = next();
+        String second = next();
+        assertTrue(first+" / "+second, first.startsWith("idle ACK [0@0] {} ") && second.startsWith("closed "+handle+" "));
+    }
+
+    @Test
+    public void unresolvableHostsClose() throws Exception {
+        int handle = engine.open("no-such-host.invalid", 6600);
+        assertEquals("closed "+handle+" unable to resolve no-such-host.invalid", next());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MPDMetricsTest {
+    @Test
+    public void bucketsAreLogLinear() {
+        for (long value = 0; value < 4; value++) {
+            assertEquals(value, MPDMetrics.bucket(value));
+        }
+        assertEquals(4, MPDMetrics.bucket(4));
+        assertEquals(7, MPDMetrics.bucket(7));
+        assertEquals(8, MPDMetrics.bucket(8));
+        assertEquals(8, MPDMetrics.bucket(9));
+        assertEquals(9, MPDMetrics.bucket(10));
+        assertEquals(12, MPDMetrics.bucket(16));
+        assertEquals(159, MPDMetrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void lowerBoundIsTheSmallestValueOfItsBucket() {
+        for (int bucket = 0; bucket < 159; bucket++) {
+            long low = MPDMetrics.lowerBound(bucket);
+            assertEquals("bucket "+bucket, bucket, MPDMetrics.bucket(low));
+            assertEquals("bucket "+bucket, bucket + 1, MPDMetrics.bucket(MPDMetrics.lowerBound(bucket + 1)));
+            if (low > 0) {
+                assertEquals("bucket "+bucket, bucket - 1, MPDMetrics.bucket(low - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinAQuarter() {
+        MPDMetrics.Histogram histogram = new MPDMetrics.Histogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(10000, histogram.getMax());
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long expected = (long) (10000 * percentile / 100);
+            long actual = histogram.getPercentile(percentile);
+            assertTrue(percentile+" gave "+actual, Math.abs(actual - expected) <= expected / 4);
+        }
+        assertTrue(histogram.getPercentile(100) <= histogram.getMax());
+    }
+
+    @Test
+    public void percentileNeverExceedsTheMax() {
+        MPDMetrics.Histogram histogram = new MPDMetrics.Histogram();
+        // 900 falls in 896..1023, whose midpoint is above it
+        histogram.record(900);
+        assertEquals(900, histogram.getPercentile(50));
+        assertEquals(0, new MPDMetrics.Histogram().getPercentile(50));
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void commandsAreGroupedByVerb() {
+        MPDMetrics metrics = new MPDMetrics();
+        metrics.record(MPDMetrics.verbOf("find \"(album == 'x')\"\n"), 1, 2, 3, 4, 5);
+        metrics.record(MPDMetrics.verbOf("find \"(album == 'y')\"\n"), 1, 2, 3, 4, 5);
+        metrics.record(MPDMetrics.verbOf("status\n"), 1, 2, 3, 4, 5);
+        List<MPDMetrics.Command> snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals("find", snapshot.get(0).verb);
+        assertEquals(2, snapshot.get(0).histograms[MPDMetrics.LAST_BYTE].getCount());
+        assertEquals("status", snapshot.get(1).verb);
+        metrics.reset();
+        assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void verbsPastTheLimitShareOneEntry() {
+        MPDMetrics metrics = new MPDMetrics();
+        for (int i = 0; i < 60; i++) {
+            metrics.record("verb"+i, 0, 0, 0, 0, 0);
+        }
+        List<MPDMetrics.Command> snapshot = metrics.snapshot();
+        assertEquals(49, snapshot.size());
+        assertEquals("other", snapshot.get(48).verb);
+        assertEquals(12, snapshot.get(48).histograms[MPDMetrics.QUEUE_WAIT].getCount());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MPDPlayQueueDiffTest {
+    private static List<Integer> ids(Integer... ids) {
+        return new ArrayList<Integer>(Arrays.asList(ids));
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            ids.add(i + 1);
+        }
+        return ids;
+    }
+
+    // what JS does with the ops
+    private static List<Integer> apply(List<Integer> before, List<MPDPlayQueueDiff.Op> ops) {
+        List<Integer> ids = new ArrayList<Integer>(before);
+        for (MPDPlayQueueDiff.Op op : ops) {
+            if (MPDPlayQueueDiff.Op.REMOVE.equals(op.op)) {
+                ids.subList(op.start, op.start + op.count).clear();
+            } else if (MPDPlayQueueDiff.Op.MOVE.equals(op.op)) {
+                ids.add(op.to, ids.remove(op.from));
+            } else {
+                ids.addAll(op.start, op.ids);
+            }
+        }
+        return ids;
+    }
+
+    private static List<MPDPlayQueueDiff.Op> diff(List<Integer> before, List<Integer> after) {
+        List<MPDPlayQueueDiff.Op> ops = MPDPlayQueueDiff.diff(before, after);
+        assertEquals(after, apply(before, ops));
+        return ops;
+    }
+
+    private static MPDPlayQueueDiff.Delta delta(int version, int length, String changes) {
+        return MPDPlayQueueDiff.parse(("volume: 50\nplaylist: "+version+"\nplaylistlength: "+length+"\nOK\n").getBytes(StandardCharsets.UTF_8),
+                (changes+"OK\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void nothingChanged() {
+        assertTrue(diff(ids(1, 2, 3), ids(1, 2, 3)).isEmpty());
+    }
+
+    @Test
+    public void insert() {
+        List<MPDPlayQueueDiff.Op> ops = diff(ids(1, 2, 3), ids(1, 7, 8, 2, 3, 9));
+        assertEquals("[insert 1 [7, 8], insert 5 [9]]", ops.toString());
+    }
+
+    @Test
+    public void delete() {
+        List<MPDPlayQueueDiff.Op> ops = diff(ids(1, 2, 3, 4, 5, 6), ids(1, 4, 6));
+        // from the end, so the first range is still where the old list had it
+        assertEquals("[remove 4 1, remove 1 2]", ops.toString());
+    }
+
+    @Test
+    public void moveUp() {
+        List<MPDPlayQueueDiff.Op> ops = diff(ids(1, 2, 3, 4, 5), ids(1, 5, 2, 3, 4));
+        assertEquals("[move 4>1]", ops.toString());
+    }
+
+    @Test
+    public void moveDown() {
+        List<MPDPlayQueueDiff.Op> ops = diff(ids(1, 2, 3, 4, 5), ids(1, 3, 4, 5, 2));
+        assertEquals("[move 1>4]", ops.toString());
+    }
+
+    @Test
+    public void everythingAtOnce() {
+        diff(ids(1, 2, 3, 4, 5, 6, 7, 8), ids(10, 8, 1, 3, 11, 2, 6, 5, 12));
+    }
+
+    @Test
+    public void smallReordersAlwaysApply() {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> before = range(30);
+            List<Integer> after = new ArrayList<Integer>(before);
+            for (int i = 0; i < 5; i++) {
+                after.add(random.nextInt(after.size()), after.remove(random.nextInt(after.size())));
+            }
+            after.remove(random.nextInt(after.size()));
+            after.add(random.nextInt(after.size()), 100 + round);
+            diff(before, after);
+        }
+    }
+
+    @Test
+    public void shuffleIsTooManyMoves() {
+        List<Integer> before = range(MPDPlayQueueDiff.MAX_MOVES * 4);
+        List<Integer> after = new ArrayList<Integer>(before);
+        Collections.shuffle(after, new Random(1));
+        assertNull(MPDPlayQueueDiff.diff(before, after));
+    }
+
+    @Test
+    public void parse() {
+        MPDPlayQueueDiff.Delta delta = delta(12, 3, "cpos: 1\nId: 40\ncpos: 2\nId: 41\n");
+        assertEquals(12, delta.version);
+        assertEquals(3, delta.length);
+        assertEquals(2, delta.changes.size());
+        assertEquals(Integer.valueOf(40), delta.changes.get(1));
+        assertEquals(Integer.valueOf(41), delta.changes.get(2));
+    }
+
+    @Test
+    public void mergeKeepsPositionsThatDidNotChange() {
+        List<Integer> after = MPDPlayQueueDiff.merge(11, ids(30, 31, 32, 33), delta(12, 3, "cpos: 1\nId: 40\n"));
+        assertEquals(ids(30, 40, 32), after);
+    }
+
+    @Test
+    public void aGapForcesAResync() {
+        // a position past the end of the ids held that the change does not name
+        assertNull(MPDPlayQueueDiff.merge(11, ids(30, 31), delta(12, 4, "cpos: 2\nId: 40\n")));
+    }
+
+    @Test
+    public void versionZeroListsEveryPosition() {
+        assertEquals(ids(5, 6, 7), MPDPlayQueueDiff.merge(0, ids(30, 31, 32), delta(3, 3, "cpos: 0\nId: 5\ncpos: 1\nId: 6\ncpos: 2\nId: 7\n")));
+        // anything held is ignored, a position the listing leaves out is a gap
+        assertNull(MPDPlayQueueDiff.merge(0, ids(30, 31, 32), delta(3, 3, "cpos: 0\nId: 5\ncpos: 2\nId: 7\n")));
+    }
+
+    @Test
+    public void anUnreadableStatusHasNoVersion() {
+        assertEquals(-1, MPDPlayQueueDiff.parse("OK\n".getBytes(StandardCharsets.UTF_8), "OK\n".getBytes(StandardCharsets.UTF_8)).version);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MPDResponseFramerTest {
+    // every frame is copied out, the framer's buffer is only valid during the callback
+    private static class Frames implements MPDResponseFramer.FrameListener {
+        private final List<String> kinds = new ArrayList<String>();
+        private final List<String> texts = new ArrayList<String>();
+        private final List<byte[]> binaries = new ArrayList<byte[]>();
+        private final List<String> lines = new ArrayList<String>();
+        private boolean takeLines = false;
+
+        @Override
+        public void onInit(byte[] buffer, int offset, int length) {
+            add("init", buffer, offset, length);
+        }
+
+        @Override
+        public void onResponse(byte[] buffer, int offset, int length) {
+            add("response", buffer, offset, length);
+        }
+
+        @Override
+        public void onBinaryResponse(byte[] buffer, int offset, int length, int binaryOffset, int binaryLength) {
+            add("binary", buffer, offset, length);
+            binaries.add(Arrays.copyOfRange(buffer, binaryOffset, binaryOffset + binaryLength));
+        }
+
+        @Override
+        public void onError(byte[] buffer, int offset, int length) {
+            add("error", buffer, offset, length);
+        }
+
+        @Override
+        public boolean onLine(byte[] buffer, int offset, int length) {
+            if (takeLines) {
+                lines.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+            }
+            return takeLines;
+        }
+
+        private void add(String kind, byte[] buffer, int offset, int length) {
+            kinds.add(kind);
+            texts.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // feeds the stream n bytes at a time, the way a slow socket hands it over
+    private static void feed(MPDResponseFramer framer, byte[] stream, int n) {
+        for (int offset = 0; offset < stream.length; offset += n) {
+            framer.feed(stream, offset, Math.min(n, stream.length - offset));
+        }
+    }
+
+    @Test
+    public void framesGreetingResponseAndError() {
+        Frames frames = new Frames();
+        MPDResponseFramer framer = new MPDResponseFramer(frames);
+        byte[] stream = bytes("OK MPD 0.23.5\nvolume: 50\nstate: play\nOK\nACK [50@0] {play} No such song\n");
+        framer.feed(stream, 0, stream.length);
+        assertEquals(Arrays.asList("init", "response", "error"), frames.kinds);
+        assertEquals("OK MPD 0.23.5\n", frames.texts.get(0));
+        assertEquals("volume: 50\nstate: play\nOK\n", frames.texts.get(1));
+        assertEquals("ACK [50@0] {play} No such song\n", frames.texts.get(2));
+    }
+
+    @Test
+    public void splitReadsGiveTheSameFrames() {
+        byte[] stream = bytes("OK MPD 0.23.5\nfile: a.flac\nTitle: \u00c4\u00df\nOK\nOK\nfile: b.flac\nOK\n");
+        for (int n = 1; n <= stream.length; n++) {
+            Frames frames = new Frames();
+            feed(new MPDResponseFramer(frames), stream, n);
+            assertEquals("read size "+n, Arrays.asList("init", "response", "response", "response"), frames.kinds);
+            assertEquals("file: a.flac\nTitle: \u00c4\u00df\nOK\n", frames.texts.get(1));
+            assertEquals("OK\n", frames.texts.get(2));
+            assertEquals("file: b.flac\nOK\n", frames.texts.get(3));
+        }
+    }
+
+    @Test
+    public void binaryPayloadSpanningReads() throws IOException {
+        // the payload holds newlines and bytes that look like OK and ACK lines, none of which may end the frame
+        byte[] payload = new byte[40000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i % 7 == 0 ? 0x0a : "OK\nACK [".charAt(i % 8));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bytes("size: 80000\nbinary: "+payload.length+"\n"));
+        out.write(payload);
+        out.write(bytes("\nOK\nvolume: 1\nOK\n"));
+        byte[] stream = out.toByteArray();
+        for (int n : new int[] {1, 7, 4096, 8192, 65536}) {
+            Frames frames = new Frames();
+            feed(new MPDResponseFramer(frames), stream, n);
+            assertEquals("read size "+n, Arrays.asList("binary", "response"), frames.kinds);
+            assertEquals("size: 80000\nbinary: 40000", frames.texts.get(0));
+            assertArrayEquals(payload, frames.binaries.get(0));
+            assertEquals("volume: 1\nOK\n", frames.texts.get(1));
+        }
+    }
+
+    @Test
+    public void ackMidStreamEndsOnlyItsFrame() {
+        byte[] stream = bytes("file: a.flac\nOK\nfile: b.flac\nlist_OK\nACK [50@1] {find} no such\nfile: c.flac\nOK\n");
+        for (int n = 1; n <= stream.length; n++) {
+            Frames frames = new Frames();
+            feed(new MPDResponseFramer(frames), stream, n);
+            assertEquals("read size "+n, Arrays.asList("response", "error", "response"), frames.kinds);
+            assertEquals("file: b.flac\nlist_OK\nACK [50@1] {find} no such\n", frames.texts.get(1));
+            assertEquals("file: c.flac\nOK\n", frames.texts.get(2));
+        }
+    }
+
+    @Test
+    public void consumedLinesAreLeftOutOfTheFrame() {
+        Frames frames = new Frames();
+        frames.takeLines = true;
+        byte[] stream = bytes("changed: player\nchanged: mixer\nOK\n");
+        feed(new MPDResponseFramer(frames), stream, 3);
+        assertEquals(Arrays.asList("changed: player", "changed: mixer"), frames.lines);
+        assertEquals(Arrays.asList("response"), frames.kinds);
+        assertEquals("OK\n", frames.texts.get(0));
+    }
+
+    @Test
+    public void largeResponseGrowsTheBuffer() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 3 * 1024 * 1024; i++) {
+            sb.append("file: Album ").append(i / 10).append('/').append(i).append(".flac\nTitle: Song ").append(i).append('\n');
+        }
+        sb.append("OK\n");
+        byte[] stream = bytes(sb.toString());
+        Frames frames = new Frames();
+        feed(new MPDResponseFramer(frames), stream, 65536);
+        assertEquals(1, frames.kinds.size());
+        assertEquals(new String(stream, StandardCharsets.UTF_8), frames.texts.get(0));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MPDResponseParserTest {
+    private static class MapRecord implements MPDResponseParser.Record {
+        private final Map<String, Object> values = new HashMap<String, Object>();
+
+        @Override
+        public void putString(String key, String value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public void putInt(String key, int value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public void putBoolean(String key, boolean value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public void putRecord(String key, MPDResponseParser.Record value) {
+            values.put(key, ((MapRecord) value).values);
+        }
+    }
+
+    private static class Records implements MPDResponseParser.RecordHandler {
+        private final List<Map<String, Object>> records = new ArrayList<Map<String, Object>>();
+
+        @Override
+        public MPDResponseParser.Record createRecord() {
+            return new MapRecord();
+        }
+
+        @Override
+        public void onRecord(MPDResponseParser.Record record) {
+            records.add(((MapRecord) record).values);
+        }
+    }
+
+    private static List<Map<String, Object>> parse(String format, String tag, String response) {
+        Records records = new Records();
+        MPDResponseParser parser = new MPDResponseParser(format, tag, records);
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        parser.parse(bytes, 0, bytes.length);
+        parser.finish();
+        return records.records;
+    }
+
+    @Test
+    public void songs() {
+        List<Map<String, Object>> songs = parse(MPDResponseParser.FORMAT_SONGS, null,
+                "directory: Music\nfile: A/1 Tr\u00e4ck.flac\nTitle: One\nArtist: A\nTime: 241\nduration: 240.500\nId: 7\nPos: 3\n" +
+                "playlist: saved.m3u\nfile: A/2.flac\nTitle: Two\nTime: 65\nOK\n");
+        assertEquals(2, songs.size());
+        Map<String, Object> first = songs.get(0);
+        assertEquals("A/1 Tr\u00e4ck.flac", first.get("file"));
+        assertEquals(MPDResponseParser.toBase64("A/1 Tr\u00e4ck.flac"), first.get("b64file"));
+        assertEquals("One", first.get("title"));
+        assertEquals("A", first.get("artist"));
+        // duration wins over the rounded Time
+        assertEquals("4:00", first.get("time"));
+        assertEquals("240.500", first.get("rawTime"));
+        assertEquals(7, first.get("id"));
+        assertEquals(3, first.get("pos"));
+        assertEquals("1:05", songs.get(1).get("time"));
+        assertEquals("65", songs.get(1).get("rawTime"));
+    }
+
+    @Test
+    public void tagsCarryTheirGroup() {
+        List<Map<String, Object>> albums = parse(MPDResponseParser.FORMAT_TAGS, "Album",
+                "AlbumArtist: A\nAlbum: One\nAlbum: Two\nAlbumArtist: B\nAlbum: Three\nOK\n");
+        assertEquals(3, albums.size());
+        assertEquals("One", albums.get(0).get("album"));
+        assertEquals("A", albums.get(0).get("albumartist"));
+        assertEquals("A", albums.get(1).get("albumartist"));
+        assertEquals("Three", albums.get(2).get("album"));
+        assertEquals("B", albums.get(2).get("albumartist"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void statusNestsCurrentSong() {
+        List<Map<String, Object>> status = parse(MPDResponseParser.FORMAT_STATUS, null,
+                "volume: 50\nstate: play\nreplay_gain_mode: off\nlist_OK\nfile: A/1.flac\nTitle: One\nArtist: A\nlist_OK\nOK\n");
+        assertEquals(1, status.size());
+        Map<String, Object> record = status.get(0);
+        assertEquals("50", record.get("volume"));
+        assertEquals("play", record.get("state"));
+        assertEquals("off", record.get("replayGainStatus"));
+        Map<String, Object> song = (Map<String, Object>) record.get("currentsong");
+        assertEquals("A/1.flac", song.get("file"));
+        assertEquals(MPDResponseParser.toBase64("A/1.flac"), song.get("b64file"));
+        assertEquals("One", song.get("title"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void emptyStatusIsStillOneRecord() {
+        List<Map<String, Object>> status = parse(MPDResponseParser.FORMAT_STATUS, null, "OK\n");
+        assertEquals(1, status.size());
+        assertTrue(((Map<String, Object>) status.get(0).get("currentsong")).isEmpty());
+    }
+
+    @Test
+    public void statsKeepTheirKeys() {
+        List<Map<String, Object>> stats = parse(MPDResponseParser.FORMAT_STATS, null, "artists: 3\ndb_playtime: 100\nOK\n");
+        assertEquals(1, stats.size());
+        assertEquals("3", stats.get(0).get("artists"));
+        assertEquals("100", stats.get(0).get("db_playtime"));
+    }
+
+    @Test
+    public void outputs() {
+        List<Map<String, Object>> outputs = parse(MPDResponseParser.FORMAT_OUTPUTS, null,
+                "outputid: 0\noutputname: Speakers\nplugin: alsa\noutputenabled: 1\noutputid: 1\noutputname: Stream\noutputenabled: 0\nOK\n");
+        assertEquals(2, outputs.size());
+        assertEquals("0", outputs.get(0).get("id"));
+        assertEquals("Speakers", outputs.get(0).get("name"));
+        assertEquals("alsa", outputs.get(0).get("plugin"));
+        assertEquals(true, outputs.get(0).get("enabled"));
+        assertEquals(false, outputs.get(1).get("enabled"));
+        assertNull(outputs.get(1).get("plugin"));
+    }
+
+    @Test
+    public void base64MatchesTheJsEncoding() {
+        // btoa(encodeURIComponent("a b/\u00e4"))
+        assertEquals("YSUyMGIlMkYlQzMlQTQ=", MPDResponseParser.toBase64("a b/\u00e4"));
+        assertEquals("", MPDResponseParser.toBase64(""));
+    }
+
+    @Test
+    public void formats() {
+        assertTrue(MPDResponseParser.isSupported(MPDResponseParser.FORMAT_SONGS));
+        assertFalse(MPDResponseParser.isSupported("lines"));
+        assertTrue(MPDResponseParser.isSingleRecord(MPDResponseParser.FORMAT_STATS));
+        assertFalse(MPDResponseParser.isSingleRecord(MPDResponseParser.FORMAT_SONGS));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MPDSearchIndexTest {
+    private MPDSearchIndex index;
+
+    @Before
+    public void build() {
+        String listing =
+                "file: beatles/love.flac\nTitle: Love Me Do\nArtist: The Beatles\nAlbum: Please Please Me\nTime: 143\n" +
+                "file: various/aloha.flac\nTitle: Aloha\nArtist: Various\nAlbum: Hawaii\nGenre: Love Songs\nTime: 200\n" +
+                "file: sigur/ara.flac\nTitle: \u00c1ra b\u00e1tur\nArtist: Sigur R\u00f3s\nAlbum: Me\u00f0 su\u00f0 \u00ed eyrum\nTime: 535\n" +
+                "file: other/nothing.flac\nTitle: Nothing Compares\nArtist: Someone\nAlbum: Love\nTime: 300\n" +
+                "file: quotes/dont.flac\nTitle: Don\u2019t Stop\nArtist: Fleetwood Mac\nAlbum: Rumours\nTime: 193\n" +
+                "OK\n";
+        MPDSearchIndex.Builder builder = new MPDSearchIndex.Builder();
+        MPDResponseParser parser = new MPDResponseParser(MPDResponseParser.FORMAT_SONGS, null, builder);
+        byte[] bytes = listing.getBytes(StandardCharsets.UTF_8);
+        parser.parse(bytes, 0, bytes.length);
+        parser.finish();
+        index = builder.build();
+    }
+
+    private List<String> files(MPDSearchIndex.Result result) {
+        List<String> files = new ArrayList<String>();
+        for (MPDSearchIndex.Song song : result.songs) {
+            files.add(song.get("file"));
+        }
+        return files;
+    }
+
+    @Test
+    public void keepsOnlyTheShownFields() {
+        assertEquals(5, index.size());
+        MPDSearchIndex.Song song = index.search("love me do", 0, 1).songs.get(0);
+        assertEquals("The Beatles", song.get("artist"));
+        assertEquals("2:23", song.get("time"));
+        assertEquals(MPDResponseParser.toBase64("beatles/love.flac"), song.get("b64file"));
+        assertNull(song.get("rawTime"));
+    }
+
+    @Test
+    public void ranksByWhereAndInWhichFieldTermsMatch() {
+        MPDSearchIndex.Result result = index.search("love", 0, 10);
+        assertEquals(3, result.total);
+        // the whole album outranks the start of a title, a genre word comes last
+        assertEquals("other/nothing.flac", files(result).get(0));
+        assertEquals("beatles/love.flac", files(result).get(1));
+        assertEquals("various/aloha.flac", files(result).get(2));
+        assertEquals(3, result.scores.length);
+    }
+
+    @Test
+    public void everyTermHasToMatch() {
+        assertEquals(1, index.search("love beatles", 0, 10).total);
+        assertEquals(0, index.search("love zeppelin", 0, 10).total);
+        assertEquals(0, index.search("   ", 0, 10).total);
+    }
+
+    @Test
+    public void shortTermsMatchAnywhere() {
+        // "lo" is inside aloha, not only at the start of a word
+        List<String> files = files(index.search("lo", 0, 10));
+        assertEquals(3, files.size());
+        assertEquals(true, files.contains("various/aloha.flac"));
+        assertEquals(1, index.search("lo ha", 0, 10).total);
+        assertEquals(0, index.search("zq", 0, 10).total);
+    }
+
+    @Test
+    public void foldsCaseAccentsAndQuotes() {
+        assertEquals("sigur/ara.flac", files(index.search("ARA BATUR", 0, 10)).get(0));
+        assertEquals("sigur/ara.flac", files(index.search("sigur ros", 0, 10)).get(0));
+        assertEquals("quotes/dont.flac", files(index.search("don't", 0, 10)).get(0));
+    }
+
+    @Test
+    public void pagesThroughTheRanking() {
+        MPDSearchIndex.Result all = index.search("love", 0, 10);
+        MPDSearchIndex.Result second = index.search("love", 1, 1);
+        assertEquals(3, second.total);
+        assertEquals(1, second.songs.size());
+        assertEquals(files(all).get(1), files(second).get(0));
+        assertEquals(0, index.search("love", 5, 10).songs.size());
+        assertEquals(3, index.search("love", 0, 0).total);
+    }
+}
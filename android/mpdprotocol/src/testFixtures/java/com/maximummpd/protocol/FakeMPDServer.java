@@ -0,0 +1,330 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Richard Backhouse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.maximummpd.protocol;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * An MPD server on the loopback interface for benchmarking the protocol code without real hardware.
+ * It is a test fixture, shared by the unit tests and the benchmark in debug builds of the app. The library is generated (songs spread over artists of ten albums of
+ * ten tracks), album art is generated per uri, and anything it does not know is answered with an ACK.
+ * Canned responses can be added per command. Latency is added before every response and bandwidth,
+ * when set, throttles how fast responses are written.
+ */
+public class FakeMPDServer implements Runnable {
+    public static final String VERSION = "0.23.5";
+    private static final int DEFAULT_BINARY_LIMIT = 8192;
+    private static final int WRITE_CHUNK = 8192;
+    private static final Pattern WINDOW = Pattern.compile("window (\\d+):(\\d+)");
+
+    private final ServerSocket serverSocket;
+    private final int songs;
+    private final int artSize;
+    private final int latency;
+    private final int bandwidth;
+    private final Map<String, String> canned = new ConcurrentHashMap<String, String>();
+    private final List<Socket> clients = new ArrayList<Socket>();
+    private byte[] listing = null;
+    private volatile boolean closed = false;
+
+    public static FakeMPDServer start(int songs, int artSize, int latency, int bandwidth) throws IOException {
+        FakeMPDServer server = new FakeMPDServer(songs, artSize, latency, bandwidth);
+        new Thread(server, "FakeMPDServer").start();
+        return server;
+    }
+
+    private FakeMPDServer(int songs, int artSize, int latency, int bandwidth) throws IOException {
+        this.serverSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        this.songs = songs;
+        this.artSize = artSize;
+        this.latency = latency;
+        this.bandwidth = bandwidth;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // response lines without the closing OK, a response starting with ACK is sent as it is
+    public void setResponse(String command, String response) {
+        canned.put(command, response);
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+        }
+        synchronized (clients) {
+            for (Socket client : clients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                }
+            }
+            clients.clear();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            try {
+                final Socket client = serverSocket.accept();
+                synchronized (clients) {
+                    clients.add(client);
+                }
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                }, "FakeMPDClient").start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("fake server accept failed : "+e.getLocalizedMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            client.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream os = client.getOutputStream();
+            send(os, ("OK MPD "+VERSION+"\n").getBytes(StandardCharsets.UTF_8), false);
+            int binaryLimit = DEFAULT_BINARY_LIMIT;
+            boolean idling = false;
+            List<String> commandList = null;
+            boolean listOk = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (idling) {
+                    if (line.equals("noidle")) {
+                        idling = false;
+                        send(os, "OK\n".getBytes(StandardCharsets.UTF_8), true);
+                    }
+                    continue;
+                }
+                if (commandList != null) {
+                    if (line.equals("command_list_end")) {
+                        send(os, respondList(commandList, listOk, binaryLimit), true);
+                        commandList = null;
+                    } else {
+                        commandList.add(line);
+                    }
+                    continue;
+                }
+                if (line.equals("command_list_begin") || line.equals("command_list_ok_begin")) {
+                    commandList = new ArrayList<String>();
+                    listOk = line.equals("command_list_ok_begin");
+                } else if (line.equals("idle") || line.startsWith("idle ")) {
+                    idling = true;
+                } else if (line.equals("close")) {
+                    break;
+                } else {
+                    if (line.startsWith("binarylimit ")) {
+                        binaryLimit = Math.max(64, Integer.parseInt(line.substring("binarylimit ".length()).trim()));
+                    }
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    if (respond(line, 0, binaryLimit, out)) {
+                        out.write("OK\n".getBytes(StandardCharsets.UTF_8));
+                    }
+                    send(os, out.toByteArray(), true);
+                }
+            }
+        } catch (IOException e) {
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+            }
+            synchronized (clients) {
+                clients.remove(client);
+            }
+        }
+    }
+
+    private byte[] respondList(List<String> commands, boolean listOk, int binaryLimit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < commands.size(); i++) {
+            if (!respond(commands.get(i), i, binaryLimit, out)) {
+                return out.toByteArray();
+            }
+            if (listOk) {
+                out.write("list_OK\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        out.write("OK\n".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    // false when the command failed and an ACK has been written in place of the response
+    private boolean respond(String line, int index, int binaryLimit, ByteArrayOutputStream out) throws IOException {
+        String command = MPDMetrics.verbOf(line);
+        String response = canned.get(command);
+        if (response != null) {
+            if (response.startsWith("ACK")) {
+                out.write((response.endsWith("\n") ? response : response+"\n").getBytes(StandardCharsets.UTF_8));
+                return false;
+            }
+            out.write(response.getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        if (command.equals("ping") || command.equals("password") || command.equals("binarylimit") ||
+                command.equals("noidle") || command.equals("clearerror")) {
+            return true;
+        }
+        if (command.equals("status")) {
+            out.write(("volume: 50\nrepeat: 0\nrandom: 0\nsingle: 0\nconsume: 0\nplaylist: 1\nplaylistlength: 0\n" +
+                    "state: stop\n").getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        if (command.equals("currentsong")) {
+            return true;
+        }
+        if (command.equals("stats")) {
+            out.write(("artists: "+((songs + 99) / 100)+"\nalbums: "+((songs + 9) / 10)+"\nsongs: "+songs+"\n" +
+                    "uptime: 1\nplaytime: 0\ndb_playtime: "+(songs * 240L)+"\ndb_update: 1\n").getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        if (command.equals("listallinfo")) {
+            out.write(listing());
+            return true;
+        }
+        if (command.equals("find") || command.equals("search")) {
+            int start = 0;
+            int end = songs;
+            Matcher matcher = WINDOW.matcher(line);
+            if (matcher.find()) {
+                start = Math.min(songs, Integer.parseInt(matcher.group(1)));
+                end = Math.min(songs, Integer.parseInt(matcher.group(2)));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                appendSong(sb, i);
+            }
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        if (command.equals("albumart") || command.equals("readpicture")) {
+            String[] args = line.split(" ");
+            int offset = Integer.parseInt(args[args.length - 1]);
+            byte[] art = art(line);
+            int length = Math.max(0, Math.min(binaryLimit, art.length - offset));
+            StringBuilder sb = new StringBuilder();
+            sb.append("size: ").append(art.length).append('\n');
+            if (command.equals("readpicture")) {
+                sb.append("type: image/png\n");
+            }
+            sb.append("binary: ").append(length).append('\n');
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(art, offset, length);
+            out.write('\n');
+            return true;
+        }
+        out.write(("ACK [5@"+index+"] {"+command+"} unknown command \""+command+"\"\n").getBytes(StandardCharsets.UTF_8));
+        return false;
+    }
+
+    private synchronized byte[] listing() {
+        if (listing == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < songs; i++) {
+                appendSong(sb, i);
+            }
+            listing = sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return listing;
+    }
+
+    private static void appendSong(StringBuilder sb, int i) {
+        int artist = i / 100;
+        int album = i / 10;
+        int track = i % 10 + 1;
+        sb.append("file: Artist ").append(artist).append("/Album ").append(album).append('/').append(track).append(" Track.flac\n");
+        sb.append("Last-Modified: 2019-01-01T00:00:00Z\n");
+        sb.append("Artist: Artist ").append(artist).append('\n');
+        sb.append("AlbumArtist: Artist ").append(artist).append('\n');
+        sb.append("Album: Album ").append(album).append('\n');
+        sb.append("Title: Song ").append(i).append('\n');
+        sb.append("Track: ").append(track).append('\n');
+        sb.append("Date: ").append(1960 + album % 60).append('\n');
+        sb.append("Genre: Genre ").append(album % 20).append('\n');
+        sb.append("Time: 240\nduration: 240.000\n");
+    }
+
+    // the same uri always gets the same bytes, behind a png signature
+    private byte[] art(String line) {
+        byte[] art = new byte[artSize];
+        byte[] signature = new byte[] {(byte) 0x89, 0x50, 0x4e, 0x47, 0x0d, 0x0a, 0x1a, 0x0a};
+        System.arraycopy(signature, 0, art, 0, Math.min(signature.length, art.length));
+        int seed = line.substring(0, line.lastIndexOf(' ')).hashCode();
+        for (int i = signature.length; i < art.length; i++) {
+            seed = seed * 1103515245 + 12345;
+            art[i] = (byte) (seed >>> 16);
+        }
+        return art;
+    }
+
+    private void send(OutputStream os, byte[] bytes, boolean delayed) throws IOException {
+        if (delayed && latency > 0) {
+            sleep(latency);
+        }
+        if (bandwidth <= 0) {
+            os.write(bytes);
+            os.flush();
+            return;
+        }
+        long started = System.nanoTime();
+        for (int offset = 0; offset < bytes.length; offset += WRITE_CHUNK) {
+            int length = Math.min(WRITE_CHUNK, bytes.length - offset);
+            os.write(bytes, offset, length);
+            os.flush();
+            long due = started + (long) (offset + length) * 1000000000L / bandwidth;
+            long wait = (due - System.nanoTime()) / 1000000;
+            if (wait > 0) {
+                sleep(wait);
+            }
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}